@@ -7,12 +7,19 @@ import java.util.List;
  */
 public class ASTAssemblerFunction {
 
+    private final short localVariables;
+
     private final List<Short> instructions;
 
-    public ASTAssemblerFunction(List<Short> instructions) {
+    public ASTAssemblerFunction(short localVariables, List<Short> instructions) {
+        this.localVariables = localVariables;
         this.instructions = instructions;
     }
 
+    public short getLocalVariables() {
+        return localVariables;
+    }
+
     public List<Short> getInstructions() {
         return instructions;
     }
@@ -73,6 +73,14 @@ public class AssemblerParser {
             checkAndProceed(AssemblerScannerSymbols.FUNCTION_PARAM_END);
         }
 
+        Short localVariables = null;
+        if (checkOptionalAndProceed(AssemblerScannerSymbols.PARAM_BRACKET_START)) {
+            check(AssemblerScannerSymbols.OPCODE_PARAM);
+            localVariables = scanner.getCurrentNumber();
+            scanner.moveToNextSymbol();
+            checkAndProceed(AssemblerScannerSymbols.PARAM_BRACKET_END);
+        }
+
         while (scanner.getCurrentSymbol() == AssemblerScannerSymbols.LINE_NUMBER) {
             scanner.moveToNextSymbol();
             check(AssemblerScannerSymbols.MNEMONIC);
@@ -96,7 +104,25 @@ public class AssemblerParser {
                 checkAndProceed(AssemblerScannerSymbols.PARAM_BRACKET_END);
             }
         }
-        return new ASTAssemblerFunction(instructions);
+        if (localVariables == null) {
+            localVariables = calculateLocalVariables(instructions);
+        }
+        return new ASTAssemblerFunction(localVariables, instructions);
+    }
+
+    private short calculateLocalVariables(List<Short> instructions) {
+        short localVariables = 0;
+        int i = 0;
+        while (i < instructions.size()) {
+            InstructionSet.OpCodes opCode = InstructionSet.OpCodes.get(instructions.get(i));
+            if (opCode == InstructionSet.OpCodes.STORE || opCode == InstructionSet.OpCodes.LOAD) {
+                localVariables = (short) Math.max(localVariables, instructions.get(i + 1) + 1);
+            } else if (opCode == InstructionSet.OpCodes.POP_PARAMS) {
+                localVariables = (short) Math.max(localVariables, instructions.get(i + 1));
+            }
+            i += 1 + opCode.opCodeParam();
+        }
+        return localVariables;
     }
 
     private boolean checkOptionalAndProceed(AssemblerScannerSymbols symbol) throws IOException {
@@ -24,9 +24,10 @@ public class AssemblerTranslator extends BasicByteCodeProducer {
     public void translate() throws IOException {
         emitHeader(InstructionSet.PREAMBLE, script.getMajorVersion(), script.getMinorVersion(), script.getMainFunctionIndex());
         for (ASTAssemblerFunction function : script) {
-            writeOpCode(InstructionSet.OpCodes.FUNCTION);
+            writeOpCode(InstructionSet.OpCodes.FUNCTION, function.getLocalVariables());
             writeFunction(function.getInstructions());
         }
+        finishCode();
     }
 
     private void writeFunction(List<Short> instructions) throws IOException {
@@ -14,6 +14,11 @@ public abstract class BasicByteCodeConsumer {
     private final short expectedMinorVersion;
 
     protected short mainFunctionIndex;
+    /**
+     * The directory of the code or <code>null</code> if the byte code is older than
+     * {@link InstructionSet#FUNCTION_DIRECTORY_MINOR_VERSION}
+     */
+    protected FunctionDirectory functionDirectory;
 
     public BasicByteCodeConsumer(InputStream in, short expectedMajorVersion, short expectedMinorVersion) {
         this.in = new DataInputStream(in);
@@ -22,15 +27,25 @@ public abstract class BasicByteCodeConsumer {
     }
 
     protected void readHeader() throws IOException {
-        String preamble = readString(InstructionSet.PREAMBLE.length());
+        checkPreamble(readString(InstructionSet.PREAMBLE.length()));
 
+        short majorVersion = getNext();
+        short minorVersion = getNext();
+        checkVersion(majorVersion, minorVersion);
+
+        this.mainFunctionIndex = getNext();
+        if (minorVersion >= InstructionSet.FUNCTION_DIRECTORY_MINOR_VERSION) {
+            this.functionDirectory = FunctionDirectory.read(in::readShort);
+        }
+    }
+
+    protected void checkPreamble(String preamble) {
         if (!preamble.equals(InstructionSet.PREAMBLE)) {
             throw new IllegalStateException("Preamble missing. Invalid byte code.");
         }
+    }
 
-        short majorVersion = getNext();
-        short minorVersion = getNext();
-
+    protected void checkVersion(short majorVersion, short minorVersion) {
         if (majorVersion > expectedMajorVersion) {
             throw new IllegalStateException(
                     "Byte code version (" + majorVersion + "." + minorVersion + ") is not compatible. Major version supported: "
@@ -42,7 +57,10 @@ public abstract class BasicByteCodeConsumer {
                     + ") is not compatible. Major version ok. Minor version supported: " + expectedMinorVersion);
         }
 
-        this.mainFunctionIndex = getNext();
+        if (majorVersion == expectedMajorVersion && minorVersion < InstructionSet.FUNCTION_LOCALS_MINOR_VERSION) {
+            throw new IllegalStateException("Byte code version (" + majorVersion + "." + minorVersion
+                    + ") is not compatible. Minimal minor version supported: " + InstructionSet.FUNCTION_LOCALS_MINOR_VERSION);
+        }
     }
 
     protected Short getNext() throws IOException {
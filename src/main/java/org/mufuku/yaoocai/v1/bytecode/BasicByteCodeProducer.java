@@ -1,18 +1,28 @@
 package org.mufuku.yaoocai.v1.bytecode;
 
+import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 /**
+ * Base of all byte code producers. Since minor version {@link InstructionSet#FUNCTION_DIRECTORY_MINOR_VERSION} the
+ * code is collected after the header and written together with its {@link FunctionDirectory} by
+ * {@link #finishCode()}.
+ *
  * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
  */
 public abstract class BasicByteCodeProducer {
 
-    protected final DataOutputStream out;
+    private final DataOutputStream target;
+    private ByteArrayOutputStream code;
+
+    protected DataOutputStream out;
 
     public BasicByteCodeProducer(OutputStream out) {
-        this.out = new DataOutputStream(out);
+        this.target = new DataOutputStream(out);
+        this.out = target;
     }
 
     protected void emitHeader(String preamble, short majorVersion, short minorVersion, short mainFunctionIndex) throws IOException {
@@ -20,6 +30,25 @@ public abstract class BasicByteCodeProducer {
         out.writeShort(majorVersion);
         out.writeShort(minorVersion);
         out.writeShort(mainFunctionIndex);
+        if (minorVersion >= InstructionSet.FUNCTION_DIRECTORY_MINOR_VERSION) {
+            this.code = new ByteArrayOutputStream();
+            this.out = new DataOutputStream(code);
+        }
+    }
+
+    /**
+     * Writes the function directory and the collected code, must be called after the last instruction.
+     */
+    protected void finishCode() throws IOException {
+        if (code != null) {
+            short[] words = new short[code.size() / 2];
+            ByteBuffer.wrap(code.toByteArray()).asShortBuffer().get(words);
+            FunctionDirectory.of(words).write(target);
+            code.writeTo(target);
+            this.code = null;
+            this.out = target;
+        }
+        target.flush();
     }
 
     protected void writeOpCode(InstructionSet.OpCodes opCode, short... params) throws IOException {
@@ -0,0 +1,175 @@
+package org.mufuku.yaoocai.v1.bytecode;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Table of contents of the code, written between the header and the code since minor version
+ * {@link InstructionSet#FUNCTION_DIRECTORY_MINOR_VERSION}. It lists every function with its offset (the word address
+ * in the code), its length in words, its number of parameters and its number of local variables, followed by the
+ * function codes of all built-ins the code calls. A loader can find any function without scanning the code before it.
+ * <p>
+ * Layout (in words): function count, per function offset (2), length (2), parameters and locals, then the built-in
+ * count and the built-in function codes. As the counts are single words, a directory holds at most
+ * {@link #MAX_COUNT} functions and built-ins.
+ *
+ * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
+ */
+public final class FunctionDirectory {
+
+    public static final int MAX_COUNT = Short.MAX_VALUE;
+
+    private final int[] offsets;
+    private final int[] lengths;
+    private final short[] parameters;
+    private final short[] locals;
+    private final short[] builtInCodes;
+
+    /**
+     * @throws IllegalStateException if there are more functions or built-ins than a directory can hold
+     */
+    public FunctionDirectory(int[] offsets, int[] lengths, short[] parameters, short[] locals, short[] builtInCodes) {
+        if (offsets.length > MAX_COUNT) {
+            throw new IllegalStateException("Too many functions (" + offsets.length + ") for a function directory, at most "
+                    + MAX_COUNT + " supported");
+        }
+        if (builtInCodes.length > MAX_COUNT) {
+            throw new IllegalStateException("Too many built-ins (" + builtInCodes.length + ") for a function directory, at most "
+                    + MAX_COUNT + " supported");
+        }
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.parameters = parameters;
+        this.locals = locals;
+        this.builtInCodes = builtInCodes;
+    }
+
+    /**
+     * Creates the directory of the given code by scanning it once.
+     */
+    public static FunctionDirectory of(short[] code) {
+        List<Integer> starts = new ArrayList<>();
+        Set<Short> builtIns = new LinkedHashSet<>();
+        int address = 0;
+        while (address < code.length) {
+            InstructionSet.OpCodes opCode = InstructionSet.OpCodes.get(code[address]);
+            if (opCode == null) {
+                throw new IllegalStateException("Unknown op code " + code[address] + " at address " + address);
+            }
+            if (opCode == InstructionSet.OpCodes.FUNCTION) {
+                starts.add(address);
+            } else if (opCode == InstructionSet.OpCodes.INVOKE_BUILTIN && address + 1 < code.length) {
+                builtIns.add(code[address + 1]);
+            }
+            address += 1 + opCode.opCodeParam();
+        }
+
+        int count = starts.size();
+        int[] offsets = new int[count];
+        int[] lengths = new int[count];
+        short[] parameters = new short[count];
+        short[] locals = new short[count];
+        for (int i = 0; i < count; i++) {
+            int start = starts.get(i);
+            int end = i + 1 < count ? starts.get(i + 1) : code.length;
+            offsets[i] = start;
+            lengths[i] = end - start;
+            locals[i] = start + 1 < end ? code[start + 1] : 0;
+            if (start + 3 < end && code[start + 2] == InstructionSet.OpCodes.POP_PARAMS.code()) {
+                parameters[i] = code[start + 3];
+            }
+        }
+        short[] builtInCodes = new short[builtIns.size()];
+        int slot = 0;
+        for (Short builtIn : builtIns) {
+            builtInCodes[slot++] = builtIn;
+        }
+        return new FunctionDirectory(offsets, lengths, parameters, locals, builtInCodes);
+    }
+
+    public static FunctionDirectory read(WordReader in) throws IOException {
+        int count = in.next();
+        if (count < 0) {
+            throw new IllegalStateException("Invalid function count " + count + " in function directory");
+        }
+        int[] offsets = new int[count];
+        int[] lengths = new int[count];
+        short[] parameters = new short[count];
+        short[] locals = new short[count];
+        for (int i = 0; i < count; i++) {
+            offsets[i] = readInt(in);
+            lengths[i] = readInt(in);
+            parameters[i] = in.next();
+            locals[i] = in.next();
+        }
+        int builtInCount = in.next();
+        if (builtInCount < 0) {
+            throw new IllegalStateException("Invalid built-in count " + builtInCount + " in function directory");
+        }
+        short[] builtInCodes = new short[builtInCount];
+        for (int i = 0; i < builtInCount; i++) {
+            builtInCodes[i] = in.next();
+        }
+        return new FunctionDirectory(offsets, lengths, parameters, locals, builtInCodes);
+    }
+
+    public void write(DataOutputStream out) throws IOException {
+        out.writeShort(offsets.length);
+        for (int i = 0; i < offsets.length; i++) {
+            out.writeInt(offsets[i]);
+            out.writeInt(lengths[i]);
+            out.writeShort(parameters[i]);
+            out.writeShort(locals[i]);
+        }
+        out.writeShort(builtInCodes.length);
+        for (short builtInCode : builtInCodes) {
+            out.writeShort(builtInCode);
+        }
+    }
+
+    private static int readInt(WordReader in) throws IOException {
+        int high = in.next() & 0xFFFF;
+        int low = in.next() & 0xFFFF;
+        return high << 16 | low;
+    }
+
+    public int getFunctionCount() {
+        return offsets.length;
+    }
+
+    public int getOffset(int functionIndex) {
+        return offsets[functionIndex];
+    }
+
+    public int getLength(int functionIndex) {
+        return lengths[functionIndex];
+    }
+
+    public short getParameters(int functionIndex) {
+        return parameters[functionIndex];
+    }
+
+    public short getLocals(int functionIndex) {
+        return locals[functionIndex];
+    }
+
+    /**
+     * @return the function codes of all built-ins called by the code in the order of their first call
+     */
+    public short[] getBuiltInCodes() {
+        return builtInCodes.clone();
+    }
+
+    /**
+     * Source of the next word of byte code.
+     */
+    @FunctionalInterface
+    public interface WordReader {
+
+        short next() throws IOException;
+    }
+}
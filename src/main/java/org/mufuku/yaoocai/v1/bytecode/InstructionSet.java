@@ -11,11 +11,20 @@ public interface InstructionSet {
 
     String PREAMBLE = "yaoocai";
     short MAJOR_VERSION = 1;
-    short MINOR_VERSION = 1;
+    short MINOR_VERSION = 3;
+    /**
+     * First minor version whose <code>function</code> instruction is followed by the number of local variables, older
+     * byte code is not supported anymore.
+     */
+    short FUNCTION_LOCALS_MINOR_VERSION = 2;
+    /**
+     * First minor version with a {@link FunctionDirectory} between the header and the code.
+     */
+    short FUNCTION_DIRECTORY_MINOR_VERSION = 3;
 
     enum OpCodes {
         // 0. functions
-        FUNCTION(0x0000, "function", 0),
+        FUNCTION(0x0000, "function", 1),
 
         // 1. constants
         I_CONST(0x0100, "i_const", 1),
@@ -66,6 +75,13 @@ public interface InstructionSet {
         final int opCodeParam;
         final boolean addressOpCode;
 
+        static {
+            for (OpCodes opCodes : OpCodes.values()) {
+                mapping.put(opCodes.code, opCodes);
+                mnemonic_mapping.put(opCodes.disassembleCode, opCodes);
+            }
+        }
+
         OpCodes(int code, String disassembleCode, int opCodeParam) {
             this(code, disassembleCode, opCodeParam, false);
         }
@@ -78,20 +94,10 @@ public interface InstructionSet {
         }
 
         public static OpCodes get(short opCode) {
-            if (mapping.isEmpty()) {
-                for (OpCodes opCodes : OpCodes.values()) {
-                    mapping.put(opCodes.code, opCodes);
-                }
-            }
             return mapping.get(opCode);
         }
 
         public static OpCodes getByMnemonic(String mnemonic) {
-            if (mnemonic_mapping.isEmpty()) {
-                for (OpCodes opCodes : OpCodes.values()) {
-                    mnemonic_mapping.put(opCodes.disassembleCode(), opCodes);
-                }
-            }
             return mnemonic_mapping.get(mnemonic);
         }
 
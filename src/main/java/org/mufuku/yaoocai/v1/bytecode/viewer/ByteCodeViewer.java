@@ -26,7 +26,9 @@ public class ByteCodeViewer extends BasicByteCodeConsumer {
         int functionIndex = 0;
         Short currentOpCode = getNext();
         while (in.available() > 0 && currentOpCode != null && currentOpCode == InstructionSet.OpCodes.FUNCTION.code()) {
-            out.println("Function: #" + functionIndex + (mainFunctionIndex == functionIndex ? " (main)" : ""));
+            short localVariables = in.readShort();
+            out.println("Function: #" + functionIndex + (mainFunctionIndex == functionIndex ? " (main)" : "")
+                    + " [" + localVariables + "]");
             currentOpCode = getNext();
             while (currentOpCode != null && currentOpCode != InstructionSet.OpCodes.FUNCTION.code()) {
                 checkOpCode(currentOpCode);
@@ -0,0 +1,354 @@
+package org.mufuku.yaoocai.v1.compiler;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compiles many source files concurrently on a fixed number of threads. Every source is read at once, compiled by
+ * its own {@link Compiler} and its byte code is written with a single write, next to the source or into an output
+ * directory, where the directories of the source relative to its root are mirrored. A failing source doesn't stop the
+ * others, all results are collected in a {@link Report}.
+ * <p>
+ * Usage: <code>BatchCompiler [-threads n] [-out directory] [-cache directory] (file | directory)...</code>,
+ * directories are searched recursively for <code>.yaoocai</code> files.
+ *
+ * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
+ */
+public class BatchCompiler {
+
+    public static final String SOURCE_EXTENSION = ".yaoocai";
+    public static final String BYTE_CODE_EXTENSION = ".yaoocaic";
+
+    private static final String USAGE = "Usage: BatchCompiler [-threads n] [-out directory] [-cache directory] (file | directory)...";
+
+    private final int threads;
+    private Path outputDirectory;
+    private Path cacheDirectory;
+
+    public BatchCompiler(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Invalid number of threads " + threads);
+        }
+        this.threads = threads;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int status = run(args, System.out);
+        if (status != 0) {
+            System.exit(status);
+        }
+    }
+
+    /**
+     * Runs the command line tool and prints the result of every source and the totals.
+     *
+     * @return 0 if all sources were compiled, 1 if a source failed and 2 for invalid arguments
+     */
+    static int run(String[] args, PrintStream console) throws InterruptedException {
+        BatchCompiler compiler;
+        Report report;
+        try {
+            int threads = Runtime.getRuntime().availableProcessors();
+            Path outputDirectory = null;
+            Path cacheDirectory = null;
+            List<Path> roots = new ArrayList<>();
+            for (int i = 0; i < args.length; i++) {
+                if ("-threads".equals(args[i]) && i + 1 < args.length) {
+                    threads = Integer.parseInt(args[++i]);
+                } else if ("-out".equals(args[i]) && i + 1 < args.length) {
+                    outputDirectory = Paths.get(args[++i]);
+                } else if ("-cache".equals(args[i]) && i + 1 < args.length) {
+                    cacheDirectory = Paths.get(args[++i]);
+                } else if (args[i].startsWith("-")) {
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+                } else {
+                    roots.add(Paths.get(args[i]));
+                }
+            }
+            if (roots.isEmpty()) {
+                throw new IllegalArgumentException("No sources given");
+            }
+            compiler = new BatchCompiler(threads);
+            compiler.setOutputDirectory(outputDirectory);
+            compiler.setCacheDirectory(cacheDirectory);
+            report = compiler.compile(findSources(roots));
+        } catch (IllegalArgumentException | IOException e) {
+            console.println(e.getMessage());
+            console.println(USAGE);
+            return 2;
+        }
+
+        for (FileResult result : report.getResults()) {
+            if (result.isSuccessful()) {
+                console.printf(Locale.ROOT, "OK     %s -> %s (%.1f ms)%n", result.getSource(), result.getTarget(), millis(result.getNanos()));
+            } else {
+                console.printf(Locale.ROOT, "FAILED %s: %s%n", result.getSource(), result.getError());
+            }
+        }
+        console.printf(Locale.ROOT, "%d compiled, %d failed in %.1f ms (%.1f files/s, %.1f KB/s) on %d threads%n",
+                report.getCompiledCount(), report.getFailedCount(), millis(report.getNanos()),
+                report.getFilesPerSecond(), report.getBytesPerSecond() / 1024, compiler.getThreads());
+        return report.getFailedCount() == 0 ? 0 : 1;
+    }
+
+    /**
+     * @return the given files and all sources in the given directories and their subdirectories, sorted by path
+     */
+    public static List<Source> findSources(List<Path> roots) throws IOException {
+        List<Source> sources = new ArrayList<>();
+        for (Path root : roots) {
+            if (Files.isDirectory(root)) {
+                try (Stream<Path> files = Files.walk(root)) {
+                    sources.addAll(files
+                            .filter(file -> file.getFileName().toString().endsWith(SOURCE_EXTENSION) && Files.isRegularFile(file))
+                            .sorted()
+                            .map(file -> new Source(file, root.relativize(file)))
+                            .collect(Collectors.toList()));
+                }
+            } else if (Files.isRegularFile(root)) {
+                sources.add(new Source(root, root.getFileName()));
+            } else {
+                throw new IllegalArgumentException("No such file or directory " + root);
+            }
+        }
+        return sources;
+    }
+
+    /**
+     * Compiles the given sources, the results are reported in the order of the sources.
+     *
+     * @throws IllegalArgumentException if two sources would be compiled into the same file
+     */
+    public Report compile(List<Source> sources) throws InterruptedException {
+        Map<Path, Path> targets = new HashMap<>();
+        for (Source source : sources) {
+            Path target = targetOf(source);
+            Path other = targets.put(target.toAbsolutePath().normalize(), source.getPath());
+            if (other != null) {
+                throw new IllegalArgumentException("Sources " + other + " and " + source.getPath() + " are both compiled to " + target);
+            }
+        }
+
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, sources.size())));
+        try {
+            List<Future<FileResult>> futures = new ArrayList<>(sources.size());
+            for (Source source : sources) {
+                futures.add(executor.submit(() -> compile(source)));
+            }
+            List<FileResult> results = new ArrayList<>(sources.size());
+            for (Future<FileResult> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Compilation task failed", e.getCause());
+                }
+            }
+            return new Report(results, System.nanoTime() - start);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private FileResult compile(Source source) {
+        Path target = targetOf(source);
+        long start = System.nanoTime();
+        long sourceSize = 0;
+        try {
+            byte[] sourceCode = Files.readAllBytes(source.getPath());
+            sourceSize = sourceCode.length;
+            ByteArrayOutputStream byteCode = new ByteArrayOutputStream();
+            Compiler compiler = new Compiler(new ByteArrayInputStream(sourceCode), byteCode);
+            compiler.setCacheDirectory(cacheDirectory);
+            compiler.compile();
+            if (target.getParent() != null) {
+                Files.createDirectories(target.getParent());
+            }
+            Files.write(target, byteCode.toByteArray());
+            return new FileResult(source.getPath(), target, sourceSize, System.nanoTime() - start, null);
+        } catch (Exception | StackOverflowError e) {
+            // a deeply nested source overflows the stack of its own task only, the other sources are compiled anyway
+            return new FileResult(source.getPath(), target, sourceSize, System.nanoTime() - start, e);
+        }
+    }
+
+    private Path targetOf(Source source) {
+        String name = source.getPath().getFileName().toString();
+        if (name.endsWith(SOURCE_EXTENSION)) {
+            name = name.substring(0, name.length() - SOURCE_EXTENSION.length());
+        }
+        name += BYTE_CODE_EXTENSION;
+        if (outputDirectory == null) {
+            return source.getPath().resolveSibling(name);
+        }
+        return outputDirectory.resolve(source.getRelativePath()).resolveSibling(name);
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public Path getOutputDirectory() {
+        return outputDirectory;
+    }
+
+    /**
+     * Sets the directory all byte code files are written to, the path of a source relative to its root is kept. By
+     * default the byte code is written next to its source.
+     */
+    public void setOutputDirectory(Path outputDirectory) {
+        this.outputDirectory = outputDirectory;
+    }
+
+    public Path getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    /**
+     * @see Compiler#setCacheDirectory(Path)
+     */
+    public void setCacheDirectory(Path cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    /**
+     * Source file together with its path relative to the root it was found in.
+     */
+    public static final class Source {
+
+        private final Path path;
+        private final Path relativePath;
+
+        Source(Path path, Path relativePath) {
+            this.path = path;
+            this.relativePath = relativePath;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        /**
+         * @return the path within the root, the file name if the source was given as a file
+         */
+        public Path getRelativePath() {
+            return relativePath;
+        }
+    }
+
+    /**
+     * Result of a single source.
+     */
+    public static final class FileResult {
+
+        private final Path source;
+        private final Path target;
+        private final long sourceSize;
+        private final long nanos;
+        private final Throwable error;
+
+        FileResult(Path source, Path target, long sourceSize, long nanos, Throwable error) {
+            this.source = source;
+            this.target = target;
+            this.sourceSize = sourceSize;
+            this.nanos = nanos;
+            this.error = error;
+        }
+
+        public Path getSource() {
+            return source;
+        }
+
+        public Path getTarget() {
+            return target;
+        }
+
+        public long getSourceSize() {
+            return sourceSize;
+        }
+
+        /**
+         * @return the time to read, compile and write the source
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        public boolean isSuccessful() {
+            return error == null;
+        }
+
+        /**
+         * @return the reason the source failed or <code>null</code> if it was compiled
+         */
+        public Throwable getError() {
+            return error;
+        }
+    }
+
+    /**
+     * Results of all sources of a batch together with the total time.
+     */
+    public static final class Report {
+
+        private final List<FileResult> results;
+        private final long nanos;
+
+        Report(List<FileResult> results, long nanos) {
+            this.results = Collections.unmodifiableList(results);
+            this.nanos = nanos;
+        }
+
+        public List<FileResult> getResults() {
+            return results;
+        }
+
+        /**
+         * @return the wall clock time of the whole batch
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        public int getCompiledCount() {
+            return (int) results.stream().filter(FileResult::isSuccessful).count();
+        }
+
+        public int getFailedCount() {
+            return results.size() - getCompiledCount();
+        }
+
+        public double getFilesPerSecond() {
+            return nanos == 0 ? 0 : results.size() * 1e9 / nanos;
+        }
+
+        /**
+         * @return the number of source bytes compiled per second
+         */
+        public double getBytesPerSecond() {
+            long bytes = results.stream().mapToLong(FileResult::getSourceSize).sum();
+            return nanos == 0 ? 0 : bytes * 1e9 / nanos;
+        }
+    }
+}
@@ -1,21 +1,43 @@
 package org.mufuku.yaoocai.v1.compiler;
 
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import org.mufuku.yaoocai.v1.bytecode.InstructionSet;
 import org.mufuku.yaoocai.v1.compiler.ast.ASTScript;
 import org.mufuku.yaoocai.v1.compiler.parser.Parser;
 import org.mufuku.yaoocai.v1.compiler.scanner.Scanner;
 import org.mufuku.yaoocai.v1.compiler.translator.Translator;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ForkJoinPool;
 
 /**
+ * Compiles a script into byte code. With a cache directory the byte code of every compiled source is kept on disk
+ * and a source which was compiled before isn't scanned, parsed and translated again.
+ *
  * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
  */
 public class Compiler {
 
+    /**
+     * Version of the produced byte code beyond the instruction set version, part of the cache keys. It has to be
+     * increased whenever the compiler emits different byte code for the same source.
+     */
+    static final int CODE_GENERATION_VERSION = 2;
+
     private final InputStream in;
     private final OutputStream out;
+    private Path cacheDirectory;
+    private ForkJoinPool pool;
 
     public Compiler(InputStream in, OutputStream out) {
         this.in = in;
@@ -23,10 +45,82 @@ public class Compiler {
     }
 
     public void compile() throws IOException {
+        if (cacheDirectory == null) {
+            compile(in, out);
+        } else {
+            compileCached();
+        }
+    }
+
+    private void compile(InputStream in, OutputStream out) throws IOException {
         Scanner scanner = new Scanner(in);
         Parser parser = new Parser(scanner);
         ASTScript script = parser.parse();
         Translator translator = new Translator(script, out);
+        translator.setPool(pool);
         translator.translate();
     }
+
+    private void compileCached() throws IOException {
+        byte[] source = ByteStreams.toByteArray(in);
+        Path entry = cacheDirectory.resolve(cacheKey(source));
+        try {
+            out.write(Files.readAllBytes(entry));
+            return;
+        } catch (NoSuchFileException e) {
+            // not compiled yet
+        }
+        ByteArrayOutputStream byteCode = new ByteArrayOutputStream();
+        compile(new ByteArrayInputStream(source), byteCode);
+        store(entry, byteCode.toByteArray());
+        byteCode.writeTo(out);
+    }
+
+    /**
+     * Writes a cache entry to a temporary file first and moves it into place, so other compilers sharing the
+     * directory only ever see complete entries.
+     */
+    private void store(Path entry, byte[] byteCode) throws IOException {
+        Files.createDirectories(cacheDirectory);
+        Path temporary = Files.createTempFile(cacheDirectory, ".compile-", ".tmp");
+        try {
+            Files.write(temporary, byteCode);
+            try {
+                Files.move(temporary, entry, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, entry, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    static String cacheKey(byte[] source) {
+        return Hashing.sha256().hashBytes(source) + "-" + InstructionSet.MAJOR_VERSION + "." + InstructionSet.MINOR_VERSION
+                + "." + CODE_GENERATION_VERSION + ".yaoocaic";
+    }
+
+    public Path getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    /**
+     * Sets the directory of the compilation cache, the directory can be shared by concurrent compilers. By default
+     * no cache is used.
+     */
+    public void setCacheDirectory(Path cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Sets the pool on which the functions of a script are translated in parallel, scanning and parsing stay
+     * sequential. By default the functions are translated one after another.
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
 }
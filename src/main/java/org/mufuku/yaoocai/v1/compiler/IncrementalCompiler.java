@@ -0,0 +1,46 @@
+package org.mufuku.yaoocai.v1.compiler;
+
+import org.mufuku.yaoocai.v1.compiler.ast.ASTScript;
+import org.mufuku.yaoocai.v1.compiler.parser.Parser;
+import org.mufuku.yaoocai.v1.compiler.scanner.Scanner;
+import org.mufuku.yaoocai.v1.compiler.translator.FunctionCodeCache;
+import org.mufuku.yaoocai.v1.compiler.translator.Translator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Compiler for successive versions of the same script, e.g. in an editor. Every version is parsed completely, but only
+ * the functions which changed (or whose callees changed their index or signature) since the previous version are
+ * translated again, the byte code of all other functions is reused. The byte code is the same as the one of the
+ * {@link Compiler}.
+ *
+ * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
+ */
+public class IncrementalCompiler {
+
+    private final FunctionCodeCache functionCodeCache = new FunctionCodeCache();
+
+    public void compile(InputStream in, OutputStream out) throws IOException {
+        Scanner scanner = new Scanner(in);
+        Parser parser = new Parser(scanner);
+        ASTScript script = parser.parse();
+        Translator translator = new Translator(script, out, functionCodeCache);
+        translator.translate();
+    }
+
+    /**
+     * @return the number of functions reused by the last compilation
+     */
+    public int getReusedFunctionCount() {
+        return functionCodeCache.getReusedFunctionCount();
+    }
+
+    /**
+     * @return the number of functions translated by the last compilation
+     */
+    public int getTranslatedFunctionCount() {
+        return functionCodeCache.getTranslatedFunctionCount();
+    }
+}
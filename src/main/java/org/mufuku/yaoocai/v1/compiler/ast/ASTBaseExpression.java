@@ -0,0 +1,27 @@
+package org.mufuku.yaoocai.v1.compiler.ast;
+
+/**
+ * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
+ */
+public abstract class ASTBaseExpression implements ASTExpression {
+
+    private boolean typeResolved;
+
+    private ASTType resolvedType;
+
+    @Override
+    public boolean isTypeResolved() {
+        return typeResolved;
+    }
+
+    @Override
+    public ASTType getResolvedType() {
+        return resolvedType;
+    }
+
+    @Override
+    public void setResolvedType(ASTType resolvedType) {
+        this.resolvedType = resolvedType;
+        this.typeResolved = true;
+    }
+}
@@ -6,19 +6,28 @@ package org.mufuku.yaoocai.v1.compiler.ast;
 public abstract class ASTBasicFunction {
 
     private final String identifier;
+    private final int symbol;
 
     private ASTType returnType;
 
     private ASTParameters parameters;
 
-    ASTBasicFunction(String identifier) {
+    ASTBasicFunction(String identifier, int symbol) {
         this.identifier = identifier;
+        this.symbol = symbol;
     }
 
     public String getIdentifier() {
         return identifier;
     }
 
+    /**
+     * @return the id of the identifier in the {@link org.mufuku.yaoocai.v1.compiler.scanner.SymbolTable} of the script
+     */
+    public int getSymbol() {
+        return symbol;
+    }
+
     public ASTType getReturnType() {
         return returnType;
     }
@@ -3,7 +3,7 @@ package org.mufuku.yaoocai.v1.compiler.ast;
 /**
  * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
  */
-public class ASTBinaryExpression implements ASTExpression {
+public class ASTBinaryExpression extends ASTBaseExpression {
 
     private final ASTExpression left;
 
@@ -27,4 +27,25 @@ public class ASTBlock implements ASTStatement, Iterable<ASTStatement> {
     public ASTStatement getLastStatement() {
         return statements.get(statements.size() - 1);
     }
+
+    /**
+     * @return the number of local variables declared in this block and all nested blocks
+     */
+    public int countLocalVariables() {
+        int count = 0;
+        for (ASTStatement statement : statements) {
+            if (statement instanceof ASTLocalVariableDeclarationStatement) {
+                count++;
+            } else if (statement instanceof ASTIfStatement) {
+                for (ASTBaseIfStatement ifStatement : ((ASTIfStatement) statement).getStatements()) {
+                    count += ifStatement.getBlock().countLocalVariables();
+                }
+            } else if (statement instanceof ASTWhileStatement) {
+                count += ((ASTWhileStatement) statement).getBlock().countLocalVariables();
+            } else if (statement instanceof ASTBlock) {
+                count += ((ASTBlock) statement).countLocalVariables();
+            }
+        }
+        return count;
+    }
 }
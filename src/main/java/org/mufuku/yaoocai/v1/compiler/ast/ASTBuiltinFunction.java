@@ -7,8 +7,8 @@ public class ASTBuiltinFunction extends ASTBasicFunction {
 
     private final short functionCode;
 
-    public ASTBuiltinFunction(String identifier, short functionCode) {
-        super(identifier);
+    public ASTBuiltinFunction(String identifier, int symbol, short functionCode) {
+        super(identifier, symbol);
         this.functionCode = functionCode;
     }
 
@@ -4,4 +4,17 @@ package org.mufuku.yaoocai.v1.compiler.ast;
  * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
  */
 public interface ASTExpression {
+
+    /**
+     * @return <code>true</code> if the type of the expression was determined by the semantic analysis
+     */
+    boolean isTypeResolved();
+
+    /**
+     * @return the type determined by the semantic analysis, <code>null</code> for calls of functions without return
+     * value
+     */
+    ASTType getResolvedType();
+
+    void setResolvedType(ASTType resolvedType);
 }
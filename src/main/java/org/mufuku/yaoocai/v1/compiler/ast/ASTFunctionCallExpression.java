@@ -3,19 +3,29 @@ package org.mufuku.yaoocai.v1.compiler.ast;
 /**
  * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
  */
-public class ASTFunctionCallExpression implements ASTExpression {
+public class ASTFunctionCallExpression extends ASTBaseExpression {
 
     private final String functionName;
+    private final int functionSymbol;
     private ASTArguments arguments;
 
-    public ASTFunctionCallExpression(String functionName) {
+    public ASTFunctionCallExpression(String functionName, int functionSymbol) {
         this.functionName = functionName;
+        this.functionSymbol = functionSymbol;
     }
 
     public String getFunctionName() {
         return functionName;
     }
 
+    /**
+     * @return the id of the function name in the {@link org.mufuku.yaoocai.v1.compiler.scanner.SymbolTable} of the
+     * script
+     */
+    public int getFunctionSymbol() {
+        return functionSymbol;
+    }
+
     public ASTArguments getArguments() {
         return arguments;
     }
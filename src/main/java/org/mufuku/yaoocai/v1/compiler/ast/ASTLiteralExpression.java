@@ -3,7 +3,7 @@ package org.mufuku.yaoocai.v1.compiler.ast;
 /**
  * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
  */
-public class ASTLiteralExpression<T> implements ASTExpression {
+public class ASTLiteralExpression<T> extends ASTBaseExpression {
 
     private final T value;
 
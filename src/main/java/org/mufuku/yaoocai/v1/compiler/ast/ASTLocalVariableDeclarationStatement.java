@@ -6,13 +6,15 @@ package org.mufuku.yaoocai.v1.compiler.ast;
 public class ASTLocalVariableDeclarationStatement implements ASTStatement {
 
     private final String identifier;
+    private final int symbol;
 
     private final ASTType type;
 
     private ASTExpression initializationExpression;
 
-    public ASTLocalVariableDeclarationStatement(String identifier, ASTType type) {
+    public ASTLocalVariableDeclarationStatement(String identifier, int symbol, ASTType type) {
         this.identifier = identifier;
+        this.symbol = symbol;
         this.type = type;
     }
 
@@ -20,6 +22,13 @@ public class ASTLocalVariableDeclarationStatement implements ASTStatement {
         return identifier;
     }
 
+    /**
+     * @return the id of the identifier in the {@link org.mufuku.yaoocai.v1.compiler.scanner.SymbolTable} of the script
+     */
+    public int getSymbol() {
+        return symbol;
+    }
+
     public ASTType getType() {
         return type;
     }
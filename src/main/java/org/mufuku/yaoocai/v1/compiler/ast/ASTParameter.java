@@ -6,11 +6,13 @@ package org.mufuku.yaoocai.v1.compiler.ast;
 public class ASTParameter {
 
     private final String identifier;
+    private final int symbol;
 
     private final ASTType type;
 
-    public ASTParameter(String identifier, ASTType type) {
+    public ASTParameter(String identifier, int symbol, ASTType type) {
         this.identifier = identifier;
+        this.symbol = symbol;
         this.type = type;
     }
 
@@ -18,6 +20,13 @@ public class ASTParameter {
         return identifier;
     }
 
+    /**
+     * @return the id of the identifier in the {@link org.mufuku.yaoocai.v1.compiler.scanner.SymbolTable} of the script
+     */
+    public int getSymbol() {
+        return symbol;
+    }
+
     public ASTType getType() {
         return type;
     }
@@ -1,36 +1,55 @@
 package org.mufuku.yaoocai.v1.compiler.ast;
 
 import org.mufuku.yaoocai.v1.compiler.parser.ParsingException;
+import org.mufuku.yaoocai.v1.compiler.scanner.SymbolTable;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
  */
 public class ASTScript {
 
-    private final Map<String, ASTBasicFunction> declaredFunctions = new LinkedHashMap<>();
+    private final List<ASTBasicFunction> declaredFunctions = new ArrayList<>();
+    private ASTBasicFunction[] functionsBySymbol = new ASTBasicFunction[16];
 
     private final short majorVersion;
 
     private final short minorVersion;
 
-    public ASTScript(short majorVersion, short minorVersion) {
+    private final SymbolTable symbolTable;
+
+    public ASTScript(short majorVersion, short minorVersion, SymbolTable symbolTable) {
         this.majorVersion = majorVersion;
         this.minorVersion = minorVersion;
+        this.symbolTable = symbolTable;
     }
 
     public void addDeclaredFunction(ASTBasicFunction declaredFunction) {
-        if (declaredFunctions.containsKey(declaredFunction.getIdentifier())) {
+        int symbol = declaredFunction.getSymbol();
+        if (symbol >= functionsBySymbol.length) {
+            functionsBySymbol = Arrays.copyOf(functionsBySymbol, Math.max(symbol + 1, functionsBySymbol.length * 2));
+        }
+        if (functionsBySymbol[symbol] != null) {
             throw new ParsingException("Already defined function: " + declaredFunction.getIdentifier());
         }
-        declaredFunctions.put(declaredFunction.getIdentifier(), declaredFunction);
+        functionsBySymbol[symbol] = declaredFunction;
+        declaredFunctions.add(declaredFunction);
     }
 
     public Collection<ASTBasicFunction> declaredFunctions() {
-        return declaredFunctions.values();
+        return Collections.unmodifiableList(declaredFunctions);
+    }
+
+    /**
+     * @return the identifiers of the script, the symbols of all functions, parameters and variables are ids in it
+     */
+    public SymbolTable getSymbolTable() {
+        return symbolTable;
     }
 
     public short getMajorVersion() {
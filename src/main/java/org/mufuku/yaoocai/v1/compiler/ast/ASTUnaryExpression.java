@@ -3,7 +3,7 @@ package org.mufuku.yaoocai.v1.compiler.ast;
 /**
  * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
  */
-public class ASTUnaryExpression implements ASTExpression {
+public class ASTUnaryExpression extends ASTBaseExpression {
 
     private final ASTExpression subExpression;
 
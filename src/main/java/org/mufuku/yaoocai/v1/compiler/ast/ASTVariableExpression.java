@@ -3,15 +3,24 @@ package org.mufuku.yaoocai.v1.compiler.ast;
 /**
  * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
  */
-public class ASTVariableExpression implements ASTExpression {
+public class ASTVariableExpression extends ASTBaseExpression {
 
     private final String identifier;
+    private final int symbol;
 
-    public ASTVariableExpression(String identifier) {
+    public ASTVariableExpression(String identifier, int symbol) {
         this.identifier = identifier;
+        this.symbol = symbol;
     }
 
     public String getIdentifier() {
         return identifier;
     }
+
+    /**
+     * @return the id of the identifier in the {@link org.mufuku.yaoocai.v1.compiler.scanner.SymbolTable} of the script
+     */
+    public int getSymbol() {
+        return symbol;
+    }
 }
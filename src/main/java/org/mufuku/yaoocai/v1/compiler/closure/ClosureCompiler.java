@@ -0,0 +1,422 @@
+package org.mufuku.yaoocai.v1.compiler.closure;
+
+import org.mufuku.yaoocai.v1.compiler.ast.*;
+import org.mufuku.yaoocai.v1.compiler.parser.Parser;
+import org.mufuku.yaoocai.v1.compiler.parser.ParsingException;
+import org.mufuku.yaoocai.v1.compiler.scanner.Scanner;
+import org.mufuku.yaoocai.v1.compiler.translator.Translator;
+import org.mufuku.yaoocai.v1.vm.OperandStack;
+import org.mufuku.yaoocai.v1.vm.builtins.BuiltInVMFunction;
+import org.mufuku.yaoocai.v1.vm.builtins.DefaultBuiltIns;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles a script into a tree of closures instead of byte code. Local variables are resolved to slots of an int
+ * array (the same indexes the {@link Translator} uses), calls are bound to their target function and operators are
+ * specialised when the closures are built, so nothing is looked up or decoded at run time. This is the fast path for
+ * scripts which are compiled and executed within the same process.
+ *
+ * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
+ */
+public class ClosureCompiler {
+
+    private static final String MAIN_FUNCTION = "main";
+
+    private final InputStream in;
+    private final Map<Short, BuiltInVMFunction> builtIns;
+
+    private final Map<String, ClosureFunction> functions = new HashMap<>();
+    private final Map<String, ASTBuiltinFunction> builtinFunctions = new HashMap<>();
+
+    private ClosureScript closureScript;
+    private Map<String, Integer> slots;
+    private int returnSlot;
+
+    public ClosureCompiler(InputStream in) {
+        this(in, DefaultBuiltIns.STANDARD_BUILT_INS);
+    }
+
+    public ClosureCompiler(InputStream in, Map<Short, BuiltInVMFunction> builtIns) {
+        this.in = in;
+        this.builtIns = builtIns;
+    }
+
+    public ClosureScript compile() throws IOException {
+        Scanner scanner = new Scanner(in);
+        Parser parser = new Parser(scanner);
+        ASTScript script = parser.parse();
+        if (findMain(script) == null) {
+            throw new ParsingException("No main function found");
+        }
+        // the closures are built for a valid script only
+        Translator.check(script);
+
+        closureScript = new ClosureScript();
+        for (ASTBasicFunction basicFunction : script.declaredFunctions()) {
+            if (basicFunction instanceof ASTFunction) {
+                ASTFunction function = (ASTFunction) basicFunction;
+                int parameters = function.getParameters().getParameterSize();
+                int locals = parameters + function.getBlock().countLocalVariables();
+                functions.put(function.getIdentifier(), new ClosureFunction(parameters, locals, function.getReturnType() != null));
+            } else if (basicFunction instanceof ASTBuiltinFunction) {
+                builtinFunctions.put(basicFunction.getIdentifier(), (ASTBuiltinFunction) basicFunction);
+            }
+        }
+        for (ASTBasicFunction basicFunction : script.declaredFunctions()) {
+            if (basicFunction instanceof ASTFunction) {
+                compileFunction((ASTFunction) basicFunction);
+            }
+        }
+        closureScript.setMain(functions.get(MAIN_FUNCTION));
+        return closureScript;
+    }
+
+    private static ASTFunction findMain(ASTScript script) {
+        for (ASTBasicFunction function : script.declaredFunctions()) {
+            if (function instanceof ASTFunction && MAIN_FUNCTION.equals(function.getIdentifier())) {
+                return (ASTFunction) function;
+            }
+        }
+        return null;
+    }
+
+    private void compileFunction(ASTFunction function) {
+        ClosureFunction closureFunction = functions.get(function.getIdentifier());
+        slots = new HashMap<>();
+        for (ASTParameter parameter : function.getParameters()) {
+            slots.put(parameter.getIdentifier(), slots.size());
+        }
+        returnSlot = closureFunction.getReturnSlot();
+        closureFunction.setBody(compileBlock(function.getBlock()));
+    }
+
+    private Statement compileBlock(ASTBlock block) {
+        List<Statement> compiled = new ArrayList<>();
+        for (ASTStatement statement : block) {
+            Statement compiledStatement = compileStatement(statement);
+            if (compiledStatement != null) {
+                compiled.add(compiledStatement);
+            }
+        }
+        if (compiled.isEmpty()) {
+            return locals -> false;
+        } else if (compiled.size() == 1) {
+            return compiled.get(0);
+        }
+        Statement[] statements = compiled.toArray(new Statement[compiled.size()]);
+        return locals -> {
+            for (Statement statement : statements) {
+                if (statement.execute(locals)) {
+                    return true;
+                }
+            }
+            return false;
+        };
+    }
+
+    private Statement compileStatement(ASTStatement statement) {
+        if (statement instanceof ASTLocalVariableDeclarationStatement) {
+            return compileLocalVariable((ASTLocalVariableDeclarationStatement) statement);
+        } else if (statement instanceof ASTReturnStatement) {
+            return compileReturnStatement((ASTReturnStatement) statement);
+        } else if (statement instanceof ASTIfStatement) {
+            return compileIfStatement((ASTIfStatement) statement);
+        } else if (statement instanceof ASTExpressionStatement) {
+            Expression expression = compileExpression(((ASTExpressionStatement) statement).getExpression());
+            return locals -> {
+                expression.eval(locals);
+                return false;
+            };
+        } else if (statement instanceof ASTWhileStatement) {
+            return compileWhileStatement((ASTWhileStatement) statement);
+        } else if (statement instanceof ASTBlock) {
+            return compileBlock((ASTBlock) statement);
+        }
+        return null;
+    }
+
+    private Statement compileLocalVariable(ASTLocalVariableDeclarationStatement statement) {
+        int slot = slots.size();
+        slots.put(statement.getIdentifier(), slot);
+        if (statement.getInitializationExpression() == null) {
+            return null;
+        }
+        Expression expression = compileExpression(statement.getInitializationExpression());
+        return locals -> {
+            locals[slot] = expression.eval(locals);
+            return false;
+        };
+    }
+
+    private Statement compileReturnStatement(ASTReturnStatement statement) {
+        int slot = returnSlot;
+        if (statement.getExpression() == null) {
+            return locals -> true;
+        }
+        Expression expression = compileExpression(statement.getExpression());
+        return locals -> {
+            locals[slot] = expression.eval(locals);
+            return true;
+        };
+    }
+
+    private Statement compileIfStatement(ASTIfStatement statement) {
+        List<ASTBaseIfStatement> ifStatements = statement.getStatements();
+        List<Expression> conditionList = new ArrayList<>();
+        List<Statement> blockList = new ArrayList<>();
+        Statement elseBlock = locals -> false;
+        for (ASTBaseIfStatement ifStatement : ifStatements) {
+            if (ifStatement.getConditionExpression() != null) {
+                conditionList.add(compileExpression(ifStatement.getConditionExpression()));
+                blockList.add(compileBlock(ifStatement.getBlock()));
+            } else {
+                elseBlock = compileBlock(ifStatement.getBlock());
+            }
+        }
+        Statement otherwise = elseBlock;
+        if (conditionList.size() == 1) {
+            Expression condition = conditionList.get(0);
+            Statement block = blockList.get(0);
+            return locals -> condition.eval(locals) != 0 ? block.execute(locals) : otherwise.execute(locals);
+        }
+        Expression[] conditions = conditionList.toArray(new Expression[conditionList.size()]);
+        Statement[] blocks = blockList.toArray(new Statement[blockList.size()]);
+        return locals -> {
+            for (int i = 0; i < conditions.length; i++) {
+                if (conditions[i].eval(locals) != 0) {
+                    return blocks[i].execute(locals);
+                }
+            }
+            return otherwise.execute(locals);
+        };
+    }
+
+    private Statement compileWhileStatement(ASTWhileStatement statement) {
+        Expression condition = compileExpression(statement.getConditionExpression());
+        Statement block = compileBlock(statement.getBlock());
+        return locals -> {
+            while (condition.eval(locals) != 0) {
+                if (block.execute(locals)) {
+                    return true;
+                }
+            }
+            return false;
+        };
+    }
+
+    private Expression compileExpression(ASTExpression expression) {
+        if (expression instanceof ASTLiteralExpression) {
+            int value = literalValue((ASTLiteralExpression<?>) expression);
+            return locals -> value;
+        } else if (expression instanceof ASTFunctionCallExpression) {
+            return compileFunctionCall((ASTFunctionCallExpression) expression);
+        } else if (expression instanceof ASTVariableExpression) {
+            int slot = slot((ASTVariableExpression) expression);
+            return locals -> locals[slot];
+        } else if (expression instanceof ASTBinaryExpression) {
+            return compileBinaryExpression((ASTBinaryExpression) expression);
+        } else if (expression instanceof ASTUnaryExpression) {
+            return compileUnaryExpression((ASTUnaryExpression) expression);
+        }
+        throw new ParsingException("Unsupported expression " + expression);
+    }
+
+    private static int literalValue(ASTLiteralExpression<?> expression) {
+        Object value = expression.getValue();
+        if (value instanceof Boolean) {
+            return (Boolean) value ? 1 : 0;
+        }
+        return (Integer) value;
+    }
+
+    private int slot(ASTVariableExpression expression) {
+        return slots.get(expression.getIdentifier());
+    }
+
+    private Expression compileFunctionCall(ASTFunctionCallExpression expression) {
+        String functionName = expression.getFunctionName();
+        Expression[] arguments = compileArguments(expression.getArguments());
+        ClosureFunction function = functions.get(functionName);
+        if (function != null) {
+            int frameSize = function.getFrameSize();
+            return locals -> {
+                int[] calleeLocals = new int[frameSize];
+                for (int i = 0; i < arguments.length; i++) {
+                    calleeLocals[i] = arguments[i].eval(locals);
+                }
+                return function.invoke(calleeLocals);
+            };
+        }
+        ASTBuiltinFunction builtinFunction = builtinFunctions.get(functionName);
+        BuiltInVMFunction builtIn = builtIns.get(builtinFunction.getFunctionCode());
+        if (builtIn == null) {
+            throw new IllegalStateException("Unknown built-in function " + builtinFunction.getFunctionCode());
+        }
+        boolean returnsValue = builtinFunction.getReturnType() != null;
+        ClosureScript script = closureScript;
+        return locals -> {
+            OperandStack stack = script.stack;
+            for (Expression argument : arguments) {
+                stack.push(argument.eval(locals));
+            }
+            builtIn.handle(stack, script);
+            return returnsValue ? stack.pop() : 0;
+        };
+    }
+
+    private Expression[] compileArguments(ASTArguments arguments) {
+        List<Expression> compiled = new ArrayList<>();
+        if (arguments != null) {
+            for (ASTExpression argument : arguments) {
+                compiled.add(compileExpression(argument));
+            }
+        }
+        return compiled.toArray(new Expression[compiled.size()]);
+    }
+
+    private Expression compileBinaryExpression(ASTBinaryExpression expression) {
+        ASTOperator operator = expression.getOperator();
+        if (ASTOperator.ASSIGNMENT_OPERATORS.contains(operator)) {
+            return compileAssignment(expression);
+        } else if (operator == ASTOperator.CONDITIONAL_OR) {
+            Expression left = compileExpression(expression.getLeft());
+            Expression right = compileExpression(expression.getRight());
+            return locals -> left.eval(locals) != 0 || right.eval(locals) != 0 ? 1 : 0;
+        } else if (operator == ASTOperator.CONDITIONAL_AND) {
+            Expression left = compileExpression(expression.getLeft());
+            Expression right = compileExpression(expression.getRight());
+            return locals -> left.eval(locals) != 0 && right.eval(locals) != 0 ? 1 : 0;
+        } else if (expression.getRight() instanceof ASTLiteralExpression) {
+            int constant = literalValue((ASTLiteralExpression<?>) expression.getRight());
+            if (expression.getLeft() instanceof ASTVariableExpression) {
+                return compileVariableConstantOperation(operator, slot((ASTVariableExpression) expression.getLeft()), constant);
+            }
+            Expression left = compileExpression(expression.getLeft());
+            return compileOperation(operator, left, locals -> constant);
+        }
+        return compileOperation(operator, compileExpression(expression.getLeft()), compileExpression(expression.getRight()));
+    }
+
+    private Expression compileAssignment(ASTBinaryExpression expression) {
+        int slot = slot((ASTVariableExpression) expression.getLeft());
+        Expression right = compileExpression(expression.getRight());
+        switch (expression.getOperator()) {
+            case ASSIGNMENT:
+                return locals -> locals[slot] = right.eval(locals);
+            case ADDITION_ASSIGNMENT:
+                return locals -> locals[slot] = (short) (locals[slot] + right.eval(locals));
+            case SUBTRACTION_ASSIGNMENT:
+                return locals -> locals[slot] = (short) (locals[slot] - right.eval(locals));
+            case MULTIPLICATION_ASSIGNMENT:
+                return locals -> locals[slot] = (short) (locals[slot] * right.eval(locals));
+            case DIVISION_ASSIGNMENT:
+                return locals -> locals[slot] = (short) (locals[slot] / right.eval(locals));
+            default:
+                throw new ParsingException("Unsupported assignment " + expression.getOperator());
+        }
+    }
+
+    /**
+     * Specialisation for the most common shape within loops and conditions: a local variable combined with a constant.
+     */
+    private static Expression compileVariableConstantOperation(ASTOperator operator, int slot, int constant) {
+        switch (operator) {
+            case ADDITION:
+                return locals -> (short) (locals[slot] + constant);
+            case SUBTRACTION:
+                return locals -> (short) (locals[slot] - constant);
+            case EQUAL:
+                return locals -> locals[slot] == constant ? 1 : 0;
+            case NOT_EQUAL:
+                return locals -> locals[slot] != constant ? 1 : 0;
+            case LESS_THAN:
+                return locals -> locals[slot] < constant ? 1 : 0;
+            case LESS_THAN_OR_EQUAL:
+                return locals -> locals[slot] <= constant ? 1 : 0;
+            case GREATER_THAN:
+                return locals -> locals[slot] > constant ? 1 : 0;
+            case GREATER_THAN_OR_EQUAL:
+                return locals -> locals[slot] >= constant ? 1 : 0;
+            default:
+                return compileOperation(operator, locals -> locals[slot], locals -> constant);
+        }
+    }
+
+    private static Expression compileOperation(ASTOperator operator, Expression left, Expression right) {
+        switch (operator) {
+            case ADDITION:
+                return locals -> (short) (left.eval(locals) + right.eval(locals));
+            case SUBTRACTION:
+                return locals -> (short) (left.eval(locals) - right.eval(locals));
+            case MULTIPLICATION:
+                return locals -> (short) (left.eval(locals) * right.eval(locals));
+            case DIVISION:
+                return locals -> (short) (left.eval(locals) / right.eval(locals));
+            case MODULO:
+                return locals -> (short) (left.eval(locals) % right.eval(locals));
+            case EQUAL:
+                return locals -> left.eval(locals) == right.eval(locals) ? 1 : 0;
+            case NOT_EQUAL:
+                return locals -> left.eval(locals) != right.eval(locals) ? 1 : 0;
+            case LESS_THAN:
+                return locals -> left.eval(locals) < right.eval(locals) ? 1 : 0;
+            case LESS_THAN_OR_EQUAL:
+                return locals -> left.eval(locals) <= right.eval(locals) ? 1 : 0;
+            case GREATER_THAN:
+                return locals -> left.eval(locals) > right.eval(locals) ? 1 : 0;
+            case GREATER_THAN_OR_EQUAL:
+                return locals -> left.eval(locals) >= right.eval(locals) ? 1 : 0;
+            case BITWISE_AND:
+                return locals -> left.eval(locals) & right.eval(locals);
+            case BITWISE_OR:
+                return locals -> left.eval(locals) | right.eval(locals);
+            default:
+                throw new ParsingException("Unsupported operator " + operator);
+        }
+    }
+
+    private Expression compileUnaryExpression(ASTUnaryExpression expression) {
+        switch (expression.getUnaryOperator()) {
+            case PRE_INCREMENT: {
+                int slot = slot((ASTVariableExpression) expression.getSubExpression());
+                return locals -> locals[slot] = (short) (locals[slot] + 1);
+            }
+            case PRE_DECREMENT: {
+                int slot = slot((ASTVariableExpression) expression.getSubExpression());
+                return locals -> locals[slot] = (short) (locals[slot] - 1);
+            }
+            case POST_INCREMENT: {
+                int slot = slot((ASTVariableExpression) expression.getSubExpression());
+                return locals -> {
+                    int value = locals[slot];
+                    locals[slot] = (short) (value + 1);
+                    return value;
+                };
+            }
+            case POST_DECREMENT: {
+                int slot = slot((ASTVariableExpression) expression.getSubExpression());
+                return locals -> {
+                    int value = locals[slot];
+                    locals[slot] = (short) (value - 1);
+                    return value;
+                };
+            }
+            case NEGATE: {
+                Expression subExpression = compileExpression(expression.getSubExpression());
+                return locals -> (short) -subExpression.eval(locals);
+            }
+            case BITWISE_NOT: {
+                Expression subExpression = compileExpression(expression.getSubExpression());
+                return locals -> subExpression.eval(locals) ^ 1;
+            }
+            default:
+                throw new ParsingException("Unsupported operator " + expression.getUnaryOperator());
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package org.mufuku.yaoocai.v1.compiler.closure;
+
+/**
+ * Function of a {@link ClosureScript}. Calls are bound to the function object when the closures are built, the body is
+ * set afterwards so functions can call each other (and themselves) regardless of their order in the script.
+ *
+ * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
+ */
+final class ClosureFunction {
+
+    private final int parameterCount;
+    private final int localCount;
+    private final boolean returnsValue;
+
+    private Statement body;
+
+    ClosureFunction(int parameterCount, int localCount, boolean returnsValue) {
+        this.parameterCount = parameterCount;
+        this.localCount = localCount;
+        this.returnsValue = returnsValue;
+    }
+
+    /**
+     * @param locals the arguments followed by the local variables, see {@link #getFrameSize()}
+     * @return the returned value, 0 if the function doesn't return a value
+     */
+    int invoke(int[] locals) {
+        body.execute(locals);
+        return locals[localCount];
+    }
+
+    int getParameterCount() {
+        return parameterCount;
+    }
+
+    /**
+     * @return the slot after the local variables, it holds the value of the executed return statement
+     */
+    int getReturnSlot() {
+        return localCount;
+    }
+
+    /**
+     * @return the size of the locals of an invocation, the local variables and the return slot
+     */
+    int getFrameSize() {
+        return localCount + 1;
+    }
+
+    boolean returnsValue() {
+        return returnsValue;
+    }
+
+    void setBody(Statement body) {
+        this.body = body;
+    }
+}
@@ -0,0 +1,61 @@
+package org.mufuku.yaoocai.v1.compiler.closure;
+
+import org.mufuku.yaoocai.v1.vm.OperandStack;
+import org.mufuku.yaoocai.v1.vm.VirtualMachine;
+
+import java.io.PrintStream;
+
+/**
+ * A script compiled by the {@link ClosureCompiler}. The script is executed directly by its closures, without producing
+ * and decoding byte code. Built-in functions work on a shared operand stack, so a script must not be executed by
+ * multiple threads at the same time.
+ *
+ * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
+ */
+public class ClosureScript implements VirtualMachine {
+
+    final OperandStack stack = new OperandStack();
+
+    private PrintStream out = System.out;   // NOSONAR we want ot use out put stream on purpose at
+
+    private ClosureFunction main;
+
+    ClosureScript() {
+    }
+
+    @Override
+    public void execute() {
+        invokeMain();
+    }
+
+    /**
+     * Runs the main function.
+     *
+     * @param arguments the arguments of the main function
+     * @return the value returned by the main function or <code>null</code> if it doesn't return a value
+     */
+    public Integer invokeMain(int... arguments) {
+        int parameters = main.getParameterCount();
+        if (arguments.length != parameters) {
+            throw new IllegalArgumentException("Main function expects " + parameters + " arguments but got " + arguments.length);
+        }
+        int[] locals = new int[main.getFrameSize()];
+        System.arraycopy(arguments, 0, locals, 0, arguments.length);
+        int result = main.invoke(locals);
+        return main.returnsValue() ? result : null;
+    }
+
+    void setMain(ClosureFunction main) {
+        this.main = main;
+    }
+
+    @Override
+    public PrintStream getOut() {
+        return out;
+    }
+
+    @Override
+    public void setOut(PrintStream out) {
+        this.out = out;
+    }
+}
@@ -0,0 +1,13 @@
+package org.mufuku.yaoocai.v1.compiler.closure;
+
+/**
+ * Pre-resolved expression of a {@link ClosureScript}. Integers are held in the range of <code>short</code> and
+ * booleans as 0 or 1, just like on the operand stack of the VM.
+ *
+ * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
+ */
+@FunctionalInterface
+interface Expression {
+
+    int eval(int[] locals);
+}
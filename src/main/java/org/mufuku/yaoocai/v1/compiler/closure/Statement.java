@@ -0,0 +1,14 @@
+package org.mufuku.yaoocai.v1.compiler.closure;
+
+/**
+ * Pre-resolved statement of a {@link ClosureScript}. A statement returns <code>true</code> if a return statement has
+ * been executed, the returned value is stored in the return slot of the locals (see
+ * {@link ClosureFunction#getReturnSlot()}). Otherwise the execution continues with the next statement.
+ *
+ * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
+ */
+@FunctionalInterface
+interface Statement {
+
+    boolean execute(int[] locals);
+}
@@ -33,7 +33,7 @@ public class Parser {
     }
 
     private ASTScript parseScript() throws IOException {
-        ASTScript script = new ASTScript(InstructionSet.MAJOR_VERSION, InstructionSet.MINOR_VERSION);
+        ASTScript script = new ASTScript(InstructionSet.MAJOR_VERSION, InstructionSet.MINOR_VERSION, scanner.getSymbolTable());
         while (scanner.getCurrentSymbol() == ScannerSymbols.BUILTIN) {
             ASTBuiltinFunction builtinFunction = parseBuiltInFunctionDeclaration();
             script.addDeclaredFunction(builtinFunction);
@@ -49,7 +49,7 @@ public class Parser {
         checkAndProceed(ScannerSymbols.BUILTIN);
         checkAndProceed(ScannerSymbols.FUNCTION);
 
-        String functionName = checkIdentifierAndProceed();
+        int functionName = checkIdentifierAndProceed();
 
         ASTParameters parameters = parseParameters();
         ASTType returnType = null;
@@ -58,8 +58,8 @@ public class Parser {
         }
 
         checkAndProceed(ScannerSymbols.BUILTIN_ASSIGNMENT);
-        String type = checkIdentifierAndProceed();
-        if (!"vmfunc".equals(type)) {
+        int type = checkIdentifierAndProceed();
+        if (!"vmfunc".equals(name(type))) {
             throw new ParsingException("Currently only virtual machine functions (vm_func) is allowed");
         }
         checkAndProceed(ScannerSymbols.PAR_START);
@@ -68,7 +68,7 @@ public class Parser {
         scanner.moveToNextSymbol();
         checkAndProceed(ScannerSymbols.PAR_END);
 
-        ASTBuiltinFunction function = new ASTBuiltinFunction(functionName, functionCode);
+        ASTBuiltinFunction function = new ASTBuiltinFunction(name(functionName), functionName, functionCode);
         function.setParameters(parameters);
         function.setReturnType(returnType);
         return function;
@@ -76,7 +76,7 @@ public class Parser {
 
     private ASTFunction parseFunctionDeclaration() throws IOException {
         checkAndProceed(ScannerSymbols.FUNCTION);
-        String functionName = checkIdentifierAndProceed();
+        int functionName = checkIdentifierAndProceed();
 
         ASTParameters parameters = parseParameters();
         ASTType returnType = null;
@@ -84,7 +84,7 @@ public class Parser {
             returnType = parseType();
         }
         ASTBlock block = parseBlock();
-        ASTFunction function = new ASTFunction(functionName);
+        ASTFunction function = new ASTFunction(name(functionName), functionName);
         function.setParameters(parameters);
         function.setReturnType(returnType);
         function.setBlock(block);
@@ -106,10 +106,10 @@ public class Parser {
     }
 
     private ASTParameter parseParameterDeclaration() throws IOException {
-        String parameterName = checkIdentifierAndProceed();
+        int parameterName = checkIdentifierAndProceed();
         checkAndProceed(ScannerSymbols.COLON);
         ASTType parameterType = parseType();
-        return new ASTParameter(parameterName, parameterType);
+        return new ASTParameter(name(parameterName), parameterName, parameterType);
     }
 
     private ASTBlock parseBlock() throws IOException {
@@ -134,7 +134,7 @@ public class Parser {
 
     private ASTLocalVariableDeclarationStatement parseLocalVariableDeclarationStatement() throws IOException {
         checkAndProceed(ScannerSymbols.VARIABLE);
-        String variableName = checkIdentifierAndProceed();
+        int variableName = checkIdentifierAndProceed();
         checkAndProceed(ScannerSymbols.COLON);
         ASTType type = parseType();
         ASTExpression expression = null;
@@ -143,7 +143,7 @@ public class Parser {
         }
         checkAndProceed(ScannerSymbols.SEMICOLON);
         ASTLocalVariableDeclarationStatement localVariableDeclarationStatement =
-                new ASTLocalVariableDeclarationStatement(variableName, type);
+                new ASTLocalVariableDeclarationStatement(name(variableName), variableName, type);
         localVariableDeclarationStatement.setInitializationExpression(expression);
         return localVariableDeclarationStatement;
     }
@@ -378,9 +378,9 @@ public class Parser {
         if (scanner.getCurrentSymbol() == ScannerSymbols.PAR_START) {
             expression = parseParExpression();
         } else if (scanner.getCurrentSymbol() == ScannerSymbols.IDENTIFIER) {
-            String identifier = checkIdentifierAndProceed();
+            int identifier = checkIdentifierAndProceed();
             if (scanner.getCurrentSymbol() != ScannerSymbols.PAR_START) {
-                expression = new ASTVariableExpression(identifier);
+                expression = new ASTVariableExpression(name(identifier), identifier);
                 expression = parsePostIncrementExpression(expression);
             } else {
                 expression = parseFunctionCall(identifier);
@@ -400,8 +400,8 @@ public class Parser {
         return expression;
     }
 
-    private ASTExpression parseFunctionCall(String identifier) throws IOException {
-        ASTFunctionCallExpression function = new ASTFunctionCallExpression(identifier);
+    private ASTExpression parseFunctionCall(int identifier) throws IOException {
+        ASTFunctionCallExpression function = new ASTFunctionCallExpression(name(identifier), identifier);
         checkAndProceed(ScannerSymbols.PAR_START);
         if (scanner.getCurrentSymbol() != ScannerSymbols.PAR_END) {
             ASTArguments arguments = parseArguments();
@@ -474,13 +474,20 @@ public class Parser {
         scanner.moveToNextSymbol();
     }
 
-    private String checkIdentifierAndProceed() throws IOException {
+    /**
+     * @return the symbol id of the identifier
+     */
+    private int checkIdentifierAndProceed() throws IOException {
         check(ScannerSymbols.IDENTIFIER);
-        String identifier = scanner.getCurrentIdentifier();
+        int identifier = scanner.getCurrentIdentifierId();
         scanner.moveToNextSymbol();
         return identifier;
     }
 
+    private String name(int symbol) {
+        return scanner.getSymbolTable().name(symbol);
+    }
+
     private void check(ScannerSymbols symbol) {
         if (scanner.getCurrentSymbol() != symbol) {
             throw new ParsingException("expected " + symbol + ", but got: " + scanner.getCurrentSymbol());
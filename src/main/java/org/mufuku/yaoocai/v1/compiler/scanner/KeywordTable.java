@@ -0,0 +1,99 @@
+package org.mufuku.yaoocai.v1.compiler.scanner;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Perfect hash table of all keywords. The hash only looks at the length and the first, second and last character of
+ * a word, the multiplier is chosen once when the class is loaded so no two keywords share a slot. A lookup costs a
+ * hash and at most one comparison of characters, no string is created.
+ *
+ * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
+ */
+final class KeywordTable {
+
+    private static final int SIZE = 32;
+    private static final int MASK = SIZE - 1;
+    private static final int MAX_MULTIPLIER = 1024;
+
+    private static final String[] KEYWORDS = new String[SIZE];
+    private static final char[][] KEYWORD_CHARACTERS = new char[SIZE][];
+    private static final ScannerSymbols[] SYMBOLS = new ScannerSymbols[SIZE];
+    private static final int MULTIPLIER;
+
+    static {
+        Map<String, ScannerSymbols> keywords = new LinkedHashMap<>();
+        keywords.put("builtin", ScannerSymbols.BUILTIN);
+        keywords.put("function", ScannerSymbols.FUNCTION);
+        keywords.put("var", ScannerSymbols.VARIABLE);
+        keywords.put("if", ScannerSymbols.IF);
+        keywords.put("else", ScannerSymbols.ELSE);
+        keywords.put("while", ScannerSymbols.WHILE);
+        keywords.put("return", ScannerSymbols.RETURN);
+        keywords.put("true", ScannerSymbols.TRUE);
+        keywords.put("false", ScannerSymbols.FALSE);
+        keywords.put("integer", ScannerSymbols.INTEGER);
+        keywords.put("boolean", ScannerSymbols.BOOLEAN);
+        MULTIPLIER = findMultiplier(keywords);
+        for (Map.Entry<String, ScannerSymbols> keyword : keywords.entrySet()) {
+            char[] characters = keyword.getKey().toCharArray();
+            int slot = slot(characters, 0, characters.length, MULTIPLIER);
+            KEYWORDS[slot] = keyword.getKey();
+            KEYWORD_CHARACTERS[slot] = characters;
+            SYMBOLS[slot] = keyword.getValue();
+        }
+    }
+
+    private KeywordTable() {
+    }
+
+    private static int findMultiplier(Map<String, ScannerSymbols> keywords) {
+        for (int multiplier = 1; multiplier < MAX_MULTIPLIER; multiplier++) {
+            boolean[] used = new boolean[SIZE];
+            boolean perfect = true;
+            for (String keyword : keywords.keySet()) {
+                int slot = slot(keyword.toCharArray(), 0, keyword.length(), multiplier);
+                if (used[slot]) {
+                    perfect = false;
+                    break;
+                }
+                used[slot] = true;
+            }
+            if (perfect) {
+                return multiplier;
+            }
+        }
+        throw new IllegalStateException("No perfect hash for the keywords");
+    }
+
+    private static int slot(char[] characters, int start, int length, int multiplier) {
+        int second = characters[start + (length > 1 ? 1 : 0)];
+        int hash = (characters[start] * multiplier + second) * multiplier + characters[start + length - 1] + length;
+        return hash & MASK;
+    }
+
+    /**
+     * @return the slot of the keyword with the given characters or <code>-1</code> if they are no keyword
+     */
+    static int find(char[] characters, int start, int length) {
+        int slot = slot(characters, start, length, MULTIPLIER);
+        char[] keyword = KEYWORD_CHARACTERS[slot];
+        if (keyword == null || keyword.length != length) {
+            return -1;
+        }
+        for (int i = 0; i < length; i++) {
+            if (keyword[i] != characters[start + i]) {
+                return -1;
+            }
+        }
+        return slot;
+    }
+
+    static String keyword(int slot) {
+        return KEYWORDS[slot];
+    }
+
+    static ScannerSymbols symbol(int slot) {
+        return SYMBOLS[slot];
+    }
+}
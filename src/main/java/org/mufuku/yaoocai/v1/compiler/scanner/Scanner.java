@@ -1,38 +1,103 @@
 package org.mufuku.yaoocai.v1.compiler.scanner;
 
+import com.google.common.io.ByteStreams;
 import org.mufuku.yaoocai.v1.compiler.parser.ParsingException;
 
-import java.io.*;
-import java.nio.charset.Charset;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
 /**
+ * Scanner over the whole source decoded into a character array. Tokens are kept as offsets into the array,
+ * identifiers are interned into the {@link SymbolTable} of the scanner and keywords are recognized by the
+ * {@link KeywordTable}.
+ *
  * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
  */
 public class Scanner {
 
-    private final Reader reader;
+    private InputStream in;
+    private Path file;
+    private char[] source;
+    private int length;
+    private int position = -1;
     private char currentCharacter;
     private ScannerSymbols currentSymbol;
 
+    private final SymbolTable symbols = new SymbolTable();
+    private int currentIdentifierId = -1;
     private String currentIdentifier;
 
-    private String currentNumber;
+    private int numberStart;
+    private int numberLength;
     private boolean comment;
 
     public Scanner(InputStream in) {
-        this.reader = new BufferedReader(new InputStreamReader(in, Charset.forName("UTF-8")));
+        this.in = in;
     }
 
-    private void nextChar() throws IOException {
-        int ch = reader.read();
-        if (ch >= 0) {
-            currentCharacter = (char) ch;
+    /**
+     * Creates a scanner of the given file, the file is mapped into memory and decoded at once.
+     */
+    public Scanner(Path file) {
+        this.file = file;
+    }
+
+    public Scanner(char[] source, int length) {
+        if (length < 0 || length > source.length) {
+            throw new IllegalArgumentException("Invalid length " + length);
+        }
+        this.source = source;
+        this.length = length;
+    }
+
+    /**
+     * Reads and decodes the whole source, the stream or file is not used anymore afterwards.
+     */
+    private void load() throws IOException {
+        CharBuffer characters;
+        if (file != null) {
+            characters = decode(file);
         } else {
-            currentCharacter = 0;
+            characters = StandardCharsets.UTF_8.decode(ByteBuffer.wrap(ByteStreams.toByteArray(in)));
         }
+        this.length = characters.remaining();
+        this.source = characters(characters);
+        this.in = null;
+        this.file = null;
+    }
+
+    private static CharBuffer decode(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return StandardCharsets.UTF_8.decode(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    private static char[] characters(CharBuffer buffer) {
+        if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0) {
+            return buffer.array();
+        }
+        char[] characters = new char[buffer.remaining()];
+        buffer.duplicate().get(characters);
+        return characters;
+    }
+
+    private void nextChar() {
+        if (position < length) {
+            position++;
+        }
+        currentCharacter = position < length ? source[position] : 0;
     }
 
     public void initialize() throws IOException {
+        if (source == null) {
+            load();
+        }
         nextChar();
         moveToNextSymbol();
     }
@@ -44,7 +109,7 @@ public class Scanner {
         } while (comment);
     }
 
-    private void moveToNextSymbol0() throws IOException {
+    private void moveToNextSymbol0() {
         while (Character.isWhitespace(currentCharacter)) {
             nextChar();
         }
@@ -125,7 +190,7 @@ public class Scanner {
         }
     }
 
-    private void scanAdditionAdditionAssignmentOrIncrement() throws IOException {
+    private void scanAdditionAdditionAssignmentOrIncrement() {
         currentSymbol = ScannerSymbols.ADDITION_OPERATOR;
         nextChar();
         if (currentCharacter == '=') {
@@ -137,7 +202,7 @@ public class Scanner {
         }
     }
 
-    private void scanSubtractionBuiltinAssignmentOrDecrement() throws IOException {
+    private void scanSubtractionBuiltinAssignmentOrDecrement() {
         currentSymbol = ScannerSymbols.SUBTRACTION_OPERATOR;
         nextChar();
         if (currentCharacter == '>') {
@@ -152,7 +217,7 @@ public class Scanner {
         }
     }
 
-    private void scanDivisionCommentOrDivisionalAssignment() throws IOException {
+    private void scanDivisionCommentOrDivisionalAssignment() {
         nextChar();
         if (currentCharacter == '*') { // block comment
             scanBlockComment();
@@ -166,7 +231,7 @@ public class Scanner {
         }
     }
 
-    private void scanBlockComment() throws IOException {
+    private void scanBlockComment() {
         nextChar();
         while (currentCharacter != '*' && currentCharacter != 0) {
             nextChar();
@@ -182,7 +247,7 @@ public class Scanner {
         comment = true;
     }
 
-    private void scanLineComment() throws IOException {
+    private void scanLineComment() {
         nextChar();
         while (currentCharacter != '\n' && currentCharacter != 0) {
             nextChar();
@@ -194,7 +259,7 @@ public class Scanner {
         comment = true;
     }
 
-    private void scanMultiplicationOrMultiplicativeAssignment() throws IOException {
+    private void scanMultiplicationOrMultiplicativeAssignment() {
         currentSymbol = ScannerSymbols.MULTIPLICATION_OPERATOR;
         nextChar();
         if (currentCharacter == '=') {
@@ -203,7 +268,7 @@ public class Scanner {
         }
     }
 
-    private void scanBitwiseNotOrInequality() throws IOException {
+    private void scanBitwiseNotOrInequality() {
         currentSymbol = ScannerSymbols.BITWISE_NEGATION_OPERATOR;
         nextChar();
         if (currentCharacter == '=') {
@@ -212,7 +277,7 @@ public class Scanner {
         }
     }
 
-    private void scanEqualOrAssignment() throws IOException {
+    private void scanEqualOrAssignment() {
         nextChar();
         if (currentCharacter == '=') {
             currentSymbol = ScannerSymbols.EQUALITY_OPERATOR;
@@ -222,7 +287,7 @@ public class Scanner {
         }
     }
 
-    private void scanGreaterOrGreaterEquals() throws IOException {
+    private void scanGreaterOrGreaterEquals() {
         currentSymbol = ScannerSymbols.GREATER_OPERATOR;
         nextChar();
         if (currentCharacter == '=') {
@@ -231,7 +296,7 @@ public class Scanner {
         }
     }
 
-    private void scanLessThanOrLessThanEquals() throws IOException {
+    private void scanLessThanOrLessThanEquals() {
         currentSymbol = ScannerSymbols.LESS_OPERATOR;
         nextChar();
         if (currentCharacter == '=') {
@@ -240,7 +305,7 @@ public class Scanner {
         }
     }
 
-    private void scanBitwiseOrOrConditionalOr() throws IOException {
+    private void scanBitwiseOrOrConditionalOr() {
         currentSymbol = ScannerSymbols.BITWISE_OR_OPERATOR;
         nextChar();
         if (currentCharacter == '|') {
@@ -249,7 +314,7 @@ public class Scanner {
         }
     }
 
-    private void scanBitwiseAndOrConditionalAnd() throws IOException {
+    private void scanBitwiseAndOrConditionalAnd() {
         currentSymbol = ScannerSymbols.BITWISE_AND_OPERATOR;
         nextChar();
         if (currentCharacter == '&') {
@@ -258,62 +323,31 @@ public class Scanner {
         }
     }
 
-    private void scanIdentifierOrKeyword() throws IOException {
-        currentIdentifier = "";
-        StringBuilder tmp = new StringBuilder();
-        while (Character.isJavaIdentifierPart(currentCharacter)) {
-            tmp.append(currentCharacter);
+    private void scanIdentifierOrKeyword() {
+        int start = position;
+        // the end of the source is a 0 character, which would be an ignorable identifier part
+        while (currentCharacter != 0 && Character.isJavaIdentifierPart(currentCharacter)) {
             nextChar();
         }
-        currentIdentifier = tmp.toString();
-
-        switch (currentIdentifier) {
-            case "builtin":
-                currentSymbol = ScannerSymbols.BUILTIN;
-                break;
-            case "function":
-                currentSymbol = ScannerSymbols.FUNCTION;
-                break;
-            case "var":
-                currentSymbol = ScannerSymbols.VARIABLE;
-                break;
-            case "if":
-                currentSymbol = ScannerSymbols.IF;
-                break;
-            case "else":
-                currentSymbol = ScannerSymbols.ELSE;
-                break;
-            case "while":
-                currentSymbol = ScannerSymbols.WHILE;
-                break;
-            case "return":
-                currentSymbol = ScannerSymbols.RETURN;
-                break;
-            case "true":
-                currentSymbol = ScannerSymbols.TRUE;
-                break;
-            case "false":
-                currentSymbol = ScannerSymbols.FALSE;
-                break;
-            case "integer":
-                currentSymbol = ScannerSymbols.INTEGER;
-                break;
-            case "boolean":
-                currentSymbol = ScannerSymbols.BOOLEAN;
-                break;
-            default:
-                currentSymbol = ScannerSymbols.IDENTIFIER;
-                break;
+        int keyword = KeywordTable.find(source, start, position - start);
+        if (keyword >= 0) {
+            currentSymbol = KeywordTable.symbol(keyword);
+            currentIdentifierId = -1;
+            currentIdentifier = KeywordTable.keyword(keyword);
+        } else {
+            currentSymbol = ScannerSymbols.IDENTIFIER;
+            currentIdentifierId = symbols.intern(source, start, position - start);
+            currentIdentifier = symbols.name(currentIdentifierId);
         }
     }
 
-    private void scanIntegerLiteral() throws IOException {
-        StringBuilder tmp = new StringBuilder();
+    private void scanIntegerLiteral() {
+        int start = position;
         while ((currentCharacter >= '0' && currentCharacter <= '9')) {
-            tmp.append(currentCharacter);
             nextChar();
         }
-        this.currentNumber = tmp.toString();
+        numberStart = start;
+        numberLength = position - start;
         currentSymbol = ScannerSymbols.INTEGER_LITERAL;
     }
 
@@ -325,11 +359,41 @@ public class Scanner {
         return currentIdentifier;
     }
 
+    /**
+     * @return the symbol id of the current identifier or <code>-1</code> if the current word is a keyword
+     */
+    public int getCurrentIdentifierId() {
+        return currentIdentifierId;
+    }
+
+    /**
+     * @return the identifiers scanned so far
+     */
+    public SymbolTable getSymbolTable() {
+        return symbols;
+    }
+
     public short getNumberAsShort() {
-        return Short.parseShort(currentNumber);
+        return (short) parseNumber(Short.MAX_VALUE);
     }
 
     public int getNumberAsInteger() {
-        return Integer.parseInt(currentNumber);
+        return parseNumber(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Parses the digits of the current number, a number beyond the maximum is left to the parse methods of the JDK
+     * which throw the usual {@link NumberFormatException}.
+     */
+    private int parseNumber(int maximum) {
+        long value = 0;
+        for (int i = numberStart; i < numberStart + numberLength; i++) {
+            value = value * 10 + (source[i] - '0');
+            if (value > maximum) {
+                String number = new String(source, numberStart, numberLength);
+                return maximum == Short.MAX_VALUE ? Short.parseShort(number) : Integer.parseInt(number);
+            }
+        }
+        return (int) value;
     }
 }
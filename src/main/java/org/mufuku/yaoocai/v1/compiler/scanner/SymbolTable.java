@@ -0,0 +1,118 @@
+package org.mufuku.yaoocai.v1.compiler.scanner;
+
+import java.util.Arrays;
+
+/**
+ * Interned identifiers of a script. Every distinct identifier gets a dense id starting at 0 and its string is created
+ * only once, the parser and the translator work with the ids and keep their tables in arrays indexed by them.
+ *
+ * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
+ */
+public final class SymbolTable {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private String[] names = new String[INITIAL_CAPACITY];
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    // open addressing, every slot holds the id + 1 of its symbol or 0 if it is free
+    private int[] slots = new int[INITIAL_CAPACITY * 2];
+    private int size;
+
+    /**
+     * @return the id of the identifier with the given characters, a new id if it wasn't interned yet
+     */
+    public int intern(char[] characters, int start, int length) {
+        int hash = hash(characters, start, length);
+        int mask = slots.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int id = slots[slot] - 1;
+            if (id < 0) {
+                return add(new String(characters, start, length), hash, slot);
+            }
+            if (hashes[id] == hash && matches(names[id], characters, start, length)) {
+                return id;
+            }
+        }
+    }
+
+    public int intern(String name) {
+        return intern(name.toCharArray(), 0, name.length());
+    }
+
+    /**
+     * @return the id of the given identifier or <code>-1</code> if it isn't part of the script
+     */
+    public int find(String name) {
+        char[] characters = name.toCharArray();
+        int hash = hash(characters, 0, characters.length);
+        int mask = slots.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int id = slots[slot] - 1;
+            if (id < 0 || hashes[id] == hash && names[id].equals(name)) {
+                return id;
+            }
+        }
+    }
+
+    public String name(int id) {
+        if (id < 0 || id >= size) {
+            throw new IllegalArgumentException("Invalid symbol " + id);
+        }
+        return names[id];
+    }
+
+    /**
+     * @return the number of interned identifiers, all ids are below it
+     */
+    public int size() {
+        return size;
+    }
+
+    private int add(String name, int hash, int slot) {
+        int id = size++;
+        if (id == names.length) {
+            names = Arrays.copyOf(names, id * 2);
+            hashes = Arrays.copyOf(hashes, id * 2);
+        }
+        names[id] = name;
+        hashes[id] = hash;
+        slots[slot] = id + 1;
+        if (size * 2 > slots.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hashes[id] & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id + 1;
+        }
+    }
+
+    private static int hash(char[] characters, int start, int length) {
+        int hash = 0;
+        for (int i = start; i < start + length; i++) {
+            hash = 31 * hash + characters[i];
+        }
+        // spread the bits, the table only uses the low ones
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean matches(String name, char[] characters, int start, int length) {
+        if (name.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (name.charAt(i) != characters[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
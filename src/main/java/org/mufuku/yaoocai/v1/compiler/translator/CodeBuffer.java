@@ -0,0 +1,24 @@
+package org.mufuku.yaoocai.v1.compiler.translator;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * In-memory byte code of a single function. Operands which are written before their value is known (jump offsets to
+ * {@link Label}s which aren't bound yet) are patched in place later.
+ *
+ * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
+ */
+class CodeBuffer extends ByteArrayOutputStream {
+
+    /**
+     * @return the word address of the next word written
+     */
+    int position() {
+        return count / 2;
+    }
+
+    void patch(int address, short value) {
+        buf[address * 2] = (byte) (value >>> 8);
+        buf[address * 2 + 1] = (byte) value;
+    }
+}
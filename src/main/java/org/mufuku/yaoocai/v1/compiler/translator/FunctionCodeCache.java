@@ -0,0 +1,74 @@
+package org.mufuku.yaoocai.v1.compiler.translator;
+
+import com.google.common.hash.HashCode;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Byte code of the functions of the last translation together with their {@link FunctionFingerprint}s. A
+ * {@link Translator} with a cache only translates the functions whose fingerprint changed and copies the byte code of
+ * all others. Functions which are no longer part of a script are dropped after its translation.
+ *
+ * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
+ */
+public class FunctionCodeCache {
+
+    private Map<String, Entry> entries = new HashMap<>();
+    private Map<String, Entry> nextEntries = new HashMap<>();
+    private int reusedFunctions;
+    private int translatedFunctions;
+
+    void startTranslation() {
+        this.nextEntries = new HashMap<>();
+        this.reusedFunctions = 0;
+        this.translatedFunctions = 0;
+    }
+
+    void finishTranslation() {
+        this.entries = nextEntries;
+    }
+
+    /**
+     * @return the byte code of the function or <code>null</code> if it has to be translated
+     */
+    byte[] lookup(String functionName, HashCode fingerprint) {
+        Entry entry = entries.get(functionName);
+        if (entry != null && entry.fingerprint.equals(fingerprint)) {
+            nextEntries.put(functionName, entry);
+            reusedFunctions++;
+            return entry.code;
+        }
+        return null;
+    }
+
+    void store(String functionName, HashCode fingerprint, byte[] code) {
+        nextEntries.put(functionName, new Entry(fingerprint, code));
+        translatedFunctions++;
+    }
+
+    /**
+     * @return the number of functions copied by the last translation
+     */
+    public int getReusedFunctionCount() {
+        return reusedFunctions;
+    }
+
+    /**
+     * @return the number of functions translated by the last translation
+     */
+    public int getTranslatedFunctionCount() {
+        return translatedFunctions;
+    }
+
+    private static final class Entry {
+
+        private final HashCode fingerprint;
+        private final byte[] code;
+
+        Entry(HashCode fingerprint, byte[] code) {
+            this.fingerprint = fingerprint;
+            this.code = code;
+        }
+    }
+}
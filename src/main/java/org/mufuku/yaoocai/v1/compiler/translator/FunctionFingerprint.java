@@ -0,0 +1,130 @@
+package org.mufuku.yaoocai.v1.compiler.translator;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import org.mufuku.yaoocai.v1.compiler.ast.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Fingerprint of everything the byte code of a function depends on: its own syntax tree and, for every function it
+ * calls, the index or built-in code and the signature of the callee. Two functions with the same fingerprint are
+ * translated into the same byte code.
+ *
+ * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
+ */
+final class FunctionFingerprint {
+
+    private final FunctionStorage functionStorage;
+    private final StringBuilder text = new StringBuilder();
+    private final Map<String, Integer> callees = new TreeMap<>();
+
+    private FunctionFingerprint(FunctionStorage functionStorage) {
+        this.functionStorage = functionStorage;
+    }
+
+    static HashCode of(ASTFunction function, FunctionStorage functionStorage) {
+        FunctionFingerprint fingerprint = new FunctionFingerprint(functionStorage);
+        fingerprint.appendSignature(function);
+        fingerprint.appendBlock(function.getBlock());
+        for (Map.Entry<String, Integer> callee : fingerprint.callees.entrySet()) {
+            fingerprint.appendCallee(callee.getKey(), callee.getValue());
+        }
+        return Hashing.sha256().hashString(fingerprint.text, StandardCharsets.UTF_8);
+    }
+
+    private void appendSignature(ASTBasicFunction function) {
+        text.append('(');
+        for (ASTParameter parameter : function.getParameters()) {
+            text.append(parameter.getIdentifier()).append(':').append(parameter.getType().getTypeName()).append(',');
+        }
+        text.append("):").append(function.getReturnType() == null ? "" : function.getReturnType().getTypeName());
+    }
+
+    private void appendCallee(String name, int symbol) {
+        ASTBasicFunction callee = functionStorage.resolveFunction(symbol);
+        text.append('\n').append(name).append('=');
+        if (callee instanceof ASTBuiltinFunction) {
+            text.append("builtin ").append(((ASTBuiltinFunction) callee).getFunctionCode());
+            appendSignature(callee);
+        } else if (callee != null) {
+            text.append("function ").append(functionStorage.getFunctionIndex(symbol));
+            appendSignature(callee);
+        }
+    }
+
+    private void appendBlock(ASTBlock block) {
+        text.append('{');
+        for (ASTStatement statement : block) {
+            appendStatement(statement);
+            text.append(';');
+        }
+        text.append('}');
+    }
+
+    private void appendStatement(ASTStatement statement) {
+        if (statement instanceof ASTLocalVariableDeclarationStatement) {
+            ASTLocalVariableDeclarationStatement declaration = (ASTLocalVariableDeclarationStatement) statement;
+            text.append("var ").append(declaration.getIdentifier()).append(':').append(declaration.getType().getTypeName()).append('=');
+            appendExpression(declaration.getInitializationExpression());
+        } else if (statement instanceof ASTReturnStatement) {
+            text.append("return ");
+            appendExpression(((ASTReturnStatement) statement).getExpression());
+        } else if (statement instanceof ASTIfStatement) {
+            for (ASTBaseIfStatement ifStatement : ((ASTIfStatement) statement).getStatements()) {
+                text.append("if ");
+                appendExpression(ifStatement.getConditionExpression());
+                appendBlock(ifStatement.getBlock());
+            }
+        } else if (statement instanceof ASTWhileStatement) {
+            ASTWhileStatement whileStatement = (ASTWhileStatement) statement;
+            text.append("while ");
+            appendExpression(whileStatement.getConditionExpression());
+            appendBlock(whileStatement.getBlock());
+        } else if (statement instanceof ASTExpressionStatement) {
+            appendExpression(((ASTExpressionStatement) statement).getExpression());
+        } else if (statement instanceof ASTBlock) {
+            appendBlock((ASTBlock) statement);
+        } else {
+            text.append(statement.getClass().getSimpleName());
+        }
+    }
+
+    private void appendExpression(ASTExpression expression) {
+        if (expression == null) {
+            text.append('-');
+        } else if (expression instanceof ASTBinaryExpression) {
+            ASTBinaryExpression binary = (ASTBinaryExpression) expression;
+            text.append('(').append(binary.getOperator()).append(' ');
+            appendExpression(binary.getLeft());
+            text.append(' ');
+            appendExpression(binary.getRight());
+            text.append(')');
+        } else if (expression instanceof ASTUnaryExpression) {
+            ASTUnaryExpression unary = (ASTUnaryExpression) expression;
+            text.append('(').append(unary.getUnaryOperator()).append(' ');
+            appendExpression(unary.getSubExpression());
+            text.append(')');
+        } else if (expression instanceof ASTLiteralExpression) {
+            ASTLiteralExpression<?> literal = (ASTLiteralExpression<?>) expression;
+            text.append(literal.getType().getTypeName()).append(' ').append(literal.getValue());
+        } else if (expression instanceof ASTVariableExpression) {
+            text.append('$').append(((ASTVariableExpression) expression).getIdentifier());
+        } else if (expression instanceof ASTFunctionCallExpression) {
+            ASTFunctionCallExpression call = (ASTFunctionCallExpression) expression;
+            callees.put(call.getFunctionName(), call.getFunctionSymbol());
+            text.append("(call ").append(call.getFunctionName());
+            if (call.getArguments() != null) {
+                for (ASTExpression argument : call.getArguments()) {
+                    text.append(' ');
+                    appendExpression(argument);
+                }
+            }
+            text.append(')');
+        } else {
+            text.append(expression.getClass().getSimpleName());
+        }
+    }
+}
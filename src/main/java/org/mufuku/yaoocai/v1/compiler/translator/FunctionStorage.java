@@ -5,42 +5,52 @@ import org.mufuku.yaoocai.v1.compiler.ast.ASTBuiltinFunction;
 import org.mufuku.yaoocai.v1.compiler.ast.ASTFunction;
 import org.mufuku.yaoocai.v1.compiler.ast.ASTType;
 
-import java.util.HashMap;
-import java.util.LinkedHashMap;
-import java.util.Map;
-
 /**
+ * Functions of a script indexed by the symbol ids of their names.
+ *
  * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
  */
 class FunctionStorage {
 
-    private final Map<String, ASTBuiltinFunction> builtinIndex = new HashMap<>();
-    private final Map<String, Short> functionIndex = new LinkedHashMap<>();
-
-    private final Map<String, ASTFunction> functions = new LinkedHashMap<>();
+    private final ASTBuiltinFunction[] builtins;
+    private final ASTFunction[] functions;
+    private final short[] functionIndex;
 
     private short functionCount = 0;
 
+    FunctionStorage(int symbolCount) {
+        this.builtins = new ASTBuiltinFunction[symbolCount];
+        this.functions = new ASTFunction[symbolCount];
+        this.functionIndex = new short[symbolCount];
+    }
+
     void addBuiltinFunction(ASTBuiltinFunction function) {
-        builtinIndex.put(function.getIdentifier(), function);
+        builtins[function.getSymbol()] = function;
     }
 
-    ASTBuiltinFunction getBuiltinFunction(String name) {
-        return builtinIndex.get(name);
+    ASTBuiltinFunction getBuiltinFunction(int symbol) {
+        return builtins[symbol];
     }
 
     void addFunction(ASTFunction astFunction) {
-        String name = astFunction.getIdentifier();
-        functionIndex.put(name, functionCount++);
-        functions.put(name, astFunction);
+        int symbol = astFunction.getSymbol();
+        functionIndex[symbol] = functionCount++;
+        functions[symbol] = astFunction;
+    }
+
+    boolean isFunction(int symbol) {
+        return symbol >= 0 && functions[symbol] != null;
     }
 
-    Short getFunctionIndex(String name) {
-        return functionIndex.get(name);
+    /**
+     * @return the index of the function, only valid if {@link #isFunction(int)}
+     */
+    short getFunctionIndex(int symbol) {
+        return functionIndex[symbol];
     }
 
-    ASTType getFunctionReturnType(String functionName) {
-        ASTBasicFunction function = resolveFunction(functionName);
+    ASTType getFunctionReturnType(int symbol) {
+        ASTBasicFunction function = resolveFunction(symbol);
         ASTType returnType = null;
         if (function != null) {
             returnType = function.getReturnType();
@@ -48,10 +58,11 @@ class FunctionStorage {
         return returnType;
     }
 
-    @SuppressWarnings("unchecked")
-    ASTBasicFunction resolveFunction(String functionName) {
-        Map<String, ASTBasicFunction> localFunctions = (Map<String, ASTBasicFunction>) (Map<String, ?>) this.functions;
-        Map<String, ASTBasicFunction> builtInFunctions = (Map<String, ASTBasicFunction>) (Map<String, ?>) this.builtinIndex;
-        return localFunctions.getOrDefault(functionName, builtInFunctions.get(functionName));
+    /**
+     * @return the function with the given name, a function declared in the script takes precedence over a built-in
+     */
+    ASTBasicFunction resolveFunction(int symbol) {
+        ASTFunction function = functions[symbol];
+        return function != null ? function : builtins[symbol];
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,48 @@
+package org.mufuku.yaoocai.v1.compiler.translator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Target of relative jumps within a {@link CodeBuffer}. Jumps to a label which isn't bound yet are recorded and their
+ * offsets are patched once the label is bound, so the code is generated in a single pass.
+ *
+ * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
+ */
+class Label {
+
+    private static final int UNBOUND = -1;
+
+    private final List<Integer> pendingOperands = new ArrayList<>();
+    private int address = UNBOUND;
+
+    /**
+     * Sets the offset operand at the given address to jump to this label.
+     */
+    void jumpFrom(int operandAddress, CodeBuffer code) {
+        if (address == UNBOUND) {
+            pendingOperands.add(operandAddress);
+        } else {
+            code.patch(operandAddress, offset(operandAddress));
+        }
+    }
+
+    /**
+     * Binds the label to the current position of the code and patches all jumps to it.
+     */
+    void bind(CodeBuffer code) {
+        if (address != UNBOUND) {
+            throw new IllegalStateException("Label already bound");
+        }
+        this.address = code.position();
+        for (int operandAddress : pendingOperands) {
+            code.patch(operandAddress, offset(operandAddress));
+        }
+        pendingOperands.clear();
+    }
+
+    private short offset(int operandAddress) {
+        // jump targets are relative to the address of the operand
+        return (short) (address - operandAddress);
+    }
+}
@@ -2,48 +2,65 @@ package org.mufuku.yaoocai.v1.compiler.translator;
 
 import org.mufuku.yaoocai.v1.compiler.ast.ASTType;
 import org.mufuku.yaoocai.v1.compiler.parser.ParsingException;
-
-import java.util.LinkedHashMap;
-import java.util.Map;
+import org.mufuku.yaoocai.v1.compiler.scanner.SymbolTable;
 
 /**
+ * Local variables of the function being translated indexed by the symbol ids of their names. A storage is reused for
+ * all functions of a translator, {@link #reset()} only clears the variables of the previous function.
+ *
  * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
  */
 class LocalVariableStorage {
 
-    private final Map<String, LocalVariable> localVariables = new LinkedHashMap<>();
+    private final SymbolTable symbols;
+    private final LocalVariable[] localVariables;
+    private final int[] declaredSymbols;
     private short counter = 0;
 
-    short addVariable(String name, ASTType type) {
-        if (localVariables.containsKey(name)) {
-            throw new ParsingException("Duplicate variable: " + name);
+    LocalVariableStorage(SymbolTable symbols) {
+        this.symbols = symbols;
+        this.localVariables = new LocalVariable[symbols.size()];
+        this.declaredSymbols = new int[symbols.size()];
+    }
+
+    void reset() {
+        for (int i = 0; i < counter; i++) {
+            localVariables[declaredSymbols[i]] = null;
+        }
+        counter = 0;
+    }
+
+    short addVariable(int symbol, ASTType type) {
+        if (localVariables[symbol] != null) {
+            throw new ParsingException("Duplicate variable: " + symbols.name(symbol));
         }
-        LocalVariable localVariable = new LocalVariable(type, counter++);
-        localVariables.put(name, localVariable);
+        LocalVariable localVariable = new LocalVariable(type, counter);
+        declaredSymbols[counter++] = symbol;
+        localVariables[symbol] = localVariable;
         return localVariable.getIndex();
     }
 
-    short getVariableIndex(String name) {
-        LocalVariable localVariable = getLocalVariable(name);
+    short getVariableIndex(int symbol) {
+        LocalVariable localVariable = getLocalVariable(symbol);
         if (!localVariable.isInitialized()) {
-            throw new ParsingException("Variable " + name + " not initialized");
+            throw new ParsingException("Variable " + symbols.name(symbol) + " not initialized");
         }
         return localVariable.getIndex();
     }
 
-    ASTType getVariableType(String name) {
-        return getLocalVariable(name).getType();
+    ASTType getVariableType(int symbol) {
+        return getLocalVariable(symbol).getType();
     }
 
-    private LocalVariable getLocalVariable(String name) {
-        LocalVariable localVariable = localVariables.get(name);
+    private LocalVariable getLocalVariable(int symbol) {
+        LocalVariable localVariable = localVariables[symbol];
         if (localVariable == null) {
-            throw new ParsingException("Invalid variable " + name + " used");
+            throw new ParsingException("Invalid variable " + symbols.name(symbol) + " used");
         }
         return localVariable;
     }
 
-    void markInitialized(String variableName) {
-        localVariables.get(variableName).setInitialized();
+    void markInitialized(int symbol) {
+        localVariables[symbol].setInitialized();
     }
 }
@@ -1,46 +1,96 @@
 package org.mufuku.yaoocai.v1.compiler.translator;
 
+import com.google.common.hash.HashCode;
+import com.google.common.io.ByteStreams;
 import org.mufuku.yaoocai.v1.bytecode.BasicByteCodeProducer;
 import org.mufuku.yaoocai.v1.bytecode.InstructionSet;
 import org.mufuku.yaoocai.v1.compiler.ast.*;
 import org.mufuku.yaoocai.v1.compiler.parser.ParsingException;
 
-import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.EnumSet;
-import java.util.Iterator;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
  */
 public class Translator extends BasicByteCodeProducer {
 
-    private static final String INCOMPATIBLE_TYPE_ERROR_MESSAGE = "Incompatible types";
-    private static final String NOT_A_STATEMENT_ERROR_MESSAGE = "Not a statement";
-
     private final ASTScript script;
+    private final FunctionCodeCache functionCodeCache;
 
     private LocalVariableStorage currentLocalVariableStorage;
-    private FunctionStorage functionStorage = new FunctionStorage();
+    private FunctionStorage functionStorage;
     private TypeRegistry typeRegistry;
-    private ASTFunction currentFunction;
+    private CodeBuffer code;
+    private ForkJoinPool pool;
 
     public Translator(ASTScript script, OutputStream out) {
+        this(script, out, null);
+    }
+
+    /**
+     * Creates a translator which only translates the functions changed since the last translation with the given
+     * cache.
+     */
+    public Translator(ASTScript script, OutputStream out, FunctionCodeCache functionCodeCache) {
         super(out);
         this.script = script;
+        this.functionCodeCache = functionCodeCache;
+    }
+
+    /**
+     * Creates a translator for single functions of the given parent, its function storage is shared and only read.
+     */
+    private Translator(Translator parent) {
+        super(ByteStreams.nullOutputStream());
+        this.script = parent.script;
+        this.functionCodeCache = null;
+        this.functionStorage = parent.functionStorage;
     }
 
     public void translate() throws IOException {
         preFillStorage();
-        Short mainIndex = functionStorage.getFunctionIndex("main");
+        int main = script.getSymbolTable().find("main");
+        Short mainIndex = functionStorage.isFunction(main) ? functionStorage.getFunctionIndex(main) : null;
         emitHeader(InstructionSet.PREAMBLE, script.getMajorVersion(), script.getMinorVersion(), mainIndex);
+        if (functionCodeCache != null) {
+            functionCodeCache.startTranslation();
+        }
         emitBody();
+        finishCode();
+        if (functionCodeCache != null) {
+            functionCodeCache.finishTranslation();
+        }
+    }
+
+    /**
+     * Performs all semantic checks of the script without generating code.
+     *
+     * @throws ParsingException if the script is not valid
+     */
+    public static void check(ASTScript script) {
+        TypeRegistry typeRegistry = new TypeRegistry(createFunctionStorage(script), script.getSymbolTable());
+        for (ASTBasicFunction function : script.declaredFunctions()) {
+            if (function instanceof ASTFunction) {
+                typeRegistry.check((ASTFunction) function);
+            }
+        }
     }
 
     private void preFillStorage() {
+        functionStorage = createFunctionStorage(script);
+    }
+
+    private static FunctionStorage createFunctionStorage(ASTScript script) {
+        FunctionStorage functionStorage = new FunctionStorage(script.getSymbolTable().size());
         for (ASTBasicFunction function : script.declaredFunctions()) {
             if (function instanceof ASTFunction) {
                 functionStorage.addFunction((ASTFunction) function);
@@ -48,59 +98,96 @@ public class Translator extends BasicByteCodeProducer {
                 functionStorage.addBuiltinFunction((ASTBuiltinFunction) function);
             }
         }
+        return functionStorage;
     }
 
     private void emitBody() throws IOException {
+        List<ASTFunction> functions = new ArrayList<>();
         for (ASTBasicFunction basicFunction : script.declaredFunctions()) {
             if (basicFunction instanceof ASTFunction) {
-                this.currentLocalVariableStorage = new LocalVariableStorage();
-                this.typeRegistry = new TypeRegistry(currentLocalVariableStorage, functionStorage);
-                ASTFunction function = (ASTFunction) basicFunction;
-                this.currentFunction = function;
-                emitFunction(function);
+                functions.add((ASTFunction) basicFunction);
+            }
+        }
+        byte[][] codes = new byte[functions.size()][];
+        HashCode[] fingerprints = new HashCode[functions.size()];
+        boolean[] reused = new boolean[functions.size()];
+        if (functionCodeCache != null) {
+            for (int i = 0; i < functions.size(); i++) {
+                ASTFunction function = functions.get(i);
+                fingerprints[i] = FunctionFingerprint.of(function, functionStorage);
+                codes[i] = functionCodeCache.lookup(function.getIdentifier(), fingerprints[i]);
+                reused[i] = codes[i] != null;
+            }
+        }
+        if (pool == null) {
+            for (int i = 0; i < functions.size(); i++) {
+                if (codes[i] == null) {
+                    codes[i] = translateFunction(functions.get(i));
+                }
             }
+        } else {
+            translateInParallel(functions, codes);
+        }
+        for (int i = 0; i < functions.size(); i++) {
+            if (functionCodeCache != null && !reused[i]) {
+                functionCodeCache.store(functions.get(i).getIdentifier(), fingerprints[i], codes[i]);
+            }
+            out.write(codes[i]);
+        }
+    }
+
+    /**
+     * Translates the functions without code on the pool. The error of the first failing function in declaration order
+     * is thrown, as it is by a sequential translation.
+     */
+    private void translateInParallel(List<ASTFunction> functions, byte[][] codes) throws IOException {
+        Exception[] errors = new Exception[functions.size()];
+        Queue<Translator> translators = new ConcurrentLinkedQueue<>();
+        pool.invoke(new TranslateTask(functions, codes, errors, translators, 0, functions.size()));
+        for (Exception error : errors) {
+            if (error instanceof IOException) {
+                throw (IOException) error;
+            } else if (error != null) {
+                throw (RuntimeException) error;
+            }
+        }
+    }
+
+    /**
+     * Translates the function into its own code buffer, so jumps can be patched once their targets are known.
+     */
+    private byte[] translateFunction(ASTFunction function) throws IOException {
+        if (currentLocalVariableStorage == null) {
+            this.currentLocalVariableStorage = new LocalVariableStorage(script.getSymbolTable());
+            this.typeRegistry = new TypeRegistry(functionStorage, script.getSymbolTable());
+        }
+        typeRegistry.check(function);
+        currentLocalVariableStorage.reset();
+        DataOutputStream body = out;
+        this.code = new CodeBuffer();
+        this.out = new DataOutputStream(code);
+        try {
+            emitFunction(function);
+        } finally {
+            this.out = body;
         }
+        return code.toByteArray();
     }
 
     private void emitFunction(ASTFunction function) throws IOException {
-        writeOpCode(InstructionSet.OpCodes.FUNCTION);
+        short localVariables = (short) (function.getParameters().getParameterSize() + function.getBlock().countLocalVariables());
+        writeOpCode(InstructionSet.OpCodes.FUNCTION, localVariables);
         populateParametersOnLocalVariableStorage(function.getParameters());
         takeOverParams(function.getParameters());
         emitCode(function.getBlock());
         if (function.getReturnType() == null) {
             writeOpCode(InstructionSet.OpCodes.RETURN);
-        } else {
-            if (branchDoesNotReturn(function.getBlock())) {
-                throw new ParsingException("Function does not return properly");
-            }
         }
     }
 
-    private boolean branchDoesNotReturn(ASTBlock block) {
-        if (block.isEmpty()) {
-            return true;
-        } else {
-            ASTStatement lastStatement = block.getLastStatement();
-            if (lastStatement instanceof ASTReturnStatement) {
-                return false;
-            } else if (lastStatement instanceof ASTIfStatement) {
-                List<ASTBaseIfStatement> ifStatements = ((ASTIfStatement) lastStatement).getStatements();
-                for (ASTBaseIfStatement ifStatement : ifStatements) {
-                    if (branchDoesNotReturn(ifStatement.getBlock())) {
-                        return true;
-                    }
-                }
-                return false;
-            } else {
-                return true;
-            }
-        }
-    }
-
-
     private void populateParametersOnLocalVariableStorage(ASTParameters parameters) {
         for (ASTParameter parameter : parameters) {
-            String variableName = parameter.getIdentifier();
+            int variableName = parameter.getSymbol();
             currentLocalVariableStorage.addVariable(variableName, parameter.getType());
             currentLocalVariableStorage.markInitialized(variableName);
         }
@@ -131,33 +218,12 @@ public class Translator extends BasicByteCodeProducer {
     }
 
     private void emitExpressionStatement(ASTExpressionStatement statement) throws IOException {
-        validateExpressionStatementExpression(statement.getExpression());
         emitExpression(statement.getExpression());
         if (isExpressionPopNecessary(statement)) {
             writeOpCode(InstructionSet.OpCodes.POP);
         }
     }
 
-    private void validateExpressionStatementExpression(ASTExpression expression) {
-        if (expression instanceof ASTBinaryExpression) {
-            ASTBinaryExpression binaryExpression = (ASTBinaryExpression) expression;
-            if (ASTOperator.ASSIGNMENT_OPERATORS.contains(binaryExpression.getOperator())) {
-                if (!(binaryExpression.getLeft() instanceof ASTVariableExpression)) {
-                    throw new ParsingException(NOT_A_STATEMENT_ERROR_MESSAGE);
-                }
-            } else {
-                throw new ParsingException(NOT_A_STATEMENT_ERROR_MESSAGE);
-            }
-        } else if (expression instanceof ASTUnaryExpression) {
-            ASTUnaryExpression unaryExpression = (ASTUnaryExpression) expression;
-            if (!ASTUnaryOperator.INCREMENT_AND_DECREMENT_OPERATORS.contains(unaryExpression.getUnaryOperator())) {
-                throw new ParsingException(NOT_A_STATEMENT_ERROR_MESSAGE);
-            }
-        } else if (!(expression instanceof ASTFunctionCallExpression)) {
-            throw new ParsingException(NOT_A_STATEMENT_ERROR_MESSAGE);
-        }
-    }
-
     private boolean isExpressionPopNecessary(ASTExpressionStatement statement) {
         ASTExpression expression = statement.getExpression();
         boolean popNecessary = false;
@@ -170,116 +236,75 @@ public class Translator extends BasicByteCodeProducer {
                     ASTUnaryOperator.POST_DECREMENT).contains(unaryExpression.getUnaryOperator());
         } else if (expression instanceof ASTFunctionCallExpression) {
             ASTFunctionCallExpression astFunctionCallExpression = (ASTFunctionCallExpression) statement.getExpression();
-            ASTType functionReturnType = functionStorage.getFunctionReturnType(astFunctionCallExpression.getFunctionName());
+            ASTType functionReturnType = functionStorage.getFunctionReturnType(astFunctionCallExpression.getFunctionSymbol());
             popNecessary = functionReturnType != null;
         }
         return popNecessary;
     }
 
     private void emitWhileStatement(ASTWhileStatement statement) throws IOException {
-        // +3 = +1(if) +1(if address) +1 to be ahead of last instruction
-        short blockSize = (short) ((short) 3 + calculateInstructionSize(statement.getBlock()));
-        // jump back = negative size for block + condition
-        short jumpBackSize = (short) (-calculateExpressionSize(statement.getConditionExpression()) - blockSize);
-        validateConditionalExpression(statement.getConditionExpression());
+        Label condition = bindLabel();
+        Label end = new Label();
         emitExpression(statement.getConditionExpression());
-        writeOpCode(InstructionSet.OpCodes.IF, blockSize);
+        emitJump(InstructionSet.OpCodes.IF, end);
         emitCode(statement.getBlock());
-        writeOpCode(InstructionSet.OpCodes.GOTO, jumpBackSize);
+        emitJump(InstructionSet.OpCodes.GOTO, condition);
+        end.bind(code);
     }
 
-    private void validateConditionalExpression(ASTExpression expression) {
-        ASTType type = typeRegistry.resolveType(expression);
-        if (!ASTType.BOOLEAN.equals(type)) {
-            throw new ParsingException(INCOMPATIBLE_TYPE_ERROR_MESSAGE);
-        }
+    private void emitJump(InstructionSet.OpCodes opCode, Label target) throws IOException {
+        writeOpCode(opCode, (short) 0);
+        target.jumpFrom(code.position() - 1, code);
+    }
+
+    private Label bindLabel() {
+        Label label = new Label();
+        label.bind(code);
+        return label;
     }
 
     private void emitIfStatement(ASTIfStatement statement) throws IOException {
         List<ASTBaseIfStatement> ifStatements = statement.getStatements();
-
-        IfJumpTable ifJumpTable = calculateIfJumpTable(ifStatements);
+        Label end = new Label();
 
         for (int i = 0; i < ifStatements.size(); i++) {
             ASTBaseIfStatement ifStatement = ifStatements.get(i);
+            boolean last = i == ifStatements.size() - 1;
 
             if (ifStatement.getConditionExpression() != null) {
-                validateConditionalExpression(ifStatement.getConditionExpression());
                 emitExpression(ifStatement.getConditionExpression());
 
-                short jumpSize = ifJumpTable.getIfJumpOffset(i);
-                writeOpCode(InstructionSet.OpCodes.IF, jumpSize);
+                Label next = new Label();
+                emitJump(InstructionSet.OpCodes.IF, next);
 
                 emitCode(ifStatement.getBlock());
 
-                short endJumpSize = ifJumpTable.getEndJumpOffset(i);
-                if (endJumpSize > 1) {
-                    writeOpCode(InstructionSet.OpCodes.GOTO, endJumpSize);
+                if (!last) {
+                    emitJump(InstructionSet.OpCodes.GOTO, end);
                 }
+                next.bind(code);
             } else { // write else block
                 emitCode(ifStatement.getBlock());
             }
-
-        }
-    }
-
-    private IfJumpTable calculateIfJumpTable(List<ASTBaseIfStatement> ifStatements) throws IOException {
-        IfJumpTable ifJumpTable = new IfJumpTable();
-        for (int i = 0; i < ifStatements.size(); i++) {
-            ASTBaseIfStatement ifStatement = ifStatements.get(i);
-
-            boolean last = i < ifStatements.size() - 1;
-
-            short blockSize = 0;
-            if (last) { // when last
-                blockSize += 2;
-            }
-            blockSize += calculateInstructionSize(ifStatement.getBlock());
-
-            short expressionSize = 0;
-            if (last) {
-                expressionSize += 2;
-            }
-            if (ifStatement.getConditionExpression() != null) {
-                expressionSize += calculateExpressionSize(ifStatement.getConditionExpression());
-            }
-            ifJumpTable.addEntry(blockSize, expressionSize);
         }
-        return ifJumpTable;
+        end.bind(code);
     }
 
     private void emitReturnStatement(ASTReturnStatement returnStatement) throws IOException {
-        validateReturnStatementExpression(returnStatement.getExpression());
         emitExpression(returnStatement.getExpression());
         writeOpCode(InstructionSet.OpCodes.RETURN);
     }
 
-    private void validateReturnStatementExpression(ASTExpression expression) {
-        ASTType type = typeRegistry.resolveType(expression);
-        if (!typeRegistry.compatible(type, currentFunction.getReturnType())) {
-            throw new ParsingException("Incompatible return type");
-        }
-    }
-
     private void emitLocalVariable(ASTLocalVariableDeclarationStatement localVariableDeclarationStatement) throws IOException {
-        String variableName = localVariableDeclarationStatement.getIdentifier();
+        int variableName = localVariableDeclarationStatement.getSymbol();
         short index = currentLocalVariableStorage.addVariable(variableName, localVariableDeclarationStatement.getType());
         if (localVariableDeclarationStatement.getInitializationExpression() != null) {
-            validateInitializationExpression(localVariableDeclarationStatement);
             emitExpression(localVariableDeclarationStatement.getInitializationExpression());
             writeOpCode(InstructionSet.OpCodes.STORE, index);
             currentLocalVariableStorage.markInitialized(variableName);
         }
     }
 
-    private void validateInitializationExpression(ASTLocalVariableDeclarationStatement localVariableDeclarationStatement) {
-        ASTType initializationType = typeRegistry.resolveType(localVariableDeclarationStatement.getInitializationExpression());
-        ASTType variableType = currentLocalVariableStorage.getVariableType(localVariableDeclarationStatement.getIdentifier());
-        if (!typeRegistry.compatible(variableType, initializationType)) {
-            throw new ParsingException("Invalid assignment type");
-        }
-    }
-
     private void emitExpression(ASTExpression expression) throws IOException {
         if (expression instanceof ASTLiteralExpression) {
             emitLiteral((ASTLiteralExpression) expression);
@@ -313,16 +338,14 @@ public class Translator extends BasicByteCodeProducer {
     }
 
     private void emitVariableAssignment(ASTBinaryExpression expression) throws IOException {
-        validateLeftRightCompatibility(expression);
         ASTVariableExpression variableExpression = (ASTVariableExpression) expression.getLeft();
         emitExpression(expression.getRight());
-        currentLocalVariableStorage.markInitialized(variableExpression.getIdentifier());
-        short variableIndex = currentLocalVariableStorage.getVariableIndex(variableExpression.getIdentifier());
+        currentLocalVariableStorage.markInitialized(variableExpression.getSymbol());
+        short variableIndex = currentLocalVariableStorage.getVariableIndex(variableExpression.getSymbol());
         writeOpCode(InstructionSet.OpCodes.STORE, variableIndex);
     }
 
     private void emitArithmeticAssignment(ASTBinaryExpression expression) throws IOException {
-        validateLeftRightCompatibility(expression);
         ASTVariableExpression variableExpression = (ASTVariableExpression) expression.getLeft();
         emitVariable(variableExpression);
         emitExpression(expression.getRight());
@@ -335,15 +358,7 @@ public class Translator extends BasicByteCodeProducer {
         } else if (expression.getOperator() == ASTOperator.DIVISION_ASSIGNMENT) {
             writeOpCode(InstructionSet.OpCodes.DIV);
         }
-        writeOpCode(InstructionSet.OpCodes.STORE, currentLocalVariableStorage.getVariableIndex(variableExpression.getIdentifier()));
-    }
-
-    private void validateLeftRightCompatibility(ASTBinaryExpression expression) {
-        ASTType variableType = typeRegistry.resolveType(expression.getLeft());
-        ASTType assignmentType = typeRegistry.resolveType(expression.getRight());
-        if (!typeRegistry.compatible(variableType, assignmentType)) {
-            throw new ParsingException(INCOMPATIBLE_TYPE_ERROR_MESSAGE);
-        }
+        writeOpCode(InstructionSet.OpCodes.STORE, currentLocalVariableStorage.getVariableIndex(variableExpression.getSymbol()));
     }
 
     private void emitConditionalOrExpression(ASTBinaryExpression expression) throws IOException {
@@ -351,32 +366,22 @@ public class Translator extends BasicByteCodeProducer {
         flattenConditions(expression, conditionExpressions, ASTOperator.CONDITIONAL_OR);
 
         int numExpression = conditionExpressions.size();
-        short[] jumpTable = new short[numExpression - 1];
-        for (int i = 0; i < numExpression - 1; i++) {
-            short jumpOffset = 1;
-            for (int j = i + 1; j < numExpression; j++) {
-                // last if has 5 instructions overhead, others 6
-                short overhead = j < numExpression - 1 ? (short) 5 : (short) 6;
-                jumpOffset += overhead + calculateExpressionSize(conditionExpressions.get(j));
-            }
-            jumpTable[i] = jumpOffset;
-        }
-
+        Label end = new Label();
         for (int i = 0; i < numExpression; i++) {
             ASTExpression conditionExpression = conditionExpressions.get(i);
 
-            validateConditionalExpression(conditionExpression);
             emitExpression(conditionExpression);
             writeOpCode(InstructionSet.OpCodes.IF, (short) 4);
             writeOpCode(InstructionSet.OpCodes.B_CONST_TRUE);
 
             if (i < numExpression - 1) {
-                writeOpCode(InstructionSet.OpCodes.GOTO, jumpTable[i]);
+                emitJump(InstructionSet.OpCodes.GOTO, end);
             } else {
                 writeOpCode(InstructionSet.OpCodes.GOTO, (short) 2);
                 writeOpCode(InstructionSet.OpCodes.B_CONST_FALSE);
             }
         }
+        end.bind(code);
     }
 
     private void emitConditionalAndExpression(ASTBinaryExpression expression) throws IOException {
@@ -384,29 +389,19 @@ public class Translator extends BasicByteCodeProducer {
         flattenConditions(expression, conditionExpressions, ASTOperator.CONDITIONAL_AND);
 
         int numExpression = conditionExpressions.size();
-        short[] jumpTable = new short[numExpression - 1];
-        for (int i = 0; i < numExpression - 1; i++) {
-            short jumpOffset = 1;
-            for (int j = i + 1; j < numExpression; j++) {
-                // last if has 6 instructions overhead, others 2
-                short overhead = j < numExpression - 1 ? (short) 2 : (short) 5;
-                jumpOffset += overhead + calculateExpressionSize(conditionExpressions.get(j));
-            }
-            jumpTable[i] = jumpOffset;
-        }
-
+        Label isFalse = new Label();
         for (int i = 0; i < numExpression; i++) {
             ASTExpression conditionExpression = conditionExpressions.get(i);
-            validateConditionalExpression(conditionExpression);
             emitExpression(conditionExpression);
             if (i < numExpression - 1) { // not last
-                writeOpCode(InstructionSet.OpCodes.IF, jumpTable[i]);
+                emitJump(InstructionSet.OpCodes.IF, isFalse);
             }
         }
 
         writeOpCode(InstructionSet.OpCodes.IF, (short) 4);
         writeOpCode(InstructionSet.OpCodes.B_CONST_TRUE);
         writeOpCode(InstructionSet.OpCodes.GOTO, (short) 2);
+        isFalse.bind(code);
         writeOpCode(InstructionSet.OpCodes.B_CONST_FALSE);
     }
 
@@ -458,7 +453,6 @@ public class Translator extends BasicByteCodeProducer {
     private void emitUnaryExpression(ASTUnaryExpression expression) throws IOException {
         if (expression.getUnaryOperator() == ASTUnaryOperator.PRE_INCREMENT ||
                 expression.getUnaryOperator() == ASTUnaryOperator.PRE_DECREMENT) {
-            validateNumericExpression(expression.getSubExpression());
             ASTVariableExpression variableExpression = (ASTVariableExpression) expression.getSubExpression();
             emitVariable(variableExpression);
             writeOpCode(InstructionSet.OpCodes.I_CONST, (short) 1);
@@ -467,11 +461,10 @@ public class Translator extends BasicByteCodeProducer {
             } else if (expression.getUnaryOperator() == ASTUnaryOperator.PRE_DECREMENT) {
                 writeOpCode(InstructionSet.OpCodes.SUB);
             }
-            writeOpCode(InstructionSet.OpCodes.STORE, currentLocalVariableStorage.getVariableIndex(variableExpression.getIdentifier()));
+            writeOpCode(InstructionSet.OpCodes.STORE, currentLocalVariableStorage.getVariableIndex(variableExpression.getSymbol()));
             emitVariable(variableExpression);
         } else if (expression.getUnaryOperator() == ASTUnaryOperator.POST_INCREMENT ||
                 expression.getUnaryOperator() == ASTUnaryOperator.POST_DECREMENT) {
-            validateNumericExpression(expression.getSubExpression());
             ASTVariableExpression variableExpression = (ASTVariableExpression) expression.getSubExpression();
             emitVariable(variableExpression);
             emitVariable(variableExpression);
@@ -481,26 +474,17 @@ public class Translator extends BasicByteCodeProducer {
             } else if (expression.getUnaryOperator() == ASTUnaryOperator.POST_DECREMENT) {
                 writeOpCode(InstructionSet.OpCodes.SUB);
             }
-            writeOpCode(InstructionSet.OpCodes.STORE, currentLocalVariableStorage.getVariableIndex(variableExpression.getIdentifier()));
+            writeOpCode(InstructionSet.OpCodes.STORE, currentLocalVariableStorage.getVariableIndex(variableExpression.getSymbol()));
 
         } else if (expression.getUnaryOperator() == ASTUnaryOperator.NEGATE) {
-            validateNumericExpression(expression.getSubExpression());
             emitExpression(expression.getSubExpression());
             writeOpCode(InstructionSet.OpCodes.NEG);
         } else if (expression.getUnaryOperator() == ASTUnaryOperator.BITWISE_NOT) {
-            validateConditionalExpression(expression.getSubExpression());
             emitExpression(expression.getSubExpression());
             writeOpCode(InstructionSet.OpCodes.NOT);
         }
     }
 
-    private void validateNumericExpression(ASTExpression expression) {
-        ASTType type = typeRegistry.resolveType(expression);
-        if (!ASTType.INTEGER.equals(type)) {
-            throw new ParsingException("Expected numeric type");
-        }
-    }
-
     private void emitLiteral(ASTLiteralExpression expression) throws IOException {
         if (expression.getValue() instanceof Boolean) {
             Boolean value = (Boolean) expression.getValue();
@@ -510,80 +494,94 @@ public class Translator extends BasicByteCodeProducer {
                 writeOpCode(InstructionSet.OpCodes.B_CONST_FALSE);
             }
         } else if (expression.getValue() instanceof Integer) {
-            int value = (int) expression.getValue();
-            if (value > Short.MAX_VALUE || value < Short.MIN_VALUE) {
-                throw new ParsingException("Integer must be in the range of " + Short.MIN_VALUE + " and " + Short.MAX_VALUE);
-            }
-
-            writeOpCode(InstructionSet.OpCodes.I_CONST, (short) value);
+            writeOpCode(InstructionSet.OpCodes.I_CONST, (short) (int) expression.getValue());
         }
     }
 
     private void emitFunctionCall(ASTFunctionCallExpression expression) throws IOException {
-        String functionName = expression.getFunctionName();
-        ASTBasicFunction basicFunction = functionStorage.resolveFunction(functionName);
-        if (basicFunction == null) {
-            throw new ParsingException("Invalid function " + functionName);
-        }
-
         if (expression.getArguments() != null) {
-            emitFunctionArguments(expression, basicFunction);
+            for (ASTExpression argument : expression.getArguments()) {
+                emitExpression(argument);
+            }
         }
 
-        ASTBuiltinFunction builtinFunction = functionStorage.getBuiltinFunction(functionName);
-        Short functionIndex = functionStorage.getFunctionIndex(functionName);
+        ASTBuiltinFunction builtinFunction = functionStorage.getBuiltinFunction(expression.getFunctionSymbol());
         if (builtinFunction != null) {
             writeOpCode(InstructionSet.OpCodes.INVOKE_BUILTIN, builtinFunction.getFunctionCode());
-        } else if (functionIndex != null) {
-            writeOpCode(InstructionSet.OpCodes.INVOKE, functionIndex);
+        } else if (functionStorage.isFunction(expression.getFunctionSymbol())) {
+            writeOpCode(InstructionSet.OpCodes.INVOKE, functionStorage.getFunctionIndex(expression.getFunctionSymbol()));
         }
     }
 
-    private void emitFunctionArguments(ASTFunctionCallExpression expression, ASTBasicFunction basicFunction) throws IOException {
-        String functionName = expression.getFunctionName();
-
-        if (basicFunction.getParameters().getParameterSize() != expression.getArguments().getArgumentsSize()) {
-            throw new ParsingException("No function with name " + functionName + " found for compatible types");
-        }
+    private void emitVariable(ASTVariableExpression variable) throws IOException {
+        short variableIndex = currentLocalVariableStorage.getVariableIndex(variable.getSymbol());
+        writeOpCode(InstructionSet.OpCodes.LOAD, variableIndex);
+    }
 
-        Iterator<ASTParameter> parameterIterator = basicFunction.getParameters().iterator();
-        for (ASTExpression argExpression : expression.getArguments()) {
-            if (parameterIterator.hasNext()) {
-                ASTType expectedParameterType = parameterIterator.next().getType();
-                ASTType actualParameterType = typeRegistry.resolveType(argExpression);
-                if (typeRegistry.compatible(expectedParameterType, actualParameterType)) {
-                    emitExpression(argExpression);
-                } else {
-                    throw new ParsingException(INCOMPATIBLE_TYPE_ERROR_MESSAGE);
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Sets the pool on which the functions are translated in parallel. The byte code is the same as the one of a
+     * sequential translation. By default no pool is set.
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Translates a range of functions, large ranges are split in halves. A leaf takes an idle translator or creates one
+     * and returns it when it is done, so there is at most one translator (with its storages sized to the symbol table)
+     * per thread instead of one per leaf. Every function is written to its own slot of the codes.
+     */
+    private final class TranslateTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        private static final int FUNCTIONS_PER_TASK = 8;
+
+        private final List<ASTFunction> functions;
+        private final byte[][] codes;
+        private final Exception[] errors;
+        private final Queue<Translator> translators;
+        private final int from;
+        private final int to;
+
+        TranslateTask(List<ASTFunction> functions, byte[][] codes, Exception[] errors, Queue<Translator> translators,
+                      int from, int to) {
+            this.functions = functions;
+            this.codes = codes;
+            this.errors = errors;
+            this.translators = translators;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > FUNCTIONS_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new TranslateTask(functions, codes, errors, translators, from, middle),
+                        new TranslateTask(functions, codes, errors, translators, middle, to));
+                return;
+            }
+            Translator translator = translators.poll();
+            if (translator == null) {
+                translator = new Translator(Translator.this);
+            }
+            try {
+                for (int i = from; i < to; i++) {
+                    if (codes[i] == null) {
+                        try {
+                            codes[i] = translator.translateFunction(functions.get(i));
+                        } catch (IOException | RuntimeException e) {
+                            errors[i] = e;
+                        }
+                    }
                 }
+            } finally {
+                translators.offer(translator);
             }
         }
     }
-
-    private short calculateExpressionSize(ASTExpression expression) throws IOException {
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        Translator temp = new Translator(script, out);
-        temp.currentLocalVariableStorage = this.currentLocalVariableStorage;
-        temp.functionStorage = this.functionStorage;
-        temp.typeRegistry = this.typeRegistry;
-        temp.currentFunction = this.currentFunction;
-        temp.emitExpression(expression);
-        return (short) (out.size() / 2); //2bytes -> 1 short
-    }
-
-    private short calculateInstructionSize(ASTBlock block) throws IOException {
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        Translator temp = new Translator(script, out);
-        temp.currentLocalVariableStorage = this.currentLocalVariableStorage;
-        temp.functionStorage = this.functionStorage;
-        temp.typeRegistry = this.typeRegistry;
-        temp.currentFunction = this.currentFunction;
-        temp.emitCode(block);
-        return (short) (out.size() / 2); //2bytes -> 1 short
-    }
-
-    private void emitVariable(ASTVariableExpression variable) throws IOException {
-        short variableIndex = currentLocalVariableStorage.getVariableIndex(variable.getIdentifier());
-        writeOpCode(InstructionSet.OpCodes.LOAD, variableIndex);
-    }
 }
@@ -2,33 +2,328 @@ package org.mufuku.yaoocai.v1.compiler.translator;
 
 import org.mufuku.yaoocai.v1.compiler.ast.*;
 import org.mufuku.yaoocai.v1.compiler.parser.ParsingException;
+import org.mufuku.yaoocai.v1.compiler.scanner.SymbolTable;
+
+import java.util.Iterator;
+import java.util.List;
 
 /**
+ * Semantic analysis of a function: {@link #check(ASTFunction)} resolves the type of every expression once and stores
+ * it on the expression, and performs all other checks (variables declared and initialized, types of conditions,
+ * assignments, arguments and return values, statements and returns of the function). The code generation relies on
+ * a checked function and only reads the stored types. A registry is reused for all functions of a translator, the
+ * variables are indexed by the symbol ids of their names.
+ *
  * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
  */
 class TypeRegistry {
 
-    private final LocalVariableStorage localVariableStorage;
+    private static final String INCOMPATIBLE_TYPE_ERROR_MESSAGE = "Incompatible types";
+    private static final String NOT_A_STATEMENT_ERROR_MESSAGE = "Not a statement";
 
     private final FunctionStorage functionStorage;
+    private final SymbolTable symbols;
+
+    private final ASTType[] variableTypes;
+    private final boolean[] initialized;
+    private final int[] variableSymbols;
+    private int variableCount;
+    private ASTFunction currentFunction;
 
-    TypeRegistry(LocalVariableStorage localVariableStorage, FunctionStorage functionStorage) {
-        this.localVariableStorage = localVariableStorage;
+    TypeRegistry(FunctionStorage functionStorage, SymbolTable symbols) {
         this.functionStorage = functionStorage;
+        this.symbols = symbols;
+        this.variableTypes = new ASTType[symbols.size()];
+        this.initialized = new boolean[symbols.size()];
+        this.variableSymbols = new int[symbols.size()];
+    }
+
+    /**
+     * Checks the function, the statements are checked in the order they are translated.
+     *
+     * @throws ParsingException if the function is not valid
+     */
+    void check(ASTFunction function) {
+        startFunction(function);
+        checkBlock(function.getBlock());
+        if (function.getReturnType() != null && branchDoesNotReturn(function.getBlock())) {
+            throw new ParsingException("Function does not return properly");
+        }
+    }
+
+    /**
+     * Forgets the variables of the previous function and registers the parameters of the next one.
+     */
+    private void startFunction(ASTFunction function) {
+        for (int i = 0; i < variableCount; i++) {
+            variableTypes[variableSymbols[i]] = null;
+            initialized[variableSymbols[i]] = false;
+        }
+        variableCount = 0;
+        currentFunction = function;
+        for (ASTParameter parameter : function.getParameters()) {
+            declare(parameter.getSymbol(), parameter.getType());
+            initialized[parameter.getSymbol()] = true;
+        }
+    }
+
+    private void declare(int symbol, ASTType type) {
+        if (variableTypes[symbol] != null) {
+            throw new ParsingException("Duplicate variable: " + symbols.name(symbol));
+        }
+        variableTypes[symbol] = type;
+        variableSymbols[variableCount++] = symbol;
+    }
+
+    private void checkBlock(ASTBlock block) {
+        for (ASTStatement statement : block) {
+            annotate(statement);
+            if (statement instanceof ASTLocalVariableDeclarationStatement) {
+                checkLocalVariable((ASTLocalVariableDeclarationStatement) statement);
+            } else if (statement instanceof ASTReturnStatement) {
+                checkReturnStatement((ASTReturnStatement) statement);
+            } else if (statement instanceof ASTIfStatement) {
+                for (ASTBaseIfStatement ifStatement : ((ASTIfStatement) statement).getStatements()) {
+                    if (ifStatement.getConditionExpression() != null) {
+                        checkCondition(ifStatement.getConditionExpression());
+                    }
+                    checkBlock(ifStatement.getBlock());
+                }
+            } else if (statement instanceof ASTExpressionStatement) {
+                checkExpressionStatement(((ASTExpressionStatement) statement).getExpression());
+            } else if (statement instanceof ASTWhileStatement) {
+                checkCondition(((ASTWhileStatement) statement).getConditionExpression());
+                checkBlock(((ASTWhileStatement) statement).getBlock());
+            } else if (statement instanceof ASTBlock) {
+                checkBlock((ASTBlock) statement);
+            }
+        }
+    }
+
+    private void annotate(ASTStatement statement) {
+        if (statement instanceof ASTLocalVariableDeclarationStatement) {
+            ASTLocalVariableDeclarationStatement declaration = (ASTLocalVariableDeclarationStatement) statement;
+            declare(declaration.getSymbol(), declaration.getType());
+            annotate(declaration.getInitializationExpression());
+        } else if (statement instanceof ASTReturnStatement) {
+            annotate(((ASTReturnStatement) statement).getExpression());
+        } else if (statement instanceof ASTIfStatement) {
+            for (ASTBaseIfStatement ifStatement : ((ASTIfStatement) statement).getStatements()) {
+                annotate(ifStatement.getConditionExpression());
+            }
+        } else if (statement instanceof ASTExpressionStatement) {
+            annotate(((ASTExpressionStatement) statement).getExpression());
+        } else if (statement instanceof ASTWhileStatement) {
+            annotate(((ASTWhileStatement) statement).getConditionExpression());
+        }
+    }
+
+    private void annotate(ASTExpression expression) {
+        if (expression == null) {
+            return;
+        }
+        if (expression instanceof ASTFunctionCallExpression) {
+            ASTFunctionCallExpression call = (ASTFunctionCallExpression) expression;
+            if (functionStorage.resolveFunction(call.getFunctionSymbol()) == null) {
+                throw new ParsingException("Invalid function " + call.getFunctionName());
+            }
+            ASTArguments arguments = ((ASTFunctionCallExpression) expression).getArguments();
+            if (arguments != null) {
+                for (ASTExpression argument : arguments) {
+                    annotate(argument);
+                }
+            }
+        } else if (expression instanceof ASTBinaryExpression) {
+            annotate(((ASTBinaryExpression) expression).getLeft());
+            annotate(((ASTBinaryExpression) expression).getRight());
+        } else if (expression instanceof ASTUnaryExpression) {
+            annotate(((ASTUnaryExpression) expression).getSubExpression());
+        }
+        resolveType(expression);
+    }
+
+    private void checkLocalVariable(ASTLocalVariableDeclarationStatement statement) {
+        ASTExpression initializationExpression = statement.getInitializationExpression();
+        if (initializationExpression != null) {
+            if (!compatible(statement.getType(), resolveType(initializationExpression))) {
+                throw new ParsingException("Invalid assignment type");
+            }
+            checkExpression(initializationExpression);
+            initialized[statement.getSymbol()] = true;
+        }
+    }
+
+    private void checkReturnStatement(ASTReturnStatement statement) {
+        ASTType type = resolveType(statement.getExpression());
+        if (!compatible(type, currentFunction.getReturnType())) {
+            throw new ParsingException("Incompatible return type");
+        }
+        checkExpression(statement.getExpression());
+    }
+
+    private void checkExpressionStatement(ASTExpression expression) {
+        if (expression instanceof ASTBinaryExpression) {
+            ASTBinaryExpression binaryExpression = (ASTBinaryExpression) expression;
+            if (ASTOperator.ASSIGNMENT_OPERATORS.contains(binaryExpression.getOperator())) {
+                if (!(binaryExpression.getLeft() instanceof ASTVariableExpression)) {
+                    throw new ParsingException(NOT_A_STATEMENT_ERROR_MESSAGE);
+                }
+            } else {
+                throw new ParsingException(NOT_A_STATEMENT_ERROR_MESSAGE);
+            }
+        } else if (expression instanceof ASTUnaryExpression) {
+            ASTUnaryExpression unaryExpression = (ASTUnaryExpression) expression;
+            if (!ASTUnaryOperator.INCREMENT_AND_DECREMENT_OPERATORS.contains(unaryExpression.getUnaryOperator())) {
+                throw new ParsingException(NOT_A_STATEMENT_ERROR_MESSAGE);
+            }
+        } else if (!(expression instanceof ASTFunctionCallExpression)) {
+            throw new ParsingException(NOT_A_STATEMENT_ERROR_MESSAGE);
+        }
+        checkExpression(expression);
+    }
+
+    private void checkCondition(ASTExpression expression) {
+        checkType(expression, ASTType.BOOLEAN, INCOMPATIBLE_TYPE_ERROR_MESSAGE);
+        checkExpression(expression);
+    }
+
+    private void checkType(ASTExpression expression, ASTType expectedType, String message) {
+        if (!expectedType.equals(resolveType(expression))) {
+            throw new ParsingException(message);
+        }
+    }
+
+    private void checkExpression(ASTExpression expression) {
+        if (expression instanceof ASTLiteralExpression) {
+            Object value = ((ASTLiteralExpression<?>) expression).getValue();
+            if (value instanceof Integer && ((int) value > Short.MAX_VALUE || (int) value < Short.MIN_VALUE)) {
+                throw new ParsingException("Integer must be in the range of " + Short.MIN_VALUE + " and " + Short.MAX_VALUE);
+            }
+        } else if (expression instanceof ASTFunctionCallExpression) {
+            checkFunctionCall((ASTFunctionCallExpression) expression);
+        } else if (expression instanceof ASTVariableExpression) {
+            checkInitialized((ASTVariableExpression) expression);
+        } else if (expression instanceof ASTBinaryExpression) {
+            checkBinaryExpression((ASTBinaryExpression) expression);
+        } else if (expression instanceof ASTUnaryExpression) {
+            checkUnaryExpression((ASTUnaryExpression) expression);
+        }
+    }
+
+    private void checkInitialized(ASTVariableExpression variable) {
+        if (!initialized[variable.getSymbol()]) {
+            throw new ParsingException("Variable " + variable.getIdentifier() + " not initialized");
+        }
     }
 
+    private void checkFunctionCall(ASTFunctionCallExpression expression) {
+        ASTBasicFunction function = functionStorage.resolveFunction(expression.getFunctionSymbol());
+        if (expression.getArguments() == null) {
+            return;
+        }
+        if (function.getParameters().getParameterSize() != expression.getArguments().getArgumentsSize()) {
+            throw new ParsingException("No function with name " + expression.getFunctionName() + " found for compatible types");
+        }
+        Iterator<ASTParameter> parameterIterator = function.getParameters().iterator();
+        for (ASTExpression argument : expression.getArguments()) {
+            if (parameterIterator.hasNext()) {
+                if (!compatible(parameterIterator.next().getType(), resolveType(argument))) {
+                    throw new ParsingException(INCOMPATIBLE_TYPE_ERROR_MESSAGE);
+                }
+                checkExpression(argument);
+            }
+        }
+    }
+
+    private void checkBinaryExpression(ASTBinaryExpression expression) {
+        ASTOperator operator = expression.getOperator();
+        if (operator == ASTOperator.ASSIGNMENT) {
+            checkAssignmentTypes(expression);
+            checkExpression(expression.getRight());
+            initialized[((ASTVariableExpression) expression.getLeft()).getSymbol()] = true;
+        } else if (ASTOperator.ASSIGNMENT_OPERATORS.contains(operator)) {
+            checkAssignmentTypes(expression);
+            checkInitialized((ASTVariableExpression) expression.getLeft());
+            checkExpression(expression.getRight());
+        } else if (operator == ASTOperator.CONDITIONAL_OR || operator == ASTOperator.CONDITIONAL_AND) {
+            checkConditions(expression, operator);
+        } else {
+            checkExpression(expression.getLeft());
+            checkExpression(expression.getRight());
+        }
+    }
+
+    private void checkAssignmentTypes(ASTBinaryExpression expression) {
+        if (!compatible(resolveType(expression.getLeft()), resolveType(expression.getRight()))) {
+            throw new ParsingException(INCOMPATIBLE_TYPE_ERROR_MESSAGE);
+        }
+    }
+
+    /**
+     * Checks the conditions of a chain of conditional operators from left to right, as they are translated.
+     */
+    private void checkConditions(ASTBinaryExpression expression, ASTOperator operator) {
+        ASTExpression left = expression.getLeft();
+        if (left instanceof ASTBinaryExpression && ((ASTBinaryExpression) left).getOperator() == operator) {
+            checkConditions((ASTBinaryExpression) left, operator);
+        } else {
+            checkCondition(left);
+        }
+        checkCondition(expression.getRight());
+    }
+
+    private void checkUnaryExpression(ASTUnaryExpression expression) {
+        ASTExpression subExpression = expression.getSubExpression();
+        if (ASTUnaryOperator.INCREMENT_AND_DECREMENT_OPERATORS.contains(expression.getUnaryOperator())) {
+            checkType(subExpression, ASTType.INTEGER, "Expected numeric type");
+            checkInitialized((ASTVariableExpression) subExpression);
+        } else if (expression.getUnaryOperator() == ASTUnaryOperator.NEGATE) {
+            checkType(subExpression, ASTType.INTEGER, "Expected numeric type");
+            checkExpression(subExpression);
+        } else if (expression.getUnaryOperator() == ASTUnaryOperator.BITWISE_NOT) {
+            checkCondition(subExpression);
+        }
+    }
+
+    private static boolean branchDoesNotReturn(ASTBlock block) {
+        if (block.isEmpty()) {
+            return true;
+        }
+        ASTStatement lastStatement = block.getLastStatement();
+        if (lastStatement instanceof ASTReturnStatement) {
+            return false;
+        } else if (lastStatement instanceof ASTIfStatement) {
+            List<ASTBaseIfStatement> ifStatements = ((ASTIfStatement) lastStatement).getStatements();
+            for (ASTBaseIfStatement ifStatement : ifStatements) {
+                if (branchDoesNotReturn(ifStatement.getBlock())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the stored type of the expression, it is resolved if the expression wasn't annotated yet
+     */
     ASTType resolveType(ASTExpression expression) {
+        if (expression.isTypeResolved()) {
+            return expression.getResolvedType();
+        }
         ASTType type = null;
         if (expression instanceof ASTUnaryExpression) {
             type = resolveType(((ASTUnaryExpression) expression).getSubExpression());
         } else if (expression instanceof ASTLiteralExpression) {
-            type = ((ASTLiteralExpression) expression).getType();
+            type = ((ASTLiteralExpression<?>) expression).getType();
         } else if (expression instanceof ASTVariableExpression) {
-            String variableName = ((ASTVariableExpression) expression).getIdentifier();
-            type = localVariableStorage.getVariableType(variableName);
+            ASTVariableExpression variable = (ASTVariableExpression) expression;
+            type = variableTypes[variable.getSymbol()];
+            if (type == null) {
+                throw new ParsingException("Invalid variable " + variable.getIdentifier() + " used");
+            }
         } else if (expression instanceof ASTFunctionCallExpression) {
-            String functionName = ((ASTFunctionCallExpression) expression).getFunctionName();
-            type = functionStorage.getFunctionReturnType(functionName);
+            type = functionStorage.getFunctionReturnType(((ASTFunctionCallExpression) expression).getFunctionSymbol());
         } else if (expression instanceof ASTBinaryExpression) {
             ASTBinaryExpression binaryExpression = (ASTBinaryExpression) expression;
             ASTType leftType = resolveType(binaryExpression.getLeft());
@@ -43,6 +338,7 @@ class TypeRegistry {
                 throw new ParsingException("Incompatible types");
             }
         }
+        expression.setResolvedType(type);
         return type;
     }
 
@@ -0,0 +1,443 @@
+package org.mufuku.yaoocai.v1.vm;
+
+import org.mufuku.yaoocai.v1.bytecode.InstructionSet;
+import org.mufuku.yaoocai.v1.vm.builtins.BuiltInVMFunction;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Map;
+
+/**
+ * Verifies every function of loaded byte code before it is executed: instructions are complete, jumps land on
+ * instruction boundaries inside the function, local variable indexes are within the frame, the operand stack has the
+ * same depth on all paths to an instruction and the operands have the types the instructions expect. Additionally the
+ * maximum operand stack depth of every function is computed.
+ * <p>
+ * Calls to built-ins without a known stack effect can't be followed, the operand stack and types on the rest of such
+ * a path stay unverified and the maximum stack depth of the function is unknown. The structure of all instructions
+ * (boundaries, jump targets, local variable indexes) is checked regardless.
+ * <p>
+ * Functions can be verified all at once or one by one when they are needed.
+ *
+ * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
+ */
+class ByteCodeVerifier {
+
+    static final int UNKNOWN_MAX_STACK = -1;
+
+    private static final byte UNSET = 0;
+    private static final byte INTEGER = 1;
+    private static final byte BOOLEAN = 2;
+    private static final byte ANY = 3;
+
+    private static final int NOT_ANALYSED = -1;
+    private static final int ANALYSING = -2;
+    private static final int UNKNOWN_EFFECT = -3;
+
+    private final short[] code;
+    private final int[] functionPointers;
+    private final Map<Short, BuiltInVMFunction> builtIns;
+    private final int[] functionEnds;
+    private final int[] returnValues;
+    private final int[] maxStacks;
+
+    ByteCodeVerifier(short[] code, int[] functionPointers, Map<Short, BuiltInVMFunction> builtIns) {
+        this.code = code;
+        this.functionPointers = functionPointers;
+        this.builtIns = builtIns;
+        this.functionEnds = new int[functionPointers.length];
+        this.returnValues = new int[functionPointers.length];
+        this.maxStacks = new int[functionPointers.length];
+        Arrays.fill(returnValues, NOT_ANALYSED);
+
+        int[] sorted = functionPointers.clone();
+        Arrays.sort(sorted);
+        for (int i = 0; i < functionPointers.length; i++) {
+            int next = Arrays.binarySearch(sorted, functionPointers[i]) + 1;
+            functionEnds[i] = next < sorted.length ? sorted[next] : code.length;
+        }
+    }
+
+    /**
+     * @return the maximum operand stack depth per function
+     * @throws IllegalStateException if the byte code is not valid
+     */
+    int[] verify() {
+        for (int i = 0; i < functionPointers.length; i++) {
+            maxStacks[i] = verify(i);
+        }
+        return maxStacks;
+    }
+
+    /**
+     * Verifies a single function. The functions it calls are analysed as far as needed to know their return values.
+     *
+     * @return the maximum operand stack depth of the function
+     * @throws IllegalStateException if the byte code of the function is not valid
+     */
+    int verify(int functionIndex) {
+        returnValue(functionIndex);
+        // paths behind recursive calls were skipped while determining the return value
+        return analyse(functionIndex);
+    }
+
+    private int returnValue(int functionIndex) {
+        if (returnValues[functionIndex] == NOT_ANALYSED) {
+            returnValues[functionIndex] = ANALYSING;
+            returnValues[functionIndex] = new FunctionVerification(functionIndex).run().returnValue;
+        }
+        return returnValues[functionIndex];
+    }
+
+    private int analyse(int functionIndex) {
+        FunctionVerification verification = new FunctionVerification(functionIndex).run();
+        return verification.complete ? verification.maxStack : UNKNOWN_MAX_STACK;
+    }
+
+    private int length(int address) {
+        InstructionSet.OpCodes opCode = InstructionSet.OpCodes.get(code[address]);
+        if (opCode == null) {
+            throw new IllegalStateException("Unknown op code " + code[address] + " at address " + address);
+        }
+        return 1 + opCode.opCodeParam();
+    }
+
+    private int parameters(int functionIndex) {
+        int start = functionPointers[functionIndex];
+        if (start + 3 < functionEnds[functionIndex] && code[start + 2] == InstructionSet.OpCodes.POP_PARAMS.code()) {
+            return code[start + 3];
+        }
+        return 0;
+    }
+
+    /**
+     * Data flow analysis of one function. The state of an instruction is the type of every operand stack entry and
+     * every local variable before its execution.
+     */
+    private final class FunctionVerification {
+
+        private final int functionIndex;
+        private final int start;
+        private final int end;
+        private final int locals;
+        private final byte[][] stacks;
+        private final byte[][] localTypes;
+        private final boolean[] instructionStarts;
+        private final Deque<Integer> pending = new ArrayDeque<>();
+
+        private int returnValue = -1;
+        private int maxStack = 0;
+        private boolean complete = true;
+
+        FunctionVerification(int functionIndex) {
+            this.functionIndex = functionIndex;
+            this.start = functionPointers[functionIndex];
+            this.end = functionEnds[functionIndex];
+            if (start + 1 >= end) {
+                throw error("Incomplete function header", start);
+            }
+            this.locals = code[start + 1];
+            if (locals < 0) {
+                throw error("Negative number of local variables", start);
+            }
+            this.stacks = new byte[end - start][];
+            this.localTypes = new byte[end - start][];
+            this.instructionStarts = new boolean[end - start];
+            for (int address = start; address < end; address += length(address)) {
+                instructionStarts[address - start] = true;
+                if (address + length(address) > end) {
+                    throw error("Incomplete instruction", address);
+                }
+            }
+            verifyStructure();
+        }
+
+        /**
+         * Checks every instruction on its own, independent of the data flow analysis: instructions which are not
+         * reached by it, e.g. behind a call of a built-in without a known stack effect, still can't jump into an
+         * operand, leave the function or access a local variable outside of the frame.
+         */
+        private void verifyStructure() {
+            for (int address = start; address < end; address += length(address)) {
+                InstructionSet.OpCodes opCode = InstructionSet.OpCodes.get(code[address]);
+                switch (opCode) {
+                    case FUNCTION:
+                        if (address != start) {
+                            throw error("Function header inside function", address);
+                        }
+                        break;
+                    case POP_PARAMS:
+                        if (address != start + 2 || code[address + 1] < 0 || code[address + 1] > locals) {
+                            throw error("Invalid parameter declaration", address);
+                        }
+                        break;
+                    case LOAD:
+                    case STORE:
+                        checkLocal(code[address + 1], address);
+                        break;
+                    case IF:
+                    case GOTO:
+                        // the compiler emits unreachable jumps to the end of the function behind returns
+                        int target = jumpTarget(address);
+                        if (target < start || target > end || target < end && !instructionStarts[target - start]) {
+                            throw error("Invalid jump target " + target, address);
+                        }
+                        break;
+                    case INVOKE:
+                        if (code[address + 1] < 0 || code[address + 1] >= functionPointers.length) {
+                            throw error("Invalid function index " + code[address + 1], address);
+                        }
+                        break;
+                    case INVOKE_BUILTIN:
+                        if (!builtIns.containsKey(code[address + 1])) {
+                            throw error("Unknown built-in function " + code[address + 1], address);
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+
+        FunctionVerification run() {
+            flow(start, new byte[0], new byte[locals], start);
+            while (!pending.isEmpty()) {
+                verifyInstruction(pending.pop());
+            }
+            if (returnValue < 0) {
+                // no reachable return, either an endless loop or all returns behind calls which can't be followed
+                returnValue = complete ? 0 : UNKNOWN_EFFECT;
+            }
+            return this;
+        }
+
+        private void verifyInstruction(int address) {
+            InstructionSet.OpCodes opCode = InstructionSet.OpCodes.get(code[address]);
+            byte[] stack = stacks[address - start];
+            byte[] localVariables = localTypes[address - start].clone();
+            int next = address + length(address);
+            short operand = opCode.opCodeParam() > 0 ? code[address + 1] : 0;
+            switch (opCode) {
+                case FUNCTION:
+                    if (address != start) {
+                        throw error("Function header inside function", address);
+                    }
+                    flow(next, stack, localVariables, address);
+                    break;
+                case POP_PARAMS:
+                    if (address != start + 2 || operand < 0 || operand > locals) {
+                        throw error("Invalid parameter declaration", address);
+                    }
+                    for (int i = 0; i < operand; i++) {
+                        localVariables[i] = ANY;
+                    }
+                    flow(next, stack, localVariables, address);
+                    break;
+                case I_CONST:
+                    flow(next, push(stack, INTEGER), localVariables, address);
+                    break;
+                case B_CONST_TRUE:
+                case B_CONST_FALSE:
+                    flow(next, push(stack, BOOLEAN), localVariables, address);
+                    break;
+                case LOAD:
+                    checkLocal(operand, address);
+                    byte type = localVariables[operand];
+                    flow(next, push(stack, type == UNSET ? ANY : type), localVariables, address);
+                    break;
+                case STORE:
+                    checkLocal(operand, address);
+                    localVariables[operand] = top(stack, address);
+                    flow(next, pop(stack, 1, address), localVariables, address);
+                    break;
+                case POP:
+                    flow(next, pop(stack, 1, address), localVariables, address);
+                    break;
+                case ADD:
+                case SUB:
+                case MUL:
+                case DIV:
+                case MOD:
+                    flow(next, binary(stack, INTEGER, INTEGER, address), localVariables, address);
+                    break;
+                case CMP_LT:
+                case CMP_LTE:
+                case CMP_GT:
+                case CMP_GTE:
+                    flow(next, binary(stack, INTEGER, BOOLEAN, address), localVariables, address);
+                    break;
+                case CMP_EQ:
+                case CMP_NE:
+                    flow(next, compareEquality(stack, address), localVariables, address);
+                    break;
+                case AND:
+                case OR:
+                    flow(next, binary(stack, BOOLEAN, BOOLEAN, address), localVariables, address);
+                    break;
+                case NEG:
+                    expect(stack, 1, INTEGER, address);
+                    flow(next, stack, localVariables, address);
+                    break;
+                case NOT:
+                    expect(stack, 1, BOOLEAN, address);
+                    flow(next, stack, localVariables, address);
+                    break;
+                case IF:
+                    expect(stack, 1, BOOLEAN, address);
+                    byte[] remaining = pop(stack, 1, address);
+                    flow(jumpTarget(address), remaining, localVariables, address);
+                    flow(next, remaining, localVariables, address);
+                    break;
+                case GOTO:
+                    flow(jumpTarget(address), stack, localVariables, address);
+                    break;
+                case INVOKE:
+                    verifyInvoke(operand, stack, localVariables, next, address);
+                    break;
+                case INVOKE_BUILTIN:
+                    verifyInvokeBuiltIn(operand, stack, localVariables, next, address);
+                    break;
+                case RETURN:
+                    verifyReturn(stack, address);
+                    break;
+                default:
+                    throw error("Unsupported op code " + opCode, address);
+            }
+        }
+
+        private void verifyInvoke(int callee, byte[] stack, byte[] localVariables, int next, int address) {
+            if (callee < 0 || callee >= functionPointers.length) {
+                throw error("Invalid function index " + callee, address);
+            }
+            int calleeReturnValue = returnValue(callee);
+            if (calleeReturnValue == UNKNOWN_EFFECT) {
+                complete = false;
+                return;
+            } else if (calleeReturnValue == ANALYSING) {
+                // recursive call, the return value is determined by the other paths
+                return;
+            }
+            byte[] remaining = pop(stack, parameters(callee), address);
+            flow(next, calleeReturnValue == 1 ? push(remaining, ANY) : remaining, localVariables, address);
+        }
+
+        private void verifyInvokeBuiltIn(short functionCode, byte[] stack, byte[] localVariables, int next, int address) {
+            BuiltInVMFunction builtIn = builtIns.get(functionCode);
+            if (builtIn == null) {
+                throw error("Unknown built-in function " + functionCode, address);
+            }
+            int parameters = builtIn.getParameterCount();
+            int returnValueCount = builtIn.getReturnValueCount();
+            if (parameters < 0 || returnValueCount < 0 || returnValueCount > 1) {
+                complete = false;
+                return;
+            }
+            byte[] remaining = pop(stack, parameters, address);
+            flow(next, returnValueCount == 1 ? push(remaining, ANY) : remaining, localVariables, address);
+        }
+
+        private void verifyReturn(byte[] stack, int address) {
+            if (stack.length > 1) {
+                throw error("More than one value on the operand stack on return", address);
+            }
+            if (returnValue >= 0 && returnValue != stack.length) {
+                throw error("Inconsistent return value", address);
+            }
+            returnValue = stack.length;
+        }
+
+        private void flow(int target, byte[] stack, byte[] localVariables, int address) {
+            if (target < start || target >= end || !instructionStarts[target - start]) {
+                throw error("Invalid jump target " + target, address);
+            }
+            int index = target - start;
+            if (stacks[index] == null) {
+                stacks[index] = stack.clone();
+                localTypes[index] = localVariables.clone();
+                maxStack = Math.max(maxStack, stack.length);
+                pending.push(target);
+            } else if (stacks[index].length != stack.length) {
+                throw error("Inconsistent operand stack depth at address " + target, address);
+            } else if (merge(stacks[index], stack) | merge(localTypes[index], localVariables)) {
+                pending.push(target);
+            }
+        }
+
+        private void checkLocal(int index, int address) {
+            if (index < 0 || index >= locals) {
+                throw error("Invalid local variable " + index, address);
+            }
+        }
+
+        private byte[] binary(byte[] stack, byte operandType, byte resultType, int address) {
+            expect(stack, 1, operandType, address);
+            expect(stack, 2, operandType, address);
+            return push(pop(stack, 2, address), resultType);
+        }
+
+        private byte[] compareEquality(byte[] stack, int address) {
+            byte[] remaining = pop(stack, 2, address);
+            byte left = stack[stack.length - 2];
+            byte right = stack[stack.length - 1];
+            if (left != ANY && right != ANY && left != right) {
+                throw error("Incompatible operand types", address);
+            }
+            return push(remaining, BOOLEAN);
+        }
+
+        private void expect(byte[] stack, int position, byte type, int address) {
+            if (stack.length < position) {
+                throw error("Operand stack underflow", address);
+            }
+            byte actual = stack[stack.length - position];
+            if (actual != ANY && actual != type) {
+                throw error("Expected " + (type == INTEGER ? "integer" : "boolean") + " operand", address);
+            }
+        }
+
+        private byte top(byte[] stack, int address) {
+            if (stack.length == 0) {
+                throw error("Operand stack underflow", address);
+            }
+            return stack[stack.length - 1];
+        }
+
+        private byte[] pop(byte[] stack, int count, int address) {
+            if (stack.length < count) {
+                throw error("Operand stack underflow", address);
+            }
+            return Arrays.copyOf(stack, stack.length - count);
+        }
+
+        private byte[] push(byte[] stack, byte type) {
+            byte[] result = Arrays.copyOf(stack, stack.length + 1);
+            result[stack.length] = type;
+            return result;
+        }
+
+        private int jumpTarget(int address) {
+            return address + 1 + code[address + 1];
+        }
+
+        private IllegalStateException error(String message, int address) {
+            return new IllegalStateException(message + " in function " + functionIndex + " at address " + address);
+        }
+    }
+
+    /**
+     * Merges the incoming types into the known ones, types which differ become {@link #ANY}.
+     *
+     * @return <code>true</code> if the known types changed
+     */
+    private static boolean merge(byte[] known, byte[] incoming) {
+        boolean changed = false;
+        for (int i = 0; i < known.length; i++) {
+            if (known[i] != incoming[i] && known[i] != ANY) {
+                known[i] = ANY;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+}
@@ -0,0 +1,24 @@
+package org.mufuku.yaoocai.v1.vm;
+
+/**
+ * A yaoocai function translated to JVM byte code by the {@link FunctionCompiler}. The arguments are taken from and
+ * the return value (if any) is left on the operand stack, exactly as the interpreted function would do.
+ *
+ * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
+ */
+public interface CompiledFunction {
+
+    void invoke(OperandStack stack, Invoker invoker);
+
+    /**
+     * Entry point back into the {@link VM} for function calls made by compiled code.
+     */
+    interface Invoker {
+        void invoke(int functionIndex);
+
+        /**
+         * @param builtInSlot slot of the built-in within the dense built-in table of the program
+         */
+        void invokeBuiltIn(int builtInSlot);
+    }
+}
@@ -0,0 +1,71 @@
+package org.mufuku.yaoocai.v1.vm;
+
+/**
+ * Dense handler numbers of the decoded instruction stream the {@link VM} dispatches on.
+ *
+ * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
+ */
+@SuppressWarnings("squid:S1214")
+interface DecodedOpCodes {
+
+    int FUNCTION = 0;
+
+    int I_CONST = 1;
+    int B_CONST_TRUE = 2;
+    int B_CONST_FALSE = 3;
+
+    int STORE = 4;
+    int LOAD = 5;
+    int POP = 6;
+
+    int INVOKE = 7;
+    int INVOKE_BUILTIN = 8;
+
+    int ADD = 9;
+    int SUB = 10;
+    int MUL = 11;
+    int DIV = 12;
+    int MOD = 13;
+    int NEG = 14;
+
+    int CMP_LT = 15;
+    int CMP_LTE = 16;
+    int CMP_GT = 17;
+    int CMP_GTE = 18;
+    int CMP_EQ = 19;
+    int CMP_NE = 20;
+
+    int IF = 21;
+    int GOTO = 22;
+    int RETURN = 23;
+    int POP_PARAMS = 24;
+
+    int AND = 25;
+    int OR = 26;
+    int NOT = 27;
+
+    // super instructions, see SuperInstructionFuser
+    int LOAD_LOAD_ADD = 28;
+    int LOAD_LOAD_SUB = 29;
+    int LOAD_CONST_ADD = 30;
+    int LOAD_LOAD_ADD_STORE = 31;
+    int LOAD_LOAD_SUB_STORE = 32;
+    int ADD_CONST_LOCAL = 33;
+    int CONST_STORE = 34;
+
+    int LOAD_CONST_CMP_LT_IF = 35;
+    int LOAD_CONST_CMP_LTE_IF = 36;
+    int LOAD_CONST_CMP_GT_IF = 37;
+    int LOAD_CONST_CMP_GTE_IF = 38;
+    int LOAD_CONST_CMP_EQ_IF = 39;
+    int LOAD_CONST_CMP_NE_IF = 40;
+
+    int LOAD_LOAD_CMP_LT_IF = 41;
+    int LOAD_LOAD_CMP_LTE_IF = 42;
+    int LOAD_LOAD_CMP_GT_IF = 43;
+    int LOAD_LOAD_CMP_GTE_IF = 44;
+    int LOAD_LOAD_CMP_EQ_IF = 45;
+    int LOAD_LOAD_CMP_NE_IF = 46;
+
+    int HANDLERS = 47;
+}
@@ -0,0 +1,499 @@
+package org.mufuku.yaoocai.v1.vm;
+
+import org.mufuku.yaoocai.v1.bytecode.InstructionSet;
+import org.mufuku.yaoocai.v1.vm.builtins.AsyncBuiltInVMFunction;
+import org.mufuku.yaoocai.v1.vm.builtins.BuiltInVMFunction;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * Translates single yaoocai functions into JVM classes implementing {@link CompiledFunction}. Local variables become
+ * <code>int</code> locals and the operand stack of the function becomes the JVM operand stack, therefore the stack
+ * depth has to be known for every instruction. Functions using built-ins without a known stack effect or with an
+ * inconsistent stack layout are rejected and stay interpreted.
+ *
+ * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
+ */
+class FunctionCompiler {
+
+    private static final String CLASS_PREFIX = "org/mufuku/yaoocai/v1/vm/jit/Function";
+    private static final String OPERAND_STACK = Type.getInternalName(OperandStack.class);
+    private static final String INVOKER = Type.getInternalName(CompiledFunction.Invoker.class);
+    private static final String INVOKE_DESCRIPTOR = Type.getMethodDescriptor(Type.VOID_TYPE,
+            Type.getType(OperandStack.class), Type.getType(CompiledFunction.Invoker.class));
+
+    private static final int STACK_SLOT = 1;
+    private static final int INVOKER_SLOT = 2;
+    private static final int FIRST_LOCAL_SLOT = 3;
+
+    private static final int UNKNOWN = -1;
+    private static final int ANALYSING = -2;
+    private static final int INVALID = -3;
+
+    private final short[] code;
+    private final int[] functionPointers;
+    private final short[] builtInCodes;
+    private final BuiltInVMFunction[] builtIns;
+    private final int[] functionEnds;
+    private final int[] returnValues;
+    private final FunctionClassLoader classLoader = new FunctionClassLoader();
+
+    FunctionCompiler(short[] code, int[] functionPointers, short[] builtInCodes, BuiltInVMFunction[] builtIns) {
+        this.code = code;
+        this.functionPointers = functionPointers;
+        this.builtInCodes = builtInCodes;
+        this.builtIns = builtIns;
+        this.functionEnds = new int[functionPointers.length];
+        this.returnValues = new int[functionPointers.length];
+        Arrays.fill(returnValues, UNKNOWN);
+
+        int[] sorted = functionPointers.clone();
+        Arrays.sort(sorted);
+        for (int i = 0; i < functionPointers.length; i++) {
+            int next = Arrays.binarySearch(sorted, functionPointers[i]) + 1;
+            functionEnds[i] = next < sorted.length ? sorted[next] : code.length;
+        }
+    }
+
+    int functionEnd(int functionIndex) {
+        return functionEnds[functionIndex];
+    }
+
+    /**
+     * @return the compiled function or <code>null</code> if the function can't be compiled
+     */
+    CompiledFunction compile(int functionIndex) {
+        if (returnValue(functionIndex) == INVALID) {
+            return null;
+        }
+        Analysis analysis = analyse(functionIndex);
+        if (analysis == null) {
+            return null;
+        }
+        String className = CLASS_PREFIX + functionIndex;
+        try {
+            byte[] classFile = generate(className, functionIndex, analysis);
+            Class<?> functionClass = classLoader.define(className.replace('/', '.'), classFile);
+            return (CompiledFunction) functionClass.getConstructor().newInstance();
+        } catch (ReflectiveOperationException | RuntimeException | LinkageError e) { // NOSONAR a function which can't be compiled is simply interpreted
+            return null;
+        }
+    }
+
+    private int returnValue(int functionIndex) {
+        if (returnValues[functionIndex] == UNKNOWN) {
+            // recursive invocations are not followed while analysing, the other paths determine the return value
+            returnValues[functionIndex] = ANALYSING;
+            Analysis analysis = analyse(functionIndex);
+            returnValues[functionIndex] = analysis == null || analysis.returnDepth < 0 ? INVALID : analysis.returnDepth;
+        }
+        return returnValues[functionIndex];
+    }
+
+    private int parameters(int functionIndex) {
+        int start = functionPointers[functionIndex];
+        if (start + 3 < functionEnds[functionIndex] && code[start + 2] == InstructionSet.OpCodes.POP_PARAMS.code()) {
+            return code[start + 3];
+        }
+        return 0;
+    }
+
+    private int locals(int functionIndex) {
+        return code[functionPointers[functionIndex] + 1];
+    }
+
+    private Analysis analyse(int functionIndex) {
+        int start = functionPointers[functionIndex];
+        int end = functionEnds[functionIndex];
+        Analysis analysis = new Analysis(start, end);
+        for (int address = start; address < end; address += length(address)) {
+            if (InstructionSet.OpCodes.get(code[address]) == null) {
+                return null;
+            }
+            analysis.instructionStarts[address - start] = true;
+        }
+
+        Deque<Integer> pending = new ArrayDeque<>();
+        analysis.depths[0] = 0;
+        pending.push(start);
+        while (!pending.isEmpty()) {
+            int address = pending.pop();
+            if (!analyseInstruction(functionIndex, analysis, address, pending)) {
+                return null;
+            }
+        }
+        return analysis;
+    }
+
+    private boolean analyseInstruction(int functionIndex, Analysis analysis, int address, Deque<Integer> pending) {
+        InstructionSet.OpCodes opCode = InstructionSet.OpCodes.get(code[address]);
+        int depth = analysis.depths[address - analysis.start];
+        int next = address + length(address);
+        switch (opCode) {
+            case FUNCTION:
+                return address == analysis.start && analysis.flow(next, depth, pending);
+            case POP_PARAMS:
+                return address == analysis.start + 2 && code[address + 1] <= locals(functionIndex)
+                        && analysis.flow(next, depth, pending);
+            case I_CONST:
+            case B_CONST_TRUE:
+            case B_CONST_FALSE:
+                return analysis.flow(next, depth + 1, pending);
+            case LOAD:
+                return isLocal(functionIndex, code[address + 1]) && analysis.flow(next, depth + 1, pending);
+            case STORE:
+                return isLocal(functionIndex, code[address + 1]) && depth >= 1 && analysis.flow(next, depth - 1, pending);
+            case POP:
+                return depth >= 1 && analysis.flow(next, depth - 1, pending);
+            case NEG:
+            case NOT:
+                return depth >= 1 && analysis.flow(next, depth, pending);
+            case ADD:
+            case SUB:
+            case MUL:
+            case DIV:
+            case MOD:
+            case AND:
+            case OR:
+            case CMP_LT:
+            case CMP_LTE:
+            case CMP_GT:
+            case CMP_GTE:
+            case CMP_EQ:
+            case CMP_NE:
+                return depth >= 2 && analysis.flow(next, depth - 1, pending);
+            case IF:
+                return depth >= 1 && analysis.flow(jumpTarget(address), depth - 1, pending)
+                        && analysis.flow(next, depth - 1, pending);
+            case GOTO:
+                return analysis.flow(jumpTarget(address), depth, pending);
+            case INVOKE:
+                return analyseInvoke(analysis, code[address + 1], depth, next, pending);
+            case INVOKE_BUILTIN:
+                return analyseInvokeBuiltIn(analysis, code[address + 1], depth, next, pending);
+            case RETURN:
+                if (depth > 1 || (analysis.returnDepth >= 0 && analysis.returnDepth != depth)) {
+                    return false;
+                }
+                analysis.returnDepth = depth;
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private boolean analyseInvoke(Analysis analysis, int callee, int depth, int next, Deque<Integer> pending) {
+        if (callee < 0 || callee >= functionPointers.length) {
+            return false;
+        }
+        int returnValue = returnValue(callee);
+        if (returnValue == ANALYSING) {
+            return true;
+        } else if (returnValue == INVALID) {
+            return false;
+        }
+        int parameters = parameters(callee);
+        return depth >= parameters && analysis.flow(next, depth - parameters + returnValue, pending);
+    }
+
+    private int builtInSlot(short functionCode) {
+        for (int slot = 0; slot < builtInCodes.length; slot++) {
+            if (builtInCodes[slot] == functionCode) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private boolean analyseInvokeBuiltIn(Analysis analysis, short functionCode, int depth, int next, Deque<Integer> pending) {
+        int slot = builtInSlot(functionCode);
+        BuiltInVMFunction builtIn = slot < 0 ? null : builtIns[slot];
+        // functions calling asynchronous built-ins stay interpreted, only the interpreter can suspend
+        if (builtIn == null || builtIn instanceof AsyncBuiltInVMFunction || builtIn.getParameterCount() < 0
+                || builtIn.getReturnValueCount() < 0 || builtIn.getReturnValueCount() > 1) {
+            return false;
+        }
+        int parameters = builtIn.getParameterCount();
+        return depth >= parameters && analysis.flow(next, depth - parameters + builtIn.getReturnValueCount(), pending);
+    }
+
+    private boolean isLocal(int functionIndex, int index) {
+        return index >= 0 && index < locals(functionIndex);
+    }
+
+    private byte[] generate(String className, int functionIndex, Analysis analysis) {
+        ClassWriter classWriter = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+        classWriter.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER, className, null,
+                "java/lang/Object", new String[]{Type.getInternalName(CompiledFunction.class)});
+
+        MethodVisitor constructor = classWriter.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        constructor.visitCode();
+        constructor.visitVarInsn(Opcodes.ALOAD, 0);
+        constructor.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        constructor.visitInsn(Opcodes.RETURN);
+        constructor.visitMaxs(0, 0);
+        constructor.visitEnd();
+
+        MethodVisitor method = classWriter.visitMethod(Opcodes.ACC_PUBLIC, "invoke", INVOKE_DESCRIPTOR, null, null);
+        method.visitCode();
+        new FunctionGenerator(method, functionIndex, analysis).generate();
+        method.visitMaxs(0, 0);
+        method.visitEnd();
+
+        classWriter.visitEnd();
+        return classWriter.toByteArray();
+    }
+
+    private int length(int address) {
+        InstructionSet.OpCodes opCode = InstructionSet.OpCodes.get(code[address]);
+        return opCode == null ? 1 : 1 + opCode.opCodeParam();
+    }
+
+    private int jumpTarget(int address) {
+        return address + 1 + code[address + 1];
+    }
+
+    private final class FunctionGenerator {
+
+        private final MethodVisitor method;
+        private final int functionIndex;
+        private final Analysis analysis;
+        private final Label[] labels;
+        private final int temporarySlot;
+
+        FunctionGenerator(MethodVisitor method, int functionIndex, Analysis analysis) {
+            this.method = method;
+            this.functionIndex = functionIndex;
+            this.analysis = analysis;
+            this.labels = new Label[analysis.end - analysis.start];
+            this.temporarySlot = FIRST_LOCAL_SLOT + locals(functionIndex);
+        }
+
+        void generate() {
+            // the JVM requires definitely assigned locals, parameters are assigned by POP_PARAMS
+            for (int i = parameters(functionIndex); i < locals(functionIndex); i++) {
+                method.visitInsn(Opcodes.ICONST_0);
+                method.visitVarInsn(Opcodes.ISTORE, FIRST_LOCAL_SLOT + i);
+            }
+            for (int address = analysis.start; address < analysis.end; address += length(address)) {
+                int depth = analysis.depths[address - analysis.start];
+                if (depth >= 0) {
+                    method.visitLabel(label(address));
+                    generateInstruction(address, depth);
+                }
+            }
+        }
+
+        private void generateInstruction(int address, int depth) {
+            InstructionSet.OpCodes opCode = InstructionSet.OpCodes.get(code[address]);
+            short operand = address + 1 < code.length ? code[address + 1] : 0;
+            switch (opCode) {
+                case FUNCTION:
+                    break;
+                case POP_PARAMS:
+                    for (int i = operand - 1; i >= 0; i--) {
+                        method.visitVarInsn(Opcodes.ALOAD, STACK_SLOT);
+                        method.visitMethodInsn(Opcodes.INVOKEVIRTUAL, OPERAND_STACK, "pop", "()I", false);
+                        method.visitVarInsn(Opcodes.ISTORE, FIRST_LOCAL_SLOT + i);
+                    }
+                    break;
+                case I_CONST:
+                    pushConstant(operand);
+                    break;
+                case B_CONST_TRUE:
+                    method.visitInsn(Opcodes.ICONST_1);
+                    break;
+                case B_CONST_FALSE:
+                    method.visitInsn(Opcodes.ICONST_0);
+                    break;
+                case STORE:
+                    method.visitVarInsn(Opcodes.ISTORE, FIRST_LOCAL_SLOT + operand);
+                    break;
+                case LOAD:
+                    method.visitVarInsn(Opcodes.ILOAD, FIRST_LOCAL_SLOT + operand);
+                    break;
+                case POP:
+                    method.visitInsn(Opcodes.POP);
+                    break;
+                case INVOKE:
+                    generateInvoke(operand);
+                    break;
+                case INVOKE_BUILTIN:
+                    generateInvokeBuiltIn(operand);
+                    break;
+                case ADD:
+                    arithmetic(Opcodes.IADD);
+                    break;
+                case SUB:
+                    arithmetic(Opcodes.ISUB);
+                    break;
+                case MUL:
+                    arithmetic(Opcodes.IMUL);
+                    break;
+                case DIV:
+                    arithmetic(Opcodes.IDIV);
+                    break;
+                case MOD:
+                    arithmetic(Opcodes.IREM);
+                    break;
+                case NEG:
+                    arithmetic(Opcodes.INEG);
+                    break;
+                case AND:
+                    method.visitInsn(Opcodes.IAND);
+                    break;
+                case OR:
+                    method.visitInsn(Opcodes.IOR);
+                    break;
+                case NOT:
+                    bool(Opcodes.IFNE);
+                    break;
+                case CMP_LT:
+                    bool(Opcodes.IF_ICMPGE);
+                    break;
+                case CMP_LTE:
+                    bool(Opcodes.IF_ICMPGT);
+                    break;
+                case CMP_GT:
+                    bool(Opcodes.IF_ICMPLE);
+                    break;
+                case CMP_GTE:
+                    bool(Opcodes.IF_ICMPLT);
+                    break;
+                case CMP_EQ:
+                    bool(Opcodes.IF_ICMPNE);
+                    break;
+                case CMP_NE:
+                    bool(Opcodes.IF_ICMPEQ);
+                    break;
+                case IF:
+                    method.visitJumpInsn(Opcodes.IFEQ, label(jumpTarget(address)));
+                    break;
+                case GOTO:
+                    method.visitJumpInsn(Opcodes.GOTO, label(jumpTarget(address)));
+                    break;
+                case RETURN:
+                    if (depth == 1) {
+                        method.visitVarInsn(Opcodes.ALOAD, STACK_SLOT);
+                        method.visitInsn(Opcodes.SWAP);
+                        method.visitMethodInsn(Opcodes.INVOKEVIRTUAL, OPERAND_STACK, "push", "(I)V", false);
+                    }
+                    method.visitInsn(Opcodes.RETURN);
+                    break;
+                default:
+                    throw new IllegalStateException("Op code " + opCode + " can't be compiled");
+            }
+        }
+
+        private void generateInvoke(int callee) {
+            generateCall("invoke", callee, parameters(callee), returnValue(callee));
+        }
+
+        private void generateInvokeBuiltIn(short functionCode) {
+            int slot = builtInSlot(functionCode);
+            BuiltInVMFunction builtIn = builtIns[slot];
+            generateCall("invokeBuiltIn", slot, builtIn.getParameterCount(), builtIn.getReturnValueCount());
+        }
+
+        private void generateCall(String invokerMethod, int function, int parameters, int returnValues) {
+            // the arguments are moved from the JVM stack to the operand stack, the callee expects them there
+            for (int i = parameters - 1; i >= 0; i--) {
+                method.visitVarInsn(Opcodes.ISTORE, temporarySlot + i);
+            }
+            for (int i = 0; i < parameters; i++) {
+                method.visitVarInsn(Opcodes.ALOAD, STACK_SLOT);
+                method.visitVarInsn(Opcodes.ILOAD, temporarySlot + i);
+                method.visitMethodInsn(Opcodes.INVOKEVIRTUAL, OPERAND_STACK, "push", "(I)V", false);
+            }
+            method.visitVarInsn(Opcodes.ALOAD, INVOKER_SLOT);
+            pushConstant(function);
+            method.visitMethodInsn(Opcodes.INVOKEINTERFACE, INVOKER, invokerMethod, "(I)V", true);
+            if (returnValues == 1) {
+                method.visitVarInsn(Opcodes.ALOAD, STACK_SLOT);
+                method.visitMethodInsn(Opcodes.INVOKEVIRTUAL, OPERAND_STACK, "pop", "()I", false);
+            }
+        }
+
+        private void arithmetic(int opCode) {
+            method.visitInsn(opCode);
+            method.visitInsn(Opcodes.I2S);
+        }
+
+        private void bool(int jumpIfFalse) {
+            Label falseLabel = new Label();
+            Label endLabel = new Label();
+            method.visitJumpInsn(jumpIfFalse, falseLabel);
+            method.visitInsn(Opcodes.ICONST_1);
+            method.visitJumpInsn(Opcodes.GOTO, endLabel);
+            method.visitLabel(falseLabel);
+            method.visitInsn(Opcodes.ICONST_0);
+            method.visitLabel(endLabel);
+        }
+
+        private void pushConstant(int value) {
+            if (value >= -1 && value <= 5) {
+                method.visitInsn(Opcodes.ICONST_0 + value);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                method.visitIntInsn(Opcodes.BIPUSH, value);
+            } else {
+                method.visitIntInsn(Opcodes.SIPUSH, value);
+            }
+        }
+
+        private Label label(int address) {
+            int index = address - analysis.start;
+            if (labels[index] == null) {
+                labels[index] = new Label();
+            }
+            return labels[index];
+        }
+    }
+
+    private static final class Analysis {
+
+        private final int start;
+        private final int end;
+        private final int[] depths;
+        private final boolean[] instructionStarts;
+        private int returnDepth = -1;
+
+        Analysis(int start, int end) {
+            this.start = start;
+            this.end = end;
+            this.depths = new int[end - start];
+            this.instructionStarts = new boolean[end - start];
+            Arrays.fill(depths, -1);
+        }
+
+        boolean flow(int target, int depth, Deque<Integer> pending) {
+            if (target < start || target >= end || !instructionStarts[target - start]) {
+                return false;
+            }
+            int known = depths[target - start];
+            if (known < 0) {
+                depths[target - start] = depth;
+                pending.push(target);
+                return true;
+            }
+            return known == depth;
+        }
+    }
+
+    private static final class FunctionClassLoader extends ClassLoader {
+
+        FunctionClassLoader() {
+            super(FunctionCompiler.class.getClassLoader());
+        }
+
+        Class<?> define(String name, byte[] classFile) {
+            return defineClass(name, classFile, 0, classFile.length);
+        }
+    }
+}
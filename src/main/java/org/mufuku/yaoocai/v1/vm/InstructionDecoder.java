@@ -0,0 +1,193 @@
+package org.mufuku.yaoocai.v1.vm;
+
+import org.mufuku.yaoocai.v1.bytecode.InstructionSet;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Rewrites loaded byte code into the decoded instruction stream of the {@link VM}. The layout of the byte code is kept
+ * (every instruction stays at its address), op codes are replaced by {@link DecodedOpCodes} handler numbers, function
+ * indexes of <code>invoke</code> by the start address of the function, function codes of <code>invoke_builtin</code> by
+ * a slot of the dense built-in table (see {@link #builtInCodes()}) and relative jumps by absolute addresses.
+ *
+ * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
+ */
+class InstructionDecoder {
+
+    private static final int[] LENGTHS = new int[DecodedOpCodes.HANDLERS];
+
+    static {
+        for (InstructionSet.OpCodes opCode : InstructionSet.OpCodes.values()) {
+            LENGTHS[handlerOf(opCode)] = 1 + opCode.opCodeParam();
+        }
+        for (int handler = DecodedOpCodes.NOT + 1; handler < DecodedOpCodes.HANDLERS; handler++) {
+            LENGTHS[handler] = SuperInstructionFuser.span(handler);
+        }
+    }
+
+    private final short[] code;
+    private final int[] functionPointers;
+    private final Map<Short, Integer> builtInSlots = new LinkedHashMap<>();
+    private final boolean fixedBuiltIns;
+
+    InstructionDecoder(short[] code, int[] functionPointers) {
+        this.code = code;
+        this.functionPointers = functionPointers;
+        this.fixedBuiltIns = false;
+    }
+
+    /**
+     * Creates a decoder with a given built-in table, e.g. the one of a function directory. Code which calls other
+     * built-ins is rejected.
+     */
+    InstructionDecoder(short[] code, int[] functionPointers, short[] builtInCodes) {
+        this.code = code;
+        this.functionPointers = functionPointers;
+        this.fixedBuiltIns = true;
+        for (short builtInCode : builtInCodes) {
+            builtInSlots.putIfAbsent(builtInCode, builtInSlots.size());
+        }
+    }
+
+    int[] decode() {
+        int[] instructions = new int[code.length];
+        decode(0, code.length, instructions);
+        return instructions;
+    }
+
+    /**
+     * Decodes the code between start (inclusive) and end (exclusive) into the given instruction stream.
+     */
+    void decode(int start, int end, int[] instructions) {
+        int address = start;
+        while (address < end) {
+            InstructionSet.OpCodes opCode = InstructionSet.OpCodes.get(code[address]);
+            if (opCode == null) {
+                throw new IllegalStateException("Unknown op code " + code[address] + " at address " + address);
+            }
+            if (address + opCode.opCodeParam() >= end) {
+                throw new IllegalStateException("Incomplete instruction " + opCode.disassembleCode() + " at address " + address);
+            }
+            instructions[address] = handlerOf(opCode);
+            int operandAddress = address + 1;
+            if (opCode == InstructionSet.OpCodes.INVOKE) {
+                instructions[operandAddress] = resolveFunction(code[operandAddress], address);
+            } else if (opCode == InstructionSet.OpCodes.INVOKE_BUILTIN) {
+                instructions[operandAddress] = builtInSlot(code[operandAddress], address);
+            } else if (opCode.isAddressOpCode()) {
+                instructions[operandAddress] = resolveJump(operandAddress, code[operandAddress]);
+            } else {
+                for (int i = 0; i < opCode.opCodeParam(); i++) {
+                    instructions[operandAddress + i] = code[operandAddress + i];
+                }
+            }
+            address += 1 + opCode.opCodeParam();
+        }
+    }
+
+    /**
+     * @return the function codes of all used built-ins, indexed by their slot
+     */
+    short[] builtInCodes() {
+        short[] codes = new short[builtInSlots.size()];
+        for (Map.Entry<Short, Integer> slot : builtInSlots.entrySet()) {
+            codes[slot.getValue()] = slot.getKey();
+        }
+        return codes;
+    }
+
+    private int builtInSlot(short functionCode, int address) {
+        Integer slot = builtInSlots.get(functionCode);
+        if (slot == null) {
+            if (fixedBuiltIns) {
+                throw new IllegalStateException("Built-in function " + functionCode + " missing in function directory at address " + address);
+            }
+            slot = builtInSlots.size();
+            builtInSlots.put(functionCode, slot);
+        }
+        return slot;
+    }
+
+    private int resolveFunction(short functionIndex, int address) {
+        if (functionIndex < 0 || functionIndex >= functionPointers.length) {
+            throw new IllegalStateException("Invalid function index " + functionIndex + " at address " + address);
+        }
+        return functionPointers[functionIndex];
+    }
+
+    private int resolveJump(int operandAddress, short offset) {
+        int target = operandAddress + offset;
+        if (target < 0 || target >= code.length) {
+            throw new IllegalStateException("Jump target " + target + " out of code range at address " + (operandAddress - 1));
+        }
+        return target;
+    }
+
+    static int instructionLength(int handler) {
+        return LENGTHS[handler];
+    }
+
+    static int handlerOf(InstructionSet.OpCodes opCode) {
+        switch (opCode) {
+            case FUNCTION:
+                return DecodedOpCodes.FUNCTION;
+            case I_CONST:
+                return DecodedOpCodes.I_CONST;
+            case B_CONST_TRUE:
+                return DecodedOpCodes.B_CONST_TRUE;
+            case B_CONST_FALSE:
+                return DecodedOpCodes.B_CONST_FALSE;
+            case STORE:
+                return DecodedOpCodes.STORE;
+            case LOAD:
+                return DecodedOpCodes.LOAD;
+            case POP:
+                return DecodedOpCodes.POP;
+            case INVOKE:
+                return DecodedOpCodes.INVOKE;
+            case INVOKE_BUILTIN:
+                return DecodedOpCodes.INVOKE_BUILTIN;
+            case ADD:
+                return DecodedOpCodes.ADD;
+            case SUB:
+                return DecodedOpCodes.SUB;
+            case MUL:
+                return DecodedOpCodes.MUL;
+            case DIV:
+                return DecodedOpCodes.DIV;
+            case MOD:
+                return DecodedOpCodes.MOD;
+            case NEG:
+                return DecodedOpCodes.NEG;
+            case CMP_LT:
+                return DecodedOpCodes.CMP_LT;
+            case CMP_LTE:
+                return DecodedOpCodes.CMP_LTE;
+            case CMP_GT:
+                return DecodedOpCodes.CMP_GT;
+            case CMP_GTE:
+                return DecodedOpCodes.CMP_GTE;
+            case CMP_EQ:
+                return DecodedOpCodes.CMP_EQ;
+            case CMP_NE:
+                return DecodedOpCodes.CMP_NE;
+            case IF:
+                return DecodedOpCodes.IF;
+            case GOTO:
+                return DecodedOpCodes.GOTO;
+            case RETURN:
+                return DecodedOpCodes.RETURN;
+            case POP_PARAMS:
+                return DecodedOpCodes.POP_PARAMS;
+            case AND:
+                return DecodedOpCodes.AND;
+            case OR:
+                return DecodedOpCodes.OR;
+            case NOT:
+                return DecodedOpCodes.NOT;
+            default:
+                throw new IllegalStateException("No handler for op code " + opCode);
+        }
+    }
+}
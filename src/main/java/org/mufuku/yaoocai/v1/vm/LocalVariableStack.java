@@ -1,19 +1,56 @@
 package org.mufuku.yaoocai.v1.vm;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 /**
+ * Local variables of all active function frames. The frames are carved out of one contiguous slot array and
+ * addressed by index relative to the base of the current frame.
+ *
  * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
  */
 class LocalVariableStack {
-    private final Map<Short, Object> variables = new HashMap<>();
 
-    void setValue(short index, Object value) {
-        variables.put(index, value);
+    private static final int INITIAL_SLOTS = 256;
+    private static final int INITIAL_FRAMES = 32;
+
+    private int[] slots = new int[INITIAL_SLOTS];
+    private int[] frameBases = new int[INITIAL_FRAMES];
+    private int depth = 0;
+    private int base = 0;
+    private int top = 0;
+
+    void pushFrame(int size) {
+        if (depth == frameBases.length) {
+            frameBases = Arrays.copyOf(frameBases, depth * 2);
+        }
+        frameBases[depth++] = base;
+        base = top;
+        top += size;
+        if (top > slots.length) {
+            slots = Arrays.copyOf(slots, Math.max(top, slots.length * 2));
+        }
+    }
+
+    void popFrame() {
+        top = base;
+        base = frameBases[--depth];
+    }
+
+    void setValue(int index, int value) {
+        slots[base + index] = value;
+    }
+
+    int getValue(int index) {
+        return slots[base + index];
+    }
+
+    void clear() {
+        depth = 0;
+        base = 0;
+        top = 0;
     }
 
-    Object getValue(short index) {
-        return variables.get(index);
+    boolean isEmpty() {
+        return depth == 0;
     }
 }
@@ -0,0 +1,73 @@
+package org.mufuku.yaoocai.v1.vm;
+
+import java.util.Arrays;
+
+/**
+ * Operand stack of the virtual machine. Values are held unboxed in an int array, booleans are encoded as 0 and 1.
+ *
+ * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
+ */
+public class OperandStack {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private int[] values;
+    private int size = 0;
+
+    public OperandStack() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public OperandStack(int initialCapacity) {
+        this.values = new int[Math.max(1, initialCapacity)];
+    }
+
+    public void push(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+
+    public int pop() {
+        if (size == 0) {
+            throw new IllegalStateException("Operand stack underflow");
+        }
+        return values[--size];
+    }
+
+    public int peek() {
+        if (size == 0) {
+            throw new IllegalStateException("Operand stack underflow");
+        }
+        return values[size - 1];
+    }
+
+    public void pushInteger(short value) {
+        push(value);
+    }
+
+    public short popInteger() {
+        return (short) pop();
+    }
+
+    public void pushBoolean(boolean value) {
+        push(value ? 1 : 0);
+    }
+
+    public boolean popBoolean() {
+        return pop() != 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+}
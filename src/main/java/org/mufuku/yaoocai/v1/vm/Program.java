@@ -0,0 +1,172 @@
+package org.mufuku.yaoocai.v1.vm;
+
+import org.mufuku.yaoocai.v1.bytecode.InstructionSet;
+import org.mufuku.yaoocai.v1.vm.builtins.BuiltInVMFunction;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Loaded and decoded byte code as produced by the {@link ProgramLoader}. A program is thread-safe and can be executed
+ * by any number of {@link VM}s at the same time.
+ * <p>
+ * Byte code with a function directory is loaded lazily: a function is verified and decoded when it is invoked for the
+ * first time, so the startup costs depend on the code which is actually executed. VMs have to call
+ * {@link #decodeFunctionAt(int)} before they enter a function (see {@link #isDecoded()}).
+ * <p>
+ * The functions compiled to JVM classes by the tiered compilation are kept with the program, so they are compiled
+ * once and used by every later VM.
+ *
+ * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
+ */
+public final class Program {
+
+    private final short[] code;
+    private final int[] functionPointers;
+    private final int[] maxStacks;
+    private final int[] instructions;
+    private final short[] builtInCodes;
+    private final short mainFunctionIndex;
+
+    // state of the lazy decoding, guarded by this
+    private final boolean[] decodedFunctions;
+    private int undecodedFunctions;
+    private ByteCodeVerifier verifier;
+    private InstructionDecoder decoder;
+    private final boolean superInstructions;
+
+    // compiled functions depend on the stack effects of the built-ins, so there is one compiler per built-in table
+    private final Map<List<BuiltInVMFunction>, TieredCompiler> tieredCompilers = new HashMap<>();
+
+    Program(short[] code, int[] functionPointers, int[] maxStacks, int[] instructions, short[] builtInCodes,
+            short mainFunctionIndex) {
+        this.code = code;
+        this.functionPointers = functionPointers;
+        this.maxStacks = maxStacks;
+        this.instructions = instructions;
+        this.builtInCodes = builtInCodes;
+        this.mainFunctionIndex = mainFunctionIndex;
+        this.decodedFunctions = null;
+        this.superInstructions = false;
+    }
+
+    /**
+     * Creates a program whose functions are decoded on demand. The function pointers have to be in ascending order.
+     */
+    Program(short[] code, int[] functionPointers, short[] builtInCodes, short mainFunctionIndex,
+            ByteCodeVerifier verifier, InstructionDecoder decoder, boolean superInstructions) {
+        this.code = code;
+        this.functionPointers = functionPointers;
+        this.maxStacks = new int[functionPointers.length];
+        this.instructions = new int[code.length];
+        this.builtInCodes = builtInCodes;
+        this.mainFunctionIndex = mainFunctionIndex;
+        this.decodedFunctions = new boolean[functionPointers.length];
+        this.undecodedFunctions = functionPointers.length;
+        this.verifier = verifier;
+        this.decoder = decoder;
+        this.superInstructions = superInstructions;
+    }
+
+    public int getFunctionCount() {
+        return functionPointers.length;
+    }
+
+    public short getMainFunctionIndex() {
+        return mainFunctionIndex;
+    }
+
+    /**
+     * @return the maximum operand stack depth of the function itself (without the functions it calls) or -1 if not
+     * known because it calls built-ins without a declared stack effect
+     */
+    public int getMaxStack(int functionIndex) {
+        decodeFunction(functionIndex);
+        return maxStacks[functionIndex];
+    }
+
+    /**
+     * @return <code>true</code> if all functions are verified and decoded
+     */
+    public synchronized boolean isDecoded() {
+        return undecodedFunctions == 0;
+    }
+
+    /**
+     * Verifies and decodes the function if not done yet.
+     *
+     * @throws IllegalStateException if the byte code of the function is not valid
+     */
+    public synchronized void decodeFunction(int functionIndex) {
+        if (decodedFunctions == null || decodedFunctions[functionIndex]) {
+            return;
+        }
+        int start = functionPointers[functionIndex];
+        int end = functionIndex + 1 < functionPointers.length ? functionPointers[functionIndex + 1] : code.length;
+        maxStacks[functionIndex] = verifier.verify(functionIndex);
+        decoder.decode(start, end, instructions);
+        if (superInstructions) {
+            new SuperInstructionFuser(instructions, start, end).fuse();
+        }
+        decodedFunctions[functionIndex] = true;
+        if (--undecodedFunctions == 0) {
+            this.verifier = null;
+            this.decoder = null;
+        }
+    }
+
+    /**
+     * Verifies and decodes the function starting at the given address if not done yet.
+     */
+    void decodeFunctionAt(int address) {
+        int functionIndex = Arrays.binarySearch(functionPointers, address);
+        if (functionIndex < 0) {
+            throw new IllegalStateException("No function at address " + address);
+        }
+        decodeFunction(functionIndex);
+    }
+
+    /**
+     * @return the number of local variables (including the parameters) of the function
+     */
+    public int getMaxLocals(int functionIndex) {
+        return code[functionPointers[functionIndex] + 1];
+    }
+
+    public int getMainParameterCount() {
+        int start = functionPointers[mainFunctionIndex];
+        if (start + 3 < code.length && code[start + 2] == InstructionSet.OpCodes.POP_PARAMS.code()) {
+            return code[start + 3];
+        }
+        return 0;
+    }
+
+    // the arrays are handed out without copying, VMs must not modify them and must only read the instructions of
+    // functions they decoded
+
+    /**
+     * @return the tiered compiler shared by all VMs executing the program with the given built-ins
+     */
+    synchronized TieredCompiler tieredCompiler(BuiltInVMFunction[] builtIns) {
+        return tieredCompilers.computeIfAbsent(Arrays.asList(builtIns.clone()),
+                key -> new TieredCompiler(code, functionPointers, builtInCodes, builtIns.clone()));
+    }
+
+    short[] code() {
+        return code;
+    }
+
+    int[] functionPointers() {
+        return functionPointers;
+    }
+
+    int[] instructions() {
+        return instructions;
+    }
+
+    short[] builtInCodes() {
+        return builtInCodes;
+    }
+}
@@ -0,0 +1,126 @@
+package org.mufuku.yaoocai.v1.vm;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import org.mufuku.yaoocai.v1.vm.builtins.BuiltInVMFunction;
+import org.mufuku.yaoocai.v1.vm.builtins.DefaultBuiltIns;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of loaded {@link Program}s keyed by the SHA-256 hash of their byte code, so byte code which is executed again
+ * and again is read, checked and decoded only once. The least recently used program is evicted when the cache is
+ * full. A cache is thread-safe, all programs are loaded with the same built-ins.
+ *
+ * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
+ */
+public class ProgramCache {
+
+    private static final int DEFAULT_MAXIMUM_SIZE = 256;
+    private static final ProgramCache DEFAULT = new ProgramCache(DEFAULT_MAXIMUM_SIZE);
+
+    private final int maximumSize;
+    private final Map<Short, BuiltInVMFunction> builtIns;
+    private final Map<HashCode, Program> programs;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public ProgramCache(int maximumSize) {
+        this(maximumSize, DefaultBuiltIns.STANDARD_BUILT_INS);
+    }
+
+    public ProgramCache(int maximumSize, Map<Short, BuiltInVMFunction> builtIns) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("Invalid maximum size " + maximumSize);
+        }
+        this.maximumSize = maximumSize;
+        this.builtIns = builtIns;
+        this.programs = new LruMap();
+    }
+
+    /**
+     * @return the process-wide cache for programs with the standard built-ins
+     */
+    public static ProgramCache getDefault() {
+        return DEFAULT;
+    }
+
+    public Program load(InputStream in) throws IOException {
+        return load(ByteStreams.toByteArray(in));
+    }
+
+    /**
+     * @return the cached program of the byte code, the byte code is loaded if it isn't cached yet
+     * @throws IllegalStateException if the byte code is not valid
+     */
+    public Program load(byte[] byteCode) throws IOException {
+        HashCode key = Hashing.sha256().hashBytes(byteCode);
+        synchronized (this) {
+            Program program = programs.get(key);
+            if (program != null) {
+                hits++;
+                return program;
+            }
+            misses++;
+        }
+        // loaded without holding the lock, concurrent loads of the same byte code keep the first program
+        Program loaded = new ProgramLoader(new ByteArrayInputStream(byteCode), builtIns).load();
+        synchronized (this) {
+            Program cached = programs.get(key);
+            if (cached != null) {
+                return cached;
+            }
+            programs.put(key, loaded);
+            return loaded;
+        }
+    }
+
+    public synchronized int size() {
+        return programs.size();
+    }
+
+    public synchronized void clear() {
+        programs.clear();
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    private final class LruMap extends LinkedHashMap<HashCode, Program> {
+
+        private static final long serialVersionUID = 1L;
+
+        LruMap() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<HashCode, Program> eldest) {
+            if (size() > maximumSize) {
+                evictions++;
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package org.mufuku.yaoocai.v1.vm;
+
+import com.google.common.io.ByteStreams;
+import org.mufuku.yaoocai.v1.bytecode.BasicByteCodeConsumer;
+import org.mufuku.yaoocai.v1.bytecode.FunctionDirectory;
+import org.mufuku.yaoocai.v1.bytecode.InstructionSet;
+import org.mufuku.yaoocai.v1.vm.builtins.BuiltInVMFunction;
+import org.mufuku.yaoocai.v1.vm.builtins.DefaultBuiltIns;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Reads byte code, verifies it against the built-ins it will be executed with and turns it into a {@link Program}.
+ * Byte code files are memory mapped and converted in bulk, streams are read with buffered bulk reads.
+ * <p>
+ * Byte code with a function directory is only checked against the directory here, its functions are verified and
+ * decoded by the {@link Program} on their first invocation. Older byte code is scanned, verified and decoded at once.
+ *
+ * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
+ */
+public class ProgramLoader extends BasicByteCodeConsumer {
+
+    private final Map<Short, BuiltInVMFunction> builtIns;
+    private boolean superInstructions = true;
+    private ForkJoinPool pool;
+
+    private final Path file;
+
+    private short[] code;
+
+    public ProgramLoader(InputStream in) {
+        this(in, DefaultBuiltIns.STANDARD_BUILT_INS);
+    }
+
+    public ProgramLoader(InputStream in, Map<Short, BuiltInVMFunction> builtIns) {
+        super(in, InstructionSet.MAJOR_VERSION, InstructionSet.MINOR_VERSION);
+        this.builtIns = builtIns;
+        this.file = null;
+    }
+
+    public ProgramLoader(Path file) {
+        this(file, DefaultBuiltIns.STANDARD_BUILT_INS);
+    }
+
+    public ProgramLoader(Path file, Map<Short, BuiltInVMFunction> builtIns) {
+        // the header is read from the mapped file as well, the stream stays unused
+        super(new ByteArrayInputStream(new byte[0]), InstructionSet.MAJOR_VERSION, InstructionSet.MINOR_VERSION);
+        this.builtIns = builtIns;
+        this.file = file;
+    }
+
+    public Program load() throws IOException {
+        if (file == null) {
+            readHeader();
+            readCode();
+        } else {
+            mapFile();
+        }
+        if (pool != null) {
+            return decodeInParallel();
+        }
+        if (functionDirectory != null) {
+            return createLazyProgram();
+        }
+        int[] functionPointers = readFunctionPointers();
+        checkMainFunctionIndex(functionPointers);
+        int[] maxStacks = new ByteCodeVerifier(code, functionPointers, builtIns).verify();
+        InstructionDecoder decoder = new InstructionDecoder(code, functionPointers);
+        int[] instructions = decoder.decode();
+        if (superInstructions) {
+            new SuperInstructionFuser(instructions).fuse();
+        }
+        return new Program(code, functionPointers, maxStacks, instructions, decoder.builtInCodes(), mainFunctionIndex);
+    }
+
+    private Program createLazyProgram() {
+        int[] functionPointers = checkFunctionDirectory();
+        checkMainFunctionIndex(functionPointers);
+        short[] builtInCodes = functionDirectory.getBuiltInCodes();
+        return new Program(code, functionPointers, builtInCodes, mainFunctionIndex,
+                new ByteCodeVerifier(code, functionPointers, builtIns),
+                new InstructionDecoder(code, functionPointers, builtInCodes), superInstructions);
+    }
+
+    private Program decodeInParallel() {
+        int[] functionPointers;
+        short[] builtInCodes;
+        if (functionDirectory != null) {
+            functionPointers = checkFunctionDirectory();
+            builtInCodes = functionDirectory.getBuiltInCodes();
+        } else {
+            // one sequential scan for the function starts and the built-in table, the decoders share the table
+            FunctionDirectory directory = FunctionDirectory.of(code);
+            functionPointers = new int[directory.getFunctionCount()];
+            for (int i = 0; i < functionPointers.length; i++) {
+                functionPointers[i] = directory.getOffset(i);
+            }
+            builtInCodes = directory.getBuiltInCodes();
+        }
+        checkMainFunctionIndex(functionPointers);
+        int[] maxStacks = new int[functionPointers.length];
+        int[] instructions = new int[code.length];
+        InstructionDecoder decoder = new InstructionDecoder(code, functionPointers, builtInCodes);
+        pool.invoke(new DecodeTask(functionPointers, maxStacks, instructions, decoder, 0, functionPointers.length));
+        return new Program(code, functionPointers, maxStacks, instructions, builtInCodes, mainFunctionIndex);
+    }
+
+    /**
+     * Checks that the functions of the directory cover the code without gaps and match their function headers.
+     *
+     * @return the function pointers
+     */
+    private int[] checkFunctionDirectory() {
+        int[] functionPointers = new int[functionDirectory.getFunctionCount()];
+        int address = 0;
+        for (int i = 0; i < functionPointers.length; i++) {
+            int offset = functionDirectory.getOffset(i);
+            int length = functionDirectory.getLength(i);
+            if (offset != address || length < 2 || length > code.length - offset) {
+                throw new IllegalStateException("Invalid function directory entry " + i);
+            }
+            if (code[offset] != InstructionSet.OpCodes.FUNCTION.code() || code[offset + 1] != functionDirectory.getLocals(i)) {
+                throw new IllegalStateException("Function directory entry " + i + " doesn't match the function at address " + offset);
+            }
+            boolean popParams = length > 3 && code[offset + 2] == InstructionSet.OpCodes.POP_PARAMS.code();
+            if (functionDirectory.getParameters(i) != (popParams ? code[offset + 3] : 0)) {
+                throw new IllegalStateException("Function directory entry " + i + " doesn't match the function at address " + offset);
+            }
+            functionPointers[i] = offset;
+            address = offset + length;
+        }
+        if (address != code.length) {
+            throw new IllegalStateException("Function directory doesn't cover the code");
+        }
+        return functionPointers;
+    }
+
+    private void checkMainFunctionIndex(int[] functionPointers) {
+        if (mainFunctionIndex < 0 || mainFunctionIndex >= functionPointers.length) {
+            throw new IllegalStateException("Invalid main function index " + mainFunctionIndex);
+        }
+    }
+
+    private void readCode() throws IOException {
+        convertCode(ByteBuffer.wrap(ByteStreams.toByteArray(in)));
+    }
+
+    private void mapFile() throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int headerSize = (InstructionSet.PREAMBLE.length() + 3) * 2;
+            if (buffer.remaining() < headerSize) {
+                throw new IllegalStateException("Preamble missing. Invalid byte code.");
+            }
+            char[] preamble = new char[InstructionSet.PREAMBLE.length()];
+            buffer.asCharBuffer().get(preamble);
+            buffer.position(preamble.length * 2);
+            checkPreamble(new String(preamble));
+            short majorVersion = buffer.getShort();
+            short minorVersion = buffer.getShort();
+            checkVersion(majorVersion, minorVersion);
+            this.mainFunctionIndex = buffer.getShort();
+            if (minorVersion >= InstructionSet.FUNCTION_DIRECTORY_MINOR_VERSION) {
+                readFunctionDirectory(buffer);
+            }
+            convertCode(buffer);
+        }
+    }
+
+    private void readFunctionDirectory(ByteBuffer buffer) throws IOException {
+        try {
+            this.functionDirectory = FunctionDirectory.read(buffer::getShort);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalStateException("Incomplete function directory", e);
+        }
+    }
+
+    private void convertCode(ByteBuffer buffer) {
+        if (buffer.remaining() % 2 != 0) {
+            throw new IllegalStateException("Byte code ends within a word");
+        }
+        this.code = new short[buffer.remaining() / 2];
+        buffer.asShortBuffer().get(code);
+    }
+
+    private int[] readFunctionPointers() {
+        List<Integer> functionPointer = new ArrayList<>();
+        int address = 0;
+        while (address < code.length) {
+            InstructionSet.OpCodes opCode = InstructionSet.OpCodes.get(code[address]);
+            if (opCode == null) {
+                throw new IllegalStateException("Unknown op code " + code[address] + " at address " + address);
+            }
+            if (opCode == InstructionSet.OpCodes.FUNCTION) {
+                functionPointer.add(address);
+            }
+            address += 1 + opCode.opCodeParam();
+        }
+        int[] functionPointers = new int[functionPointer.size()];
+        for (int i = 0; i < functionPointers.length; i++) {
+            functionPointers[i] = functionPointer.get(i);
+        }
+        return functionPointers;
+    }
+
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Sets the pool on which all functions are verified and decoded in parallel during the load. By default no pool
+     * is set, the functions are then decoded sequentially or, with a function directory, on their first invocation.
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    public boolean isSuperInstructions() {
+        return superInstructions;
+    }
+
+    /**
+     * Enables or disables the fusion of common instruction sequences into super instructions (enabled by default).
+     */
+    public void setSuperInstructions(boolean superInstructions) {
+        this.superInstructions = superInstructions;
+    }
+
+    /**
+     * Verifies and decodes a range of functions, large ranges are split in halves. Every leaf has its own verifier,
+     * the decoder only reads shared state and the functions are written to distinct parts of the instruction stream.
+     */
+    private final class DecodeTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        private static final int FUNCTIONS_PER_TASK = 32;
+
+        private final int[] functionPointers;
+        private final int[] maxStacks;
+        private final int[] instructions;
+        private final InstructionDecoder decoder;
+        private final int from;
+        private final int to;
+
+        DecodeTask(int[] functionPointers, int[] maxStacks, int[] instructions, InstructionDecoder decoder, int from, int to) {
+            this.functionPointers = functionPointers;
+            this.maxStacks = maxStacks;
+            this.instructions = instructions;
+            this.decoder = decoder;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > FUNCTIONS_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new DecodeTask(functionPointers, maxStacks, instructions, decoder, from, middle),
+                        new DecodeTask(functionPointers, maxStacks, instructions, decoder, middle, to));
+                return;
+            }
+            ByteCodeVerifier verifier = new ByteCodeVerifier(code, functionPointers, builtIns);
+            for (int i = from; i < to; i++) {
+                int start = functionPointers[i];
+                int end = i + 1 < functionPointers.length ? functionPointers[i + 1] : code.length;
+                maxStacks[i] = verifier.verify(i);
+                decoder.decode(start, end, instructions);
+                if (superInstructions) {
+                    new SuperInstructionFuser(instructions, start, end).fuse();
+                }
+            }
+        }
+    }
+}
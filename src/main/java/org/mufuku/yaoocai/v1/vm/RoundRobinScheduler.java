@@ -0,0 +1,158 @@
+package org.mufuku.yaoocai.v1.vm;
+
+import org.mufuku.yaoocai.v1.vm.builtins.BuiltInVMFunction;
+import org.mufuku.yaoocai.v1.vm.builtins.DefaultBuiltIns;
+
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Runs any number of programs on a fixed number of carrier threads. Every run gets a slice of fuel (see
+ * {@link VM#resume(long)}) and is queued again if it didn't finish, so endless loops can't starve other runs. Runs
+ * suspended by an asynchronous built-in are queued again when the built-in has completed.
+ *
+ * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
+ */
+public class RoundRobinScheduler implements AutoCloseable {
+
+    private final BlockingQueue<Task> tasks = new LinkedBlockingQueue<>();
+    private final Thread[] carriers;
+    private final long fuelPerSlice;
+    private final Map<Short, BuiltInVMFunction> builtIns;
+    // guards closing against concurrent submits and requeues, so no run is queued after the queue was cancelled
+    private final Object lock = new Object();
+    private volatile boolean closed = false;
+
+    public RoundRobinScheduler(int carrierThreads, long fuelPerSlice) {
+        this(carrierThreads, fuelPerSlice, DefaultBuiltIns.STANDARD_BUILT_INS);
+    }
+
+    /**
+     * @param builtIns built-in functions available to the programs, the programs must be loaded with the same ones
+     */
+    public RoundRobinScheduler(int carrierThreads, long fuelPerSlice, Map<Short, BuiltInVMFunction> builtIns) {
+        if (carrierThreads < 1 || fuelPerSlice < 1) {
+            throw new IllegalArgumentException("At least one carrier thread and one unit of fuel per slice required");
+        }
+        this.fuelPerSlice = fuelPerSlice;
+        this.builtIns = builtIns;
+        this.carriers = new Thread[carrierThreads];
+        for (int i = 0; i < carrierThreads; i++) {
+            carriers[i] = new Thread(this::carry, "yaoocai-carrier-" + i);
+            carriers[i].setDaemon(true);
+            carriers[i].start();
+        }
+    }
+
+    /**
+     * @param arguments arguments of the main function
+     */
+    public CompletableFuture<ScriptResult> submit(Program program, int... arguments) {
+        CompletableFuture<ScriptResult> result = new CompletableFuture<>();
+        try {
+            Task task = new Task(new ScriptExecution(program, builtIns, arguments.clone()), result);
+            synchronized (lock) {
+                if (closed) {
+                    result.cancel(false);
+                } else {
+                    tasks.add(task);
+                }
+            }
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    private void carry() {
+        try {
+            while (!closed) {
+                Task task = tasks.take();
+                if (task.runSlice(fuelPerSlice)) {
+                    CompletableFuture<Integer> pendingResult = task.execution.getPendingResult();
+                    if (pendingResult == null) {
+                        tasks.add(task);
+                    } else {
+                        // suspended runs are queued again once the asynchronous built-in has completed
+                        pendingResult.whenComplete((value, failure) -> requeue(task));
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stops the carrier threads, runs which haven't finished yet are cancelled.
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+        }
+        for (Thread carrier : carriers) {
+            carrier.interrupt();
+        }
+        // a slice is short, wait for the carriers to put back their current runs
+        for (Thread carrier : carriers) {
+            try {
+                carrier.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        cancelQueuedTasks();
+    }
+
+    private void requeue(Task task) {
+        synchronized (lock) {
+            if (closed) {
+                task.result.cancel(false);
+            } else {
+                tasks.add(task);
+            }
+        }
+    }
+
+    private void cancelQueuedTasks() {
+        Task task = tasks.poll();
+        while (task != null) {
+            task.result.cancel(false);
+            task = tasks.poll();
+        }
+    }
+
+    private static final class Task {
+
+        private final ScriptExecution execution;
+        private final CompletableFuture<ScriptResult> result;
+
+        Task(ScriptExecution execution, CompletableFuture<ScriptResult> result) {
+            this.execution = execution;
+            this.result = result;
+        }
+
+        /**
+         * @return <code>true</code> if the run has to be continued
+         */
+        boolean runSlice(long fuel) {
+            if (result.isDone()) {
+                return false;
+            }
+            try {
+                if (execution.resume(fuel)) {
+                    result.complete(execution.getResult());
+                    return false;
+                }
+                return true;
+            } catch (Throwable e) { // NOSONAR an error of a single run must not stop the carrier thread
+                result.completeExceptionally(e);
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package org.mufuku.yaoocai.v1.vm;
+
+import org.mufuku.yaoocai.v1.vm.builtins.BuiltInVMFunction;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A started run of a program with its own {@link VM} and captured output.
+ *
+ * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
+ */
+class ScriptExecution {
+
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    private final PrintStream out;
+    private final VM vm;
+
+    ScriptExecution(Program program, Map<Short, BuiltInVMFunction> builtIns, int[] arguments) {
+        try {
+            this.out = new PrintStream(output, false, StandardCharsets.UTF_8.name());
+            this.vm = new VM(program, builtIns);
+            vm.setOut(out);
+            vm.start(arguments);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    boolean resume(long fuel) {
+        return vm.resume(fuel);
+    }
+
+    /**
+     * @return the result of the asynchronous built-in the run is waiting for or <code>null</code> if not suspended
+     */
+    CompletableFuture<Integer> getPendingResult() {
+        return vm.getPendingResult();
+    }
+
+    ScriptResult getResult() {
+        out.flush();
+        return new ScriptResult(vm.getReturnValue(), new String(output.toByteArray(), StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,32 @@
+package org.mufuku.yaoocai.v1.vm;
+
+/**
+ * Outcome of a run of the {@link ScriptRunner}.
+ *
+ * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
+ */
+public final class ScriptResult {
+
+    private final Integer returnValue;
+    private final String output;
+
+    ScriptResult(Integer returnValue, String output) {
+        this.returnValue = returnValue;
+        this.output = output;
+    }
+
+    public boolean hasReturnValue() {
+        return returnValue != null;
+    }
+
+    /**
+     * @return the value returned by the main function or <code>null</code> if it doesn't return a value
+     */
+    public Integer getReturnValue() {
+        return returnValue;
+    }
+
+    public String getOutput() {
+        return output;
+    }
+}
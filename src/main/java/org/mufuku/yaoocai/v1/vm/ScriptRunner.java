@@ -0,0 +1,103 @@
+package org.mufuku.yaoocai.v1.vm;
+
+import org.mufuku.yaoocai.v1.vm.builtins.BuiltInVMFunction;
+import org.mufuku.yaoocai.v1.vm.builtins.DefaultBuiltIns;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Executes programs asynchronously, every run in its own {@link VM} with its own captured output. By default the runs
+ * are executed on virtual threads if the JVM supports them, otherwise on a thread pool with one thread per processor.
+ * A run waiting for an asynchronous built-in doesn't occupy a thread.
+ *
+ * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
+ */
+public class ScriptRunner implements AutoCloseable {
+
+    private final ExecutorService executor;
+    private final boolean ownExecutor;
+    private final Map<Short, BuiltInVMFunction> builtIns;
+
+    public ScriptRunner() {
+        this(defaultExecutor(), true, DefaultBuiltIns.STANDARD_BUILT_INS);
+    }
+
+    /**
+     * @param executor executor for the runs, it is not shut down by {@link #close()}
+     */
+    public ScriptRunner(ExecutorService executor) {
+        this(executor, false, DefaultBuiltIns.STANDARD_BUILT_INS);
+    }
+
+    /**
+     * @param executor    executor for the runs
+     * @param ownExecutor <code>true</code> if the executor is shut down by {@link #close()}
+     * @param builtIns    built-in functions available to the programs, the programs must be loaded with the same ones
+     */
+    public ScriptRunner(ExecutorService executor, boolean ownExecutor, Map<Short, BuiltInVMFunction> builtIns) {
+        this.executor = executor;
+        this.ownExecutor = ownExecutor;
+        this.builtIns = builtIns;
+    }
+
+    /**
+     * @param arguments arguments of the main function
+     */
+    public CompletableFuture<ScriptResult> run(Program program, int... arguments) {
+        int[] mainArguments = arguments.clone();
+        CompletableFuture<ScriptResult> result = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    proceed(new ScriptExecution(program, builtIns, mainArguments), result);
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    private void proceed(ScriptExecution execution, CompletableFuture<ScriptResult> result) {
+        try {
+            if (execution.resume(Long.MAX_VALUE)) {
+                result.complete(execution.getResult());
+            } else {
+                // suspended by an asynchronous built-in, the thread is released until the built-in has completed
+                execution.getPendingResult().whenComplete((value, failure) -> proceedLater(execution, result));
+            }
+        } catch (Throwable e) { // NOSONAR an error of a single run must not get lost with its future
+            result.completeExceptionally(e);
+        }
+    }
+
+    private void proceedLater(ScriptExecution execution, CompletableFuture<ScriptResult> result) {
+        try {
+            executor.execute(() -> proceed(execution, result));
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (ownExecutor) {
+            executor.shutdown();
+        }
+    }
+
+    private static ExecutorService defaultExecutor() {
+        try {
+            // virtual threads are only available with Java 21+
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) { // NOSONAR fallback for older JVMs
+            return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package org.mufuku.yaoocai.v1.vm;
+
+/**
+ * Replaces common instruction sequences of the decoded instruction stream by super instructions. A super instruction
+ * takes the place of the first instruction of the sequence and spans exactly the same addresses, so all absolute jump
+ * addresses stay valid. Sequences which contain a jump target (other than their first instruction) are not fused.
+ *
+ * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
+ */
+class SuperInstructionFuser {
+
+    private final int[] instructions;
+    private final int start;
+    private final int end;
+    private final boolean[] jumpTargets;
+
+    SuperInstructionFuser(int[] instructions) {
+        this(instructions, 0, instructions.length);
+    }
+
+    /**
+     * Creates a fuser for the decoded instructions between start (inclusive) and end (exclusive), usually a single
+     * function. Fusers of distinct ranges can work on the same instruction stream at the same time.
+     */
+    SuperInstructionFuser(int[] instructions, int start, int end) {
+        this.instructions = instructions;
+        this.start = start;
+        this.end = end;
+        this.jumpTargets = new boolean[end - start];
+    }
+
+    static int span(int handler) {
+        switch (handler) {
+            case DecodedOpCodes.CONST_STORE:
+                return 4;
+            case DecodedOpCodes.LOAD_LOAD_ADD:
+            case DecodedOpCodes.LOAD_LOAD_SUB:
+            case DecodedOpCodes.LOAD_CONST_ADD:
+                return 5;
+            default:
+                return 7;
+        }
+    }
+
+    void fuse() {
+        markJumpTargets();
+        int address = start;
+        while (address < end) {
+            int length = fuseAt(address);
+            address += length;
+        }
+    }
+
+    private void markJumpTargets() {
+        int address = start;
+        while (address < end) {
+            int handler = instructions[address];
+            if (handler == DecodedOpCodes.IF || handler == DecodedOpCodes.GOTO || handler == DecodedOpCodes.INVOKE) {
+                int target = instructions[address + 1];
+                // function starts of invocations are outside of a single function
+                if (target >= start && target < end) {
+                    jumpTargets[target - start] = true;
+                }
+            }
+            address += InstructionDecoder.instructionLength(handler);
+        }
+    }
+
+    private int fuseAt(int a0) {
+        int a1 = next(a0);
+        int a2 = next(a1);
+        int a3 = next(a2);
+
+        int h0 = handler(a0);
+        int h1 = handler(a1);
+        int h2 = handler(a2);
+        int h3 = handler(a3);
+
+        if (h0 == DecodedOpCodes.LOAD && h1 == DecodedOpCodes.I_CONST && isAddOrSub(h2) && h3 == DecodedOpCodes.STORE
+                && instructions[a0 + 1] == instructions[a3 + 1] && free(a1, a2, a3)) {
+            return replace(a0, DecodedOpCodes.ADD_CONST_LOCAL, instructions[a0 + 1], delta(h2, instructions[a1 + 1]));
+        }
+        if (h0 == DecodedOpCodes.LOAD && h1 == DecodedOpCodes.I_CONST && isComparison(h2) && h3 == DecodedOpCodes.IF
+                && free(a1, a2, a3)) {
+            return replace(a0, loadConstCompareIf(h2), instructions[a0 + 1], instructions[a1 + 1], instructions[a3 + 1]);
+        }
+        if (h0 == DecodedOpCodes.LOAD && h1 == DecodedOpCodes.LOAD && isComparison(h2) && h3 == DecodedOpCodes.IF
+                && free(a1, a2, a3)) {
+            return replace(a0, loadLoadCompareIf(h2), instructions[a0 + 1], instructions[a1 + 1], instructions[a3 + 1]);
+        }
+        if (h0 == DecodedOpCodes.LOAD && h1 == DecodedOpCodes.LOAD && isAddOrSub(h2) && h3 == DecodedOpCodes.STORE
+                && free(a1, a2, a3)) {
+            int handler = h2 == DecodedOpCodes.ADD ? DecodedOpCodes.LOAD_LOAD_ADD_STORE : DecodedOpCodes.LOAD_LOAD_SUB_STORE;
+            return replace(a0, handler, instructions[a0 + 1], instructions[a1 + 1], instructions[a3 + 1]);
+        }
+        if (h0 == DecodedOpCodes.LOAD && h1 == DecodedOpCodes.LOAD && isAddOrSub(h2) && free(a1, a2)) {
+            int handler = h2 == DecodedOpCodes.ADD ? DecodedOpCodes.LOAD_LOAD_ADD : DecodedOpCodes.LOAD_LOAD_SUB;
+            return replace(a0, handler, instructions[a0 + 1], instructions[a1 + 1]);
+        }
+        if (h0 == DecodedOpCodes.LOAD && h1 == DecodedOpCodes.I_CONST && isAddOrSub(h2) && free(a1, a2)) {
+            return replace(a0, DecodedOpCodes.LOAD_CONST_ADD, instructions[a0 + 1], delta(h2, instructions[a1 + 1]));
+        }
+        if (h0 == DecodedOpCodes.I_CONST && h1 == DecodedOpCodes.STORE && free(a1)) {
+            return replace(a0, DecodedOpCodes.CONST_STORE, instructions[a0 + 1], instructions[a1 + 1]);
+        }
+        return InstructionDecoder.instructionLength(h0);
+    }
+
+    private int replace(int address, int handler, int... operands) {
+        instructions[address] = handler;
+        System.arraycopy(operands, 0, instructions, address + 1, operands.length);
+        return span(handler);
+    }
+
+    private int next(int address) {
+        if (address >= end) {
+            return end;
+        }
+        return address + InstructionDecoder.instructionLength(instructions[address]);
+    }
+
+    private int handler(int address) {
+        return address < end ? instructions[address] : -1;
+    }
+
+    private boolean free(int... addresses) {
+        for (int address : addresses) {
+            if (jumpTargets[address - start]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isAddOrSub(int handler) {
+        return handler == DecodedOpCodes.ADD || handler == DecodedOpCodes.SUB;
+    }
+
+    private static boolean isComparison(int handler) {
+        return handler >= DecodedOpCodes.CMP_LT && handler <= DecodedOpCodes.CMP_NE;
+    }
+
+    private static int delta(int handler, int constant) {
+        return handler == DecodedOpCodes.ADD ? constant : -constant;
+    }
+
+    private static int loadConstCompareIf(int comparison) {
+        return DecodedOpCodes.LOAD_CONST_CMP_LT_IF + comparison - DecodedOpCodes.CMP_LT;
+    }
+
+    private static int loadLoadCompareIf(int comparison) {
+        return DecodedOpCodes.LOAD_LOAD_CMP_LT_IF + comparison - DecodedOpCodes.CMP_LT;
+    }
+}
@@ -0,0 +1,89 @@
+package org.mufuku.yaoocai.v1.vm;
+
+import org.mufuku.yaoocai.v1.vm.builtins.BuiltInVMFunction;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Counts invocations and loop back edges per function and hands functions over to the {@link FunctionCompiler} once
+ * they cross the threshold. Functions which can't be compiled stay interpreted.
+ * <p>
+ * A tiered compiler belongs to a {@link Program} and is shared by all VMs executing it with the same built-ins, so a
+ * function is compiled (and its class defined) only once. The counters are shared as well, every VM compares them
+ * with its own threshold. Compiled functions are published through an atomic array, the compilation itself is
+ * serialized.
+ *
+ * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
+ */
+class TieredCompiler {
+
+    // marks a function which can't be compiled
+    private static final CompiledFunction REJECTED = (stack, invoker) -> {
+        throw new IllegalStateException("Function was not compiled");
+    };
+
+    private final FunctionCompiler compiler;
+    private final int[] functionIndexes;
+    private final AtomicIntegerArray counters;
+    private final AtomicReferenceArray<CompiledFunction> compiledFunctions;
+    private int compiled = 0;
+
+    TieredCompiler(short[] code, int[] functionPointers, short[] builtInCodes, BuiltInVMFunction[] builtIns) {
+        this.compiler = new FunctionCompiler(code, functionPointers, builtInCodes, builtIns);
+        this.functionIndexes = new int[code.length];
+        this.counters = new AtomicIntegerArray(functionPointers.length);
+        this.compiledFunctions = new AtomicReferenceArray<>(functionPointers.length);
+        for (int i = 0; i < functionPointers.length; i++) {
+            int end = compiler.functionEnd(i);
+            for (int address = functionPointers[i]; address < end; address++) {
+                functionIndexes[address] = i;
+            }
+        }
+    }
+
+    /**
+     * @param address start address of the invoked function
+     * @return the compiled function or <code>null</code> if the function has to be interpreted
+     */
+    CompiledFunction onInvoke(int address, int threshold) {
+        int functionIndex = functionIndexes[address];
+        CompiledFunction compiledFunction = compiledFunctions.get(functionIndex);
+        if (compiledFunction == null) {
+            if (counters.incrementAndGet(functionIndex) < threshold) {
+                return null;
+            }
+            compiledFunction = compile(functionIndex);
+        }
+        return compiledFunction == REJECTED ? null : compiledFunction;
+    }
+
+    /**
+     * @param address address of a backward jump
+     */
+    void onBackEdge(int address, int threshold) {
+        int functionIndex = functionIndexes[address];
+        if (compiledFunctions.get(functionIndex) == null && counters.incrementAndGet(functionIndex) >= threshold) {
+            compile(functionIndex);
+        }
+    }
+
+    synchronized int getCompiledFunctionCount() {
+        return compiled;
+    }
+
+    private synchronized CompiledFunction compile(int functionIndex) {
+        CompiledFunction compiledFunction = compiledFunctions.get(functionIndex);
+        if (compiledFunction != null) {
+            return compiledFunction;
+        }
+        compiledFunction = compiler.compile(functionIndex);
+        if (compiledFunction == null) {
+            compiledFunction = REJECTED;
+        } else {
+            compiled++;
+        }
+        compiledFunctions.set(functionIndex, compiledFunction);
+        return compiledFunction;
+    }
+}
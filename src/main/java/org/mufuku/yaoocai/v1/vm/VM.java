@@ -1,348 +1,631 @@
 package org.mufuku.yaoocai.v1.vm;
 
-import org.mufuku.yaoocai.v1.bytecode.BasicByteCodeConsumer;
-import org.mufuku.yaoocai.v1.bytecode.InstructionSet;
+import org.mufuku.yaoocai.v1.vm.builtins.AsyncBuiltInVMFunction;
 import org.mufuku.yaoocai.v1.vm.builtins.BuiltInVMFunction;
 import org.mufuku.yaoocai.v1.vm.builtins.DefaultBuiltIns;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintStream;
-import java.util.*;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
+ * Execution context of a {@link Program}. The program is shared, everything the execution changes (stacks, code
+ * pointer, output) belongs to the VM. Functions compiled by the tiered compilation are kept with the program and
+ * shared with the other VMs using the same built-ins. A VM is not thread safe, but any number of VMs can execute the
+ * same program concurrently.
+ *
  * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
  */
-public class VM extends BasicByteCodeConsumer implements VirtualMachine {
+public class VM implements VirtualMachine {
 
-    final Deque<Object> stack = new ArrayDeque<>();
+    private static final int RETURN_TO_COMPILED_CODE = -1;
 
-    final Deque<LocalVariableStack> localVariableStack = new ArrayDeque<>();
+    final OperandStack stack = new OperandStack();
 
-    private final Deque<Integer> callStack = new ArrayDeque<>();
-    private final List<Integer> functionPointer = new ArrayList<>();
+    final LocalVariableStack localVariableStack = new LocalVariableStack();
+
+    private int[] callStack = new int[32];
+    private int callStackPointer = 0;
     private final Map<Short, BuiltInVMFunction> builtIns;
+    private BuiltInVMFunction[] builtInTable;
+    private boolean[] asyncBuiltIns;
+    private CompletableFuture<Integer> pendingResult;
+    private int nestedInterpretations = 0;
+    private final InputStream in;
+    private Program program;
+    private int[] functionPointers;
+    // function start addresses this VM has made sure to be decoded, null if the program was decoded completely
+    private boolean[] decodedFunctions;
     short[] code;
+    int[] instructions;
     int codePointer = 0;
 
     private PrintStream out = System.out;   // NOSONAR we want ot use out put stream on purpose at
     // it is the access to the outside world
-    private boolean execution = true;
+    private boolean execution = false;
+    private long fuel;
+    private boolean budgeted;
+    private boolean superInstructions = true;
+    private int compileThreshold = 0;
+    TieredCompiler tieredCompiler;
+    private final CompiledFunction.Invoker invoker = new CompiledCodeInvoker();
 
     public VM(InputStream in) {
         this(in, DefaultBuiltIns.STANDARD_BUILT_INS);
     }
 
-    VM(InputStream in, Map<Short, BuiltInVMFunction> builtIns) {
-        super(in, InstructionSet.MAJOR_VERSION, InstructionSet.MINOR_VERSION);
+    public VM(InputStream in, Map<Short, BuiltInVMFunction> builtIns) {
+        this.in = in;
+        this.builtIns = builtIns;
+    }
+
+    public VM(Program program) {
+        this(program, DefaultBuiltIns.STANDARD_BUILT_INS);
+    }
+
+    public VM(Program program, Map<Short, BuiltInVMFunction> builtIns) {
+        this.in = null;
+        this.program = program;
         this.builtIns = builtIns;
     }
 
     @Override
     public void execute() throws IOException {
-        readHeader();
-        readCode();
-        executeCode();
-    }
-
-    void readCode() throws IOException {
-        this.code = new short[in.available() / 2];
-        this.codePointer = 0;
-        Short currentOpCode = storeAndGetNext();
-        while (currentOpCode != null && currentOpCode == InstructionSet.OpCodes.FUNCTION.code()) {
-            functionPointer.add(this.codePointer - 1);
-            currentOpCode = storeAndGetNext();
-            while (currentOpCode != null && currentOpCode != InstructionSet.OpCodes.FUNCTION.code()) {
-                consumeOpCode(currentOpCode);
-                currentOpCode = storeAndGetNext();
+        invokeMain();
+    }
+
+    /**
+     * Executes the main function with the given arguments.
+     *
+     * @return the value returned by the main function or <code>null</code> if it doesn't return a value
+     */
+    public Integer invokeMain(int... arguments) throws IOException {
+        start(arguments);
+        while (!resume(Long.MAX_VALUE)) {
+            // suspended by an asynchronous built-in, a failure is reported by the next resume
+            pendingResult.exceptionally(failure -> null).join();
+        }
+        return getReturnValue();
+    }
+
+    /**
+     * Prepares the execution of the main function with the given arguments, the execution itself is done by
+     * {@link #resume(long)}.
+     */
+    public void start(int... arguments) throws IOException {
+        loadProgram();
+        int parameters = program.getMainParameterCount();
+        if (arguments.length != parameters) {
+            throw new IllegalArgumentException("Main function expects " + parameters + " arguments but got " + arguments.length);
+        }
+        stack.clear();
+        for (int argument : arguments) {
+            stack.push(argument);
+        }
+        localVariableStack.clear();
+        this.pendingResult = null;
+        this.callStackPointer = 0;
+        this.codePointer = functionPointers[program.getMainFunctionIndex()];
+        ensureDecoded(codePointer);
+        this.execution = true;
+    }
+
+    /**
+     * Continues the execution until the main function returns or the fuel is used up. Every backward jump and every
+     * function invocation consumes one unit of fuel, so a VM can't hold on to its thread with a loop or a recursion.
+     * A VM which ran out of fuel keeps its complete state and can be resumed again. Compiled functions are not used
+     * while the fuel is limited, they couldn't be interrupted.
+     * <p>
+     * A call of an {@link AsyncBuiltInVMFunction} suspends the VM until the result of the built-in is available (see
+     * {@link #getPendingResult()}), the thread is released in the meantime. Resuming a suspended VM before that has no
+     * effect.
+     *
+     * @param fuel {@link Long#MAX_VALUE} for unlimited execution
+     * @return <code>true</code> if the main function has returned
+     */
+    public boolean resume(long fuel) {
+        if (!execution) {
+            throw new IllegalStateException("No execution to resume");
+        }
+        if (pendingResult != null) {
+            if (!pendingResult.isDone()) {
+                return false;
             }
+            completePendingResult();
+        }
+        this.fuel = fuel;
+        this.budgeted = fuel != Long.MAX_VALUE;
+        while (execution && this.fuel > 0 && pendingResult == null) {
+            executeNextInstruction();
         }
-        this.codePointer = 0;
+        return isFinished();
+    }
+
+    private void completePendingResult() {
+        CompletableFuture<Integer> result = pendingResult;
+        pendingResult = null;
+        Integer value = result.join();
+        if (value != null) {
+            stack.push(value);
+        }
+    }
+
+    public boolean isSuspended() {
+        return pendingResult != null;
+    }
+
+    /**
+     * @return the result of the asynchronous built-in the VM is waiting for or <code>null</code> if not suspended
+     */
+    public CompletableFuture<Integer> getPendingResult() {
+        return pendingResult;
+    }
+
+    public boolean isFinished() {
+        return !execution;
     }
 
-    private Short storeAndGetNext() throws IOException {
-        Short currentCode = super.getNext();
-        if (currentCode != null) {
-            this.code[this.codePointer++] = currentCode;
+    /**
+     * @return the value returned by the finished main function or <code>null</code> if it doesn't return a value
+     */
+    public Integer getReturnValue() {
+        if (!isFinished()) {
+            throw new IllegalStateException("Execution not finished");
         }
-        return currentCode;
+        return stack.isEmpty() ? null : stack.peek();
     }
 
-    private void consumeOpCode(short currentOpCode) throws IOException {
-        InstructionSet.OpCodes opCode = InstructionSet.OpCodes.get(currentOpCode);
-        if (opCode.opCodeParam() > 0) {
-            for (int i = 0; i < opCode.opCodeParam(); i++) {
-                storeAndGetNext();
+    void loadProgram() throws IOException {
+        if (program == null) {
+            ProgramLoader loader = new ProgramLoader(in, builtIns);
+            loader.setSuperInstructions(superInstructions);
+            this.program = loader.load();
+        }
+        this.code = program.code();
+        this.functionPointers = program.functionPointers();
+        this.instructions = program.instructions();
+        if (decodedFunctions == null && !program.isDecoded()) {
+            this.decodedFunctions = new boolean[code.length];
+        }
+        if (builtInTable == null) {
+            this.builtInTable = resolveBuiltIns(program.builtInCodes());
+            this.asyncBuiltIns = new boolean[builtInTable.length];
+            for (int slot = 0; slot < builtInTable.length; slot++) {
+                asyncBuiltIns[slot] = builtInTable[slot] instanceof AsyncBuiltInVMFunction;
             }
         }
+        if (compileThreshold > 0 && tieredCompiler == null) {
+            this.tieredCompiler = program.tieredCompiler(builtInTable);
+        }
     }
 
-    private void executeCode() {
-        this.codePointer = this.functionPointer.get(this.mainFunctionIndex);
-        while (execution) {
-            executeNextInstruction();
+    private BuiltInVMFunction[] resolveBuiltIns(short[] builtInCodes) {
+        BuiltInVMFunction[] table = new BuiltInVMFunction[builtInCodes.length];
+        for (int slot = 0; slot < builtInCodes.length; slot++) {
+            table[slot] = builtIns.get(builtInCodes[slot]);
+            if (table[slot] == null) {
+                throw new IllegalStateException("Unknown built-in function " + builtInCodes[slot]);
+            }
         }
+        return table;
     }
 
     void executeNextInstruction() {
 
-        short opCode = this.code[this.codePointer];
-        InstructionSet.OpCodes instruction = InstructionSet.OpCodes.get(opCode);
-
-        switch (instruction) {
-            case FUNCTION:
-                localVariableStack.push(new LocalVariableStack());
+        switch (instructions[codePointer]) {
+            case DecodedOpCodes.FUNCTION:
+                this.codePointer++;
+                localVariableStack.pushFrame(instructions[codePointer]);
                 this.codePointer++;
                 break;
-            case I_CONST:
+            case DecodedOpCodes.I_CONST:
                 this.codePointer++;
-                stack.push(code[codePointer]);
+                stack.push(instructions[codePointer]);
                 this.codePointer++;
                 break;
-            case B_CONST_TRUE:
-                stack.push(true);
+            case DecodedOpCodes.B_CONST_TRUE:
+                stack.pushBoolean(true);
                 this.codePointer++;
                 break;
-            case B_CONST_FALSE:
-                stack.push(false);
+            case DecodedOpCodes.B_CONST_FALSE:
+                stack.pushBoolean(false);
                 this.codePointer++;
                 break;
-            case STORE:
+            case DecodedOpCodes.STORE:
                 performStore();
                 break;
-            case LOAD:
+            case DecodedOpCodes.LOAD:
                 performLoad();
                 break;
-            case POP:
+            case DecodedOpCodes.POP:
                 this.codePointer++;
                 stack.pop();
                 break;
-            case INVOKE:
+            case DecodedOpCodes.INVOKE:
                 performInvoke();
                 break;
-            case INVOKE_BUILTIN:
+            case DecodedOpCodes.INVOKE_BUILTIN:
                 performInvokationBuiltIn();
                 break;
-            case RETURN:
-                localVariableStack.pop();
+            case DecodedOpCodes.RETURN:
+                localVariableStack.popFrame();
                 execution = !localVariableStack.isEmpty();
                 if (execution) {
-                    this.codePointer = callStack.pop();
+                    this.codePointer = callStack[--callStackPointer];
                 }
                 break;
-            case ADD:
+            case DecodedOpCodes.ADD:
                 performAddition();
                 break;
-            case SUB:
+            case DecodedOpCodes.SUB:
                 performSubtraction();
                 break;
-            case MUL:
+            case DecodedOpCodes.MUL:
                 performMultiplication();
                 break;
-            case DIV:
+            case DecodedOpCodes.DIV:
                 performDivision();
                 break;
-            case MOD:
+            case DecodedOpCodes.MOD:
                 performModulo();
                 break;
-            case NEG:
-                Short val = (Short) stack.pop();
-                stack.push((short) (-val));
+            case DecodedOpCodes.NEG:
+                stack.pushInteger((short) -stack.pop());
                 this.codePointer++;
                 break;
-            case AND:
+            case DecodedOpCodes.AND:
                 performBitwiseAnd();
                 break;
-            case OR:
+            case DecodedOpCodes.OR:
                 performBitwiseOr();
                 break;
-            case NOT:
-                Boolean v = (Boolean) stack.pop();
-                stack.push(!v);
+            case DecodedOpCodes.NOT:
+                stack.push(stack.pop() ^ 1);
                 this.codePointer++;
                 break;
-            case CMP_LT:
+            case DecodedOpCodes.CMP_LT:
                 performCompareLessThan();
                 break;
-            case CMP_LTE:
+            case DecodedOpCodes.CMP_LTE:
                 performCompareLessThanOrEqual();
                 break;
-            case CMP_GT:
+            case DecodedOpCodes.CMP_GT:
                 performCompareGreaterThan();
                 break;
-            case CMP_GTE:
+            case DecodedOpCodes.CMP_GTE:
                 performCompareGreaterThanOrEqual();
                 break;
-            case CMP_EQ:
+            case DecodedOpCodes.CMP_EQ:
                 performCompareEqual();
                 break;
-            case CMP_NE:
+            case DecodedOpCodes.CMP_NE:
                 performCompareNotEqual();
                 break;
-            case IF:
+            case DecodedOpCodes.IF:
                 performIf();
                 break;
-            case GOTO:
+            case DecodedOpCodes.GOTO:
                 performGoto();
                 break;
-            case POP_PARAMS:
+            case DecodedOpCodes.POP_PARAMS:
                 performPopParameters();
                 break;
+            case DecodedOpCodes.LOAD_LOAD_ADD:
+                stack.pushInteger((short) (loadOperand(1) + loadOperand(2)));
+                this.codePointer += 5;
+                break;
+            case DecodedOpCodes.LOAD_LOAD_SUB:
+                stack.pushInteger((short) (loadOperand(1) - loadOperand(2)));
+                this.codePointer += 5;
+                break;
+            case DecodedOpCodes.LOAD_CONST_ADD:
+                stack.pushInteger((short) (loadOperand(1) + instructions[codePointer + 2]));
+                this.codePointer += 5;
+                break;
+            case DecodedOpCodes.LOAD_LOAD_ADD_STORE:
+                localVariableStack.setValue(instructions[codePointer + 3], (short) (loadOperand(1) + loadOperand(2)));
+                this.codePointer += 7;
+                break;
+            case DecodedOpCodes.LOAD_LOAD_SUB_STORE:
+                localVariableStack.setValue(instructions[codePointer + 3], (short) (loadOperand(1) - loadOperand(2)));
+                this.codePointer += 7;
+                break;
+            case DecodedOpCodes.ADD_CONST_LOCAL:
+                localVariableStack.setValue(instructions[codePointer + 1], (short) (loadOperand(1) + instructions[codePointer + 2]));
+                this.codePointer += 7;
+                break;
+            case DecodedOpCodes.CONST_STORE:
+                localVariableStack.setValue(instructions[codePointer + 2], instructions[codePointer + 1]);
+                this.codePointer += 4;
+                break;
+            case DecodedOpCodes.LOAD_CONST_CMP_LT_IF:
+                branch(loadOperand(1) < instructions[codePointer + 2]);
+                break;
+            case DecodedOpCodes.LOAD_CONST_CMP_LTE_IF:
+                branch(loadOperand(1) <= instructions[codePointer + 2]);
+                break;
+            case DecodedOpCodes.LOAD_CONST_CMP_GT_IF:
+                branch(loadOperand(1) > instructions[codePointer + 2]);
+                break;
+            case DecodedOpCodes.LOAD_CONST_CMP_GTE_IF:
+                branch(loadOperand(1) >= instructions[codePointer + 2]);
+                break;
+            case DecodedOpCodes.LOAD_CONST_CMP_EQ_IF:
+                branch(loadOperand(1) == instructions[codePointer + 2]);
+                break;
+            case DecodedOpCodes.LOAD_CONST_CMP_NE_IF:
+                branch(loadOperand(1) != instructions[codePointer + 2]);
+                break;
+            case DecodedOpCodes.LOAD_LOAD_CMP_LT_IF:
+                branch(loadOperand(1) < loadOperand(2));
+                break;
+            case DecodedOpCodes.LOAD_LOAD_CMP_LTE_IF:
+                branch(loadOperand(1) <= loadOperand(2));
+                break;
+            case DecodedOpCodes.LOAD_LOAD_CMP_GT_IF:
+                branch(loadOperand(1) > loadOperand(2));
+                break;
+            case DecodedOpCodes.LOAD_LOAD_CMP_GTE_IF:
+                branch(loadOperand(1) >= loadOperand(2));
+                break;
+            case DecodedOpCodes.LOAD_LOAD_CMP_EQ_IF:
+                branch(loadOperand(1) == loadOperand(2));
+                break;
+            case DecodedOpCodes.LOAD_LOAD_CMP_NE_IF:
+                branch(loadOperand(1) != loadOperand(2));
+                break;
+            default:
+                throw new IllegalStateException("Unknown instruction " + instructions[codePointer] + " at address " + codePointer);
+        }
+    }
+
+    private int loadOperand(int operand) {
+        return localVariableStack.getValue(instructions[codePointer + operand]);
+    }
+
+    private void branch(boolean condition) {
+        if (condition) {
+            this.codePointer += 7;
+        } else {
+            this.codePointer = instructions[codePointer + 3];
         }
     }
 
     private void performStore() {
         this.codePointer++;
-        short variableIndex = code[codePointer];
-        Object value = stack.pop();
-        localVariableStack.peek().setValue(variableIndex, value);
+        localVariableStack.setValue(instructions[codePointer], stack.pop());
         this.codePointer++;
     }
 
     private void performLoad() {
         this.codePointer++;
-        short variableIndex = code[codePointer];
-        Object value = localVariableStack.peek().getValue(variableIndex);
-        stack.push(value);
+        stack.push(localVariableStack.getValue(instructions[codePointer]));
         this.codePointer++;
     }
 
     private void performInvoke() {
         this.codePointer++;
-        short functionIndex = code[codePointer];
-        callStack.push(codePointer + 1);
-        this.codePointer = functionPointer.get(functionIndex);
+        int target = instructions[codePointer];
+        fuel--;
+        ensureDecoded(target);
+        if (tieredCompiler != null && !budgeted) {
+            CompiledFunction compiledFunction = tieredCompiler.onInvoke(target, compileThreshold);
+            if (compiledFunction != null) {
+                compiledFunction.invoke(stack, invoker);
+                this.codePointer++;
+                return;
+            }
+        }
+        pushReturnAddress(codePointer + 1);
+        this.codePointer = target;
+    }
+
+    /**
+     * Makes sure the function starting at the given address is verified and decoded before it is entered. The check
+     * is only needed once per function and VM, the program synchronizes the decoding itself.
+     */
+    private void ensureDecoded(int functionStart) {
+        if (decodedFunctions != null && !decodedFunctions[functionStart]) {
+            program.decodeFunctionAt(functionStart);
+            decodedFunctions[functionStart] = true;
+        }
+    }
+
+    private void pushReturnAddress(int returnAddress) {
+        if (callStackPointer == callStack.length) {
+            callStack = Arrays.copyOf(callStack, callStackPointer * 2);
+        }
+        callStack[callStackPointer++] = returnAddress;
+    }
+
+    /**
+     * Invocation of a function by compiled code. Interpreted functions are executed until they return to the compiled
+     * caller.
+     */
+    private void invokeFunction(int functionIndex) {
+        int target = functionPointers[functionIndex];
+        ensureDecoded(target);
+        CompiledFunction compiledFunction = tieredCompiler.onInvoke(target, compileThreshold);
+        if (compiledFunction != null) {
+            compiledFunction.invoke(stack, invoker);
+            return;
+        }
+        int currentCodePointer = this.codePointer;
+        pushReturnAddress(RETURN_TO_COMPILED_CODE);
+        this.codePointer = target;
+        nestedInterpretations++;
+        try {
+            while (this.codePointer != RETURN_TO_COMPILED_CODE) {
+                executeNextInstruction();
+            }
+        } finally {
+            nestedInterpretations--;
+        }
+        this.codePointer = currentCodePointer;
     }
 
     private void performInvokationBuiltIn() {
-        codePointer++;
-        short functionIndex = code[codePointer];
-        codePointer++;
-        BuiltInVMFunction builtInVMFunction = builtIns.get(functionIndex);
-        builtInVMFunction.handle(stack, this);
+        int slot = instructions[codePointer + 1];
+        codePointer += 2;
+        if (asyncBuiltIns[slot] && nestedInterpretations == 0) {
+            // the state of the VM is complete at this point, the execution continues on resume
+            pendingResult = ((AsyncBuiltInVMFunction) builtInTable[slot]).handleAsync(stack, this);
+            if (pendingResult.isDone()) {
+                completePendingResult();
+            }
+        } else {
+            builtInTable[slot].handle(stack, this);
+        }
     }
 
     private void performAddition() {
-        Short val2 = (Short) stack.pop();
-        Short val1 = (Short) stack.pop();
-        stack.push((short) (val1 + val2));
+        int val2 = stack.pop();
+        int val1 = stack.pop();
+        stack.pushInteger((short) (val1 + val2));
         this.codePointer++;
     }
 
     private void performSubtraction() {
-        Short val2 = (Short) stack.pop();
-        Short val1 = (Short) stack.pop();
-        stack.push((short) (val1 - val2));
+        int val2 = stack.pop();
+        int val1 = stack.pop();
+        stack.pushInteger((short) (val1 - val2));
         this.codePointer++;
     }
 
     private void performMultiplication() {
-        Short val2 = (Short) stack.pop();
-        Short val1 = (Short) stack.pop();
-        stack.push((short) (val1 * val2));
+        int val2 = stack.pop();
+        int val1 = stack.pop();
+        stack.pushInteger((short) (val1 * val2));
         this.codePointer++;
     }
 
     private void performDivision() {
-        Short val2 = (Short) stack.pop();
-        Short val1 = (Short) stack.pop();
-        stack.push((short) (val1 / val2));
+        int val2 = stack.pop();
+        int val1 = stack.pop();
+        stack.pushInteger((short) (val1 / val2));
         this.codePointer++;
     }
 
     private void performModulo() {
-        Short val2 = (Short) stack.pop();
-        Short val1 = (Short) stack.pop();
-        stack.push((short) (val1 % val2));
+        int val2 = stack.pop();
+        int val1 = stack.pop();
+        stack.pushInteger((short) (val1 % val2));
         this.codePointer++;
     }
 
     private void performBitwiseAnd() {
-        Boolean v2 = (Boolean) stack.pop();
-        Boolean v1 = (Boolean) stack.pop();
-        stack.push(v2 & v1); // NOSONAR we want bitwise and on purpose here
+        int v2 = stack.pop();
+        int v1 = stack.pop();
+        stack.push(v2 & v1);
         this.codePointer++;
     }
 
     private void performBitwiseOr() {
-        Boolean v2 = (Boolean) stack.pop();
-        Boolean v1 = (Boolean) stack.pop();
-        stack.push(v2 | v1); // NOSONAR we want bitwise or on purpose here
+        int v2 = stack.pop();
+        int v1 = stack.pop();
+        stack.push(v2 | v1);
         this.codePointer++;
     }
 
     private void performCompareLessThan() {
-        Short val2 = (Short) stack.pop();
-        Short val1 = (Short) stack.pop();
-        stack.push(val1 < val2);
+        int val2 = stack.pop();
+        int val1 = stack.pop();
+        stack.pushBoolean(val1 < val2);
         this.codePointer++;
     }
 
     private void performCompareLessThanOrEqual() {
-        Short val2 = (Short) stack.pop();
-        Short val1 = (Short) stack.pop();
-        stack.push(val1 <= val2);
+        int val2 = stack.pop();
+        int val1 = stack.pop();
+        stack.pushBoolean(val1 <= val2);
         this.codePointer++;
     }
 
     private void performCompareGreaterThan() {
-        Short val2 = (Short) stack.pop();
-        Short val1 = (Short) stack.pop();
-        stack.push(val1 > val2);
+        int val2 = stack.pop();
+        int val1 = stack.pop();
+        stack.pushBoolean(val1 > val2);
         this.codePointer++;
     }
 
     private void performCompareGreaterThanOrEqual() {
-        Short val2 = (Short) stack.pop();
-        Short val1 = (Short) stack.pop();
-        stack.push(val1 >= val2);
+        int val2 = stack.pop();
+        int val1 = stack.pop();
+        stack.pushBoolean(val1 >= val2);
         this.codePointer++;
     }
 
     private void performCompareEqual() {
-        Short val2 = (Short) stack.pop();
-        Short val1 = (Short) stack.pop();
-        stack.push(Objects.equals(val1, val2));
+        int val2 = stack.pop();
+        int val1 = stack.pop();
+        stack.pushBoolean(val1 == val2);
         this.codePointer++;
     }
 
     private void performCompareNotEqual() {
-        Short val2 = (Short) stack.pop();
-        Short val1 = (Short) stack.pop();
-        stack.push(!Objects.equals(val1, val2));
+        int val2 = stack.pop();
+        int val1 = stack.pop();
+        stack.pushBoolean(val1 != val2);
         this.codePointer++;
     }
 
     private void performIf() {
         this.codePointer++;
-        Boolean condition = (Boolean) stack.pop();
-        if (condition) {
+        if (stack.popBoolean()) {
             this.codePointer++;
         } else {
-            short elseJump = code[codePointer];
-            this.codePointer += elseJump;
+            this.codePointer = instructions[codePointer];
         }
     }
 
     private void performGoto() {
-        this.codePointer++;
-        short jump = code[codePointer];
-        this.codePointer += jump;
+        int target = instructions[codePointer + 1];
+        if (target < codePointer) {
+            fuel--;
+            if (tieredCompiler != null) {
+                tieredCompiler.onBackEdge(codePointer, compileThreshold);
+            }
+        }
+        this.codePointer = target;
     }
 
     private void performPopParameters() {
         this.codePointer++;
-        short params = code[codePointer];
-        List<Object> tempParams = new ArrayList<>();
-        for (short i = 0; i < params; i++) {
-            tempParams.add(stack.pop());
-        }
-        for (short i = 0; i < params; i++) {
-            localVariableStack.peek().setValue(i, tempParams.get(params - i - 1));
+        int params = instructions[codePointer];
+        for (int i = params - 1; i >= 0; i--) {
+            localVariableStack.setValue(i, stack.pop());
         }
         this.codePointer++;
     }
 
+    public boolean isSuperInstructions() {
+        return superInstructions;
+    }
+
+    /**
+     * Enables or disables the fusion of common instruction sequences into super instructions (enabled by default).
+     * Only used if the VM loads the program itself, has to be set before the code is loaded.
+     */
+    public void setSuperInstructions(boolean superInstructions) {
+        this.superInstructions = superInstructions;
+    }
+
+    public int getCompileThreshold() {
+        return compileThreshold;
+    }
+
+    /**
+     * Enables the compilation of hot functions to JVM byte code. A function is compiled as soon as the sum of its
+     * invocations and loop iterations reaches the threshold; 0 (the default) disables compilation. Has to be set before
+     * the code is loaded. The counts and the compiled functions are shared by all VMs executing the same program.
+     */
+    public void setCompileThreshold(int compileThreshold) {
+        this.compileThreshold = compileThreshold;
+    }
+
     @Override
     public PrintStream getOut() {
         return out;
@@ -352,4 +635,17 @@ public class VM extends BasicByteCodeConsumer implements VirtualMachine {
     public void setOut(PrintStream out) {
         this.out = out;
     }
+
+    private class CompiledCodeInvoker implements CompiledFunction.Invoker {
+
+        @Override
+        public void invoke(int functionIndex) {
+            invokeFunction(functionIndex);
+        }
+
+        @Override
+        public void invokeBuiltIn(int builtInSlot) {
+            builtInTable[builtInSlot].handle(stack, VM.this);
+        }
+    }
 }
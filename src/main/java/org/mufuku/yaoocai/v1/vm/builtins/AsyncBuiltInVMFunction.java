@@ -0,0 +1,27 @@
+package org.mufuku.yaoocai.v1.vm.builtins;
+
+import org.mufuku.yaoocai.v1.vm.OperandStack;
+import org.mufuku.yaoocai.v1.vm.VirtualMachine;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Built-in which doesn't block the calling VM. The arguments are taken from the operand stack right away, the
+ * {@link org.mufuku.yaoocai.v1.vm.VM} is suspended until the returned future completes and pushes its value (if not
+ * <code>null</code>) when it is resumed. Where a VM can't be suspended (within functions called by compiled code) the
+ * built-in is called by the blocking {@link #handle(OperandStack, VirtualMachine)}.
+ *
+ * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
+ */
+public interface AsyncBuiltInVMFunction extends BuiltInVMFunction {
+
+    CompletableFuture<Integer> handleAsync(OperandStack stack, VirtualMachine vm);
+
+    @Override
+    default void handle(OperandStack stack, VirtualMachine vm) {
+        Integer value = handleAsync(stack, vm).join();
+        if (value != null) {
+            stack.push(value);
+        }
+    }
+}
@@ -1,14 +1,28 @@
 package org.mufuku.yaoocai.v1.vm.builtins;
 
+import org.mufuku.yaoocai.v1.vm.OperandStack;
 import org.mufuku.yaoocai.v1.vm.VirtualMachine;
 
-import java.util.Deque;
-
 /**
  * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
  */
 public interface BuiltInVMFunction {
 
-    void handle(Deque<Object> stack, VirtualMachine vm);
+    void handle(OperandStack stack, VirtualMachine vm);
+
+    /**
+     * @return the number of values taken from the operand stack or -1 if not known. Only built-ins with a known stack
+     * effect can be called from compiled functions.
+     */
+    default int getParameterCount() {
+        return -1;
+    }
+
+    /**
+     * @return the number of values left on the operand stack (0 or 1) or -1 if not known
+     */
+    default int getReturnValueCount() {
+        return -1;
+    }
 
 }
@@ -0,0 +1,226 @@
+package org.mufuku.yaoocai.v1.vm.builtins;
+
+import org.mufuku.yaoocai.v1.vm.OperandStack;
+import org.mufuku.yaoocai.v1.vm.VirtualMachine;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Registry of static Java methods which are exposed as built-ins. Every method is bound to a {@link MethodHandle}
+ * once at registration, the handle is adapted to take and return plain <code>int</code>s so calls are made with
+ * <code>invokeExact</code> and without boxing. The matching <code>builtin function</code> declarations are generated by
+ * {@link #getDeclarations()} and can be put in front of a script.
+ * <p>
+ * Supported parameter types are <code>int</code>, <code>short</code> and <code>boolean</code>, methods may return one of
+ * them or <code>void</code>. Integer results are truncated to the range of <code>short</code>.
+ *
+ * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
+ */
+public class HostFunctions {
+
+    private static final int MAX_PARAMETERS = 4;
+
+    private static final MethodHandle INT_TO_BOOLEAN;
+    private static final MethodHandle BOOLEAN_TO_INT;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            INT_TO_BOOLEAN = lookup.findStatic(HostFunctions.class, "intToBoolean", MethodType.methodType(boolean.class, int.class));
+            BOOLEAN_TO_INT = lookup.findStatic(HostFunctions.class, "booleanToInt", MethodType.methodType(int.class, boolean.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final Map<Short, BuiltInVMFunction> builtIns = new LinkedHashMap<>();
+    private final StringBuilder declarations = new StringBuilder();
+
+    /**
+     * Registers the only public static method with the given name of the given class under its own name.
+     */
+    public HostFunctions register(short functionCode, Class<?> type, String methodName) {
+        Method found = null;
+        for (Method method : type.getMethods()) {
+            if (method.getName().equals(methodName) && Modifier.isStatic(method.getModifiers())) {
+                if (found != null) {
+                    throw new IllegalArgumentException("Ambiguous method " + type.getName() + "." + methodName);
+                }
+                found = method;
+            }
+        }
+        if (found == null) {
+            throw new IllegalArgumentException("No public static method " + type.getName() + "." + methodName);
+        }
+        return register(functionCode, methodName, found);
+    }
+
+    public HostFunctions register(short functionCode, String name, Method method) {
+        if (!Modifier.isStatic(method.getModifiers())) {
+            throw new IllegalArgumentException("Method " + method + " is not static");
+        }
+        if (functionCode < 0) {
+            throw new IllegalArgumentException("Invalid function code " + functionCode);
+        }
+        if (builtIns.containsKey(functionCode)) {
+            throw new IllegalArgumentException("Function code " + functionCode + " already registered");
+        }
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        if (parameterTypes.length > MAX_PARAMETERS) {
+            throw new IllegalArgumentException("Method " + method + " has more than " + MAX_PARAMETERS + " parameters");
+        }
+        MethodHandle handle;
+        try {
+            handle = MethodHandles.publicLookup().unreflect(method);
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Method " + method + " is not accessible", e);
+        }
+        builtIns.put(functionCode, new HostBuiltIn(toIntHandle(handle, method), parameterTypes.length,
+                method.getReturnType() != void.class));
+        declare(functionCode, name, method);
+        return this;
+    }
+
+    /**
+     * @return the registered built-ins by function code
+     */
+    public Map<Short, BuiltInVMFunction> getBuiltIns() {
+        return Collections.unmodifiableMap(builtIns);
+    }
+
+    /**
+     * @return the <code>builtin function</code> declarations of all registered methods
+     */
+    public String getDeclarations() {
+        return declarations.toString();
+    }
+
+    private static MethodHandle toIntHandle(MethodHandle handle, Method method) {
+        MethodHandle adapted = handle;
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        for (int i = 0; i < parameterTypes.length; i++) {
+            Class<?> parameterType = parameterTypes[i];
+            if (parameterType == boolean.class) {
+                adapted = MethodHandles.filterArguments(adapted, i, INT_TO_BOOLEAN);
+            } else if (parameterType != int.class && parameterType != short.class) {
+                throw new IllegalArgumentException("Unsupported parameter type " + parameterType + " of " + method);
+            }
+        }
+
+        Class<?> returnType = method.getReturnType();
+        if (returnType == boolean.class) {
+            adapted = MethodHandles.filterReturnValue(adapted, BOOLEAN_TO_INT);
+        } else if (returnType == void.class) {
+            // run the method for its side effect and return a constant which isn't pushed
+            MethodHandle zero = MethodHandles.dropArguments(MethodHandles.constant(int.class, 0), 0, adapted.type().parameterList());
+            adapted = MethodHandles.foldArguments(zero, adapted);
+        } else if (returnType != int.class && returnType != short.class) {
+            throw new IllegalArgumentException("Unsupported return type " + returnType + " of " + method);
+        }
+
+        MethodType intType = MethodType.methodType(int.class, Collections.nCopies(parameterTypes.length, int.class));
+        // short parameters are narrowed, the values on the operand stack are within the range of short
+        return MethodHandles.explicitCastArguments(adapted, intType);
+    }
+
+    private void declare(short functionCode, String name, Method method) {
+        declarations.append("builtin function ").append(name).append('(');
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        for (int i = 0; i < parameterTypes.length; i++) {
+            if (i > 0) {
+                declarations.append(", ");
+            }
+            declarations.append("p").append(i).append(": ").append(typeName(parameterTypes[i]));
+        }
+        declarations.append(')');
+        if (method.getReturnType() != void.class) {
+            declarations.append(": ").append(typeName(method.getReturnType()));
+        }
+        declarations.append(" -> vmfunc(").append(functionCode).append(")\n");
+    }
+
+    private static String typeName(Class<?> type) {
+        return type == boolean.class ? "boolean" : "integer";
+    }
+
+    @SuppressWarnings("unused")
+    private static boolean intToBoolean(int value) {
+        return value != 0;
+    }
+
+    @SuppressWarnings("unused")
+    private static int booleanToInt(boolean value) {
+        return value ? 1 : 0;
+    }
+
+    private static final class HostBuiltIn implements BuiltInVMFunction {
+
+        private final MethodHandle handle;
+        private final int parameterCount;
+        private final boolean returnsValue;
+
+        HostBuiltIn(MethodHandle handle, int parameterCount, boolean returnsValue) {
+            this.handle = handle;
+            this.parameterCount = parameterCount;
+            this.returnsValue = returnsValue;
+        }
+
+        @Override
+        public void handle(OperandStack stack, VirtualMachine vm) {
+            int result = invoke(stack);
+            if (returnsValue) {
+                stack.push((short) result);
+            }
+        }
+
+        private int invoke(OperandStack stack) {
+            try {
+                switch (parameterCount) {
+                    case 0:
+                        return (int) handle.invokeExact();
+                    case 1:
+                        return (int) handle.invokeExact(stack.pop());
+                    case 2: {
+                        int p1 = stack.pop();
+                        int p0 = stack.pop();
+                        return (int) handle.invokeExact(p0, p1);
+                    }
+                    case 3: {
+                        int p2 = stack.pop();
+                        int p1 = stack.pop();
+                        int p0 = stack.pop();
+                        return (int) handle.invokeExact(p0, p1, p2);
+                    }
+                    default: {
+                        int p3 = stack.pop();
+                        int p2 = stack.pop();
+                        int p1 = stack.pop();
+                        int p0 = stack.pop();
+                        return (int) handle.invokeExact(p0, p1, p2, p3);
+                    }
+                }
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new IllegalStateException("Host function failed", t);
+            }
+        }
+
+        @Override
+        public int getParameterCount() {
+            return parameterCount;
+        }
+
+        @Override
+        public int getReturnValueCount() {
+            return returnsValue ? 1 : 0;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package org.mufuku.yaoocai.v1.vm.builtins;
+
+import org.mufuku.yaoocai.v1.vm.OperandStack;
+import org.mufuku.yaoocai.v1.vm.VirtualMachine;
+
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+import java.util.function.IntSupplier;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Built-ins implemented by plain primitive functions. The arguments are taken unboxed from the operand stack and the
+ * result is pushed back unboxed, integer results are truncated to the range of <code>short</code>. The stack effect is
+ * declared, so these built-ins can also be called from compiled functions.
+ *
+ * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
+ */
+public final class PrimitiveBuiltIns {
+
+    private PrimitiveBuiltIns() {
+    }
+
+    /**
+     * @return a built-in <code>(): integer</code>
+     */
+    public static BuiltInVMFunction supplier(IntSupplier function) {
+        return new PrimitiveBuiltIn(0, 1) {
+            @Override
+            public void handle(OperandStack stack, VirtualMachine vm) {
+                stack.push((short) function.getAsInt());
+            }
+        };
+    }
+
+    /**
+     * @return a built-in <code>(integer)</code>
+     */
+    public static BuiltInVMFunction consumer(IntConsumer function) {
+        return new PrimitiveBuiltIn(1, 0) {
+            @Override
+            public void handle(OperandStack stack, VirtualMachine vm) {
+                function.accept(stack.pop());
+            }
+        };
+    }
+
+    /**
+     * @return a built-in <code>(integer): integer</code>
+     */
+    public static BuiltInVMFunction unary(IntUnaryOperator function) {
+        return new PrimitiveBuiltIn(1, 1) {
+            @Override
+            public void handle(OperandStack stack, VirtualMachine vm) {
+                stack.push((short) function.applyAsInt(stack.pop()));
+            }
+        };
+    }
+
+    /**
+     * @return a built-in <code>(integer, integer): integer</code>
+     */
+    public static BuiltInVMFunction binary(IntBinaryOperator function) {
+        return new PrimitiveBuiltIn(2, 1) {
+            @Override
+            public void handle(OperandStack stack, VirtualMachine vm) {
+                int right = stack.pop();
+                int left = stack.pop();
+                stack.push((short) function.applyAsInt(left, right));
+            }
+        };
+    }
+
+    /**
+     * @return a built-in <code>(integer): boolean</code>
+     */
+    public static BuiltInVMFunction predicate(IntPredicate function) {
+        return new PrimitiveBuiltIn(1, 1) {
+            @Override
+            public void handle(OperandStack stack, VirtualMachine vm) {
+                stack.pushBoolean(function.test(stack.pop()));
+            }
+        };
+    }
+
+    private abstract static class PrimitiveBuiltIn implements BuiltInVMFunction {
+
+        private final int parameterCount;
+        private final int returnValueCount;
+
+        PrimitiveBuiltIn(int parameterCount, int returnValueCount) {
+            this.parameterCount = parameterCount;
+            this.returnValueCount = returnValueCount;
+        }
+
+        @Override
+        public int getParameterCount() {
+            return parameterCount;
+        }
+
+        @Override
+        public int getReturnValueCount() {
+            return returnValueCount;
+        }
+    }
+}
@@ -1,14 +1,23 @@
 package org.mufuku.yaoocai.v1.vm.builtins;
 
+import org.mufuku.yaoocai.v1.vm.OperandStack;
 import org.mufuku.yaoocai.v1.vm.VirtualMachine;
 
-import java.util.Deque;
-
 public class PrintInteger implements BuiltInVMFunction {
 
     @Override
-    public void handle(Deque<Object> stack, VirtualMachine vm) {
-        Object value = stack.pop();
+    public void handle(OperandStack stack, VirtualMachine vm) {
+        short value = stack.popInteger();
         vm.getOut().println(value);
     }
+
+    @Override
+    public int getParameterCount() {
+        return 1;
+    }
+
+    @Override
+    public int getReturnValueCount() {
+        return 0;
+    }
 }
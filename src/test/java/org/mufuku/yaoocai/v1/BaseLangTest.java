@@ -11,6 +11,7 @@ import org.mufuku.yaoocai.v1.bytecode.InstructionSet;
 import org.mufuku.yaoocai.v1.bytecode.viewer.ByteCodeViewer;
 import org.mufuku.yaoocai.v1.compiler.Compiler;
 import org.mufuku.yaoocai.v1.compiler.LanguageIntegrationTest;
+import org.mufuku.yaoocai.v1.vm.OperandStack;
 import org.mufuku.yaoocai.v1.vm.TestVM;
 import org.mufuku.yaoocai.v1.vm.VM;
 import org.mufuku.yaoocai.v1.vm.VirtualMachine;
@@ -26,7 +27,6 @@ import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
 import static org.hamcrest.CoreMatchers.is;
-import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.greaterThan;
 import static org.junit.Assert.*;
 
@@ -117,8 +117,8 @@ public abstract class BaseLangTest {
 
     private void checkIfVmWasClearedUpCorrectly() {
         if (lastVM != null) {
-            assertThat(lastVM.getStack(), is(empty()));
-            assertThat(lastVM.getLocalVariableStack(), is(empty()));
+            assertThat(lastVM.getStack().size(), is(0));
+            assertTrue(lastVM.isLocalVariableStackEmpty());
         }
     }
 
@@ -200,62 +200,120 @@ public abstract class BaseLangTest {
     }
 
     public static class Test_Input implements BuiltInVMFunction {
-        private final Deque<Object> valueStack = new ArrayDeque<>();
+        private final Deque<Integer> valueStack = new ArrayDeque<>();
 
         @Override
-        public void handle(Deque<Object> stack, VirtualMachine vm) {
-            Object lastValue = valueStack.pop();
+        public void handle(OperandStack stack, VirtualMachine vm) {
+            int lastValue = valueStack.pop();
             stack.push(lastValue);
         }
 
-        public void setValue(Object value) {
+        public void setValue(int value) {
             this.valueStack.push(value);
         }
+
+        @Override
+        public int getParameterCount() {
+            return 0;
+        }
+
+        @Override
+        public int getReturnValueCount() {
+            return 1;
+        }
     }
 
     public static class Test_Output implements BuiltInVMFunction {
         private final LinkedList<Object> values = new LinkedList<>();
 
         @Override
-        public void handle(Deque<Object> stack, VirtualMachine vm) {
-            Object value = stack.pop();
+        public void handle(OperandStack stack, VirtualMachine vm) {
+            short value = stack.popInteger();
             values.add(value);
         }
 
         public List<Object> getValues() {
             return values;
         }
+
+        @Override
+        public int getParameterCount() {
+            return 1;
+        }
+
+        @Override
+        public int getReturnValueCount() {
+            return 0;
+        }
     }
 
     public static class Fail implements BuiltInVMFunction {
         @Override
-        public void handle(Deque<Object> stack, VirtualMachine vm) {
+        public void handle(OperandStack stack, VirtualMachine vm) {
             Assert.fail();
         }
+
+        @Override
+        public int getParameterCount() {
+            return 0;
+        }
+
+        @Override
+        public int getReturnValueCount() {
+            return 0;
+        }
     }
 
     public static class AssertEquals implements BuiltInVMFunction {
         @Override
-        public void handle(Deque<Object> stack, VirtualMachine vm) {
-            Object v1 = stack.pop();
-            Object v2 = stack.pop();
+        public void handle(OperandStack stack, VirtualMachine vm) {
+            int v1 = stack.pop();
+            int v2 = stack.pop();
             Assert.assertEquals("Fail within the code", v2, v1);
         }
+
+        @Override
+        public int getParameterCount() {
+            return 2;
+        }
+
+        @Override
+        public int getReturnValueCount() {
+            return 0;
+        }
     }
 
     public static class AssertTrue implements BuiltInVMFunction {
         @Override
-        public void handle(Deque<Object> stack, VirtualMachine vm) {
-            Object v1 = stack.pop();
-            assertTrue((Boolean) v1);
+        public void handle(OperandStack stack, VirtualMachine vm) {
+            assertTrue(stack.popBoolean());
+        }
+
+        @Override
+        public int getParameterCount() {
+            return 1;
+        }
+
+        @Override
+        public int getReturnValueCount() {
+            return 0;
         }
     }
 
     public static class AssertFalse implements BuiltInVMFunction {
         @Override
-        public void handle(Deque<Object> stack, VirtualMachine vm) {
-            Object v1 = stack.pop();
-            assertFalse((Boolean) v1);
+        public void handle(OperandStack stack, VirtualMachine vm) {
+            assertFalse(stack.popBoolean());
+        }
+
+        @Override
+        public int getParameterCount() {
+            return 1;
+        }
+
+        @Override
+        public int getReturnValueCount() {
+            return 0;
         }
     }
 }
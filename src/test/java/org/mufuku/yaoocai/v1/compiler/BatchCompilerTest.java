@@ -0,0 +1,169 @@
+package org.mufuku.yaoocai.v1.compiler;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mufuku.yaoocai.v1.compiler.parser.ParsingException;
+import org.mufuku.yaoocai.v1.vm.VM;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
+ */
+public class BatchCompilerTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void test_directory_allSourcesCompiled() throws IOException, InterruptedException {
+        Path sources = temporaryFolder.newFolder("sources").toPath();
+        for (int i = 0; i < 10; i++) {
+            write(sources.resolve("nested" + i % 3).resolve("script" + i + ".yaoocai"), script(i));
+        }
+        write(sources.resolve("notes.txt"), "not a source");
+
+        BatchCompiler.Report report = new BatchCompiler(4).compile(BatchCompiler.findSources(Collections.singletonList(sources)));
+
+        assertThat(report.getResults().size(), is(10));
+        assertThat(report.getCompiledCount(), is(10));
+        for (BatchCompiler.FileResult result : report.getResults()) {
+            byte[] byteCode = Files.readAllBytes(result.getTarget());
+            assertThat(byteCode, is(compile(new String(Files.readAllBytes(result.getSource()), StandardCharsets.UTF_8))));
+        }
+        Path target = sources.resolve("nested1").resolve("script7.yaoocaic");
+        assertThat(new VM(new ByteArrayInputStream(Files.readAllBytes(target))).invokeMain(), is(7));
+    }
+
+    @Test
+    public void test_invalidSource_otherSourcesCompiled() throws IOException, InterruptedException {
+        Path valid = write(temporaryFolder.getRoot().toPath().resolve("valid.yaoocai"), script(1));
+        Path invalid = write(temporaryFolder.getRoot().toPath().resolve("invalid.yaoocai"), "function main(): integer {\n  return true;\n}\n");
+        Path out = temporaryFolder.getRoot().toPath().resolve("out");
+        BatchCompiler compiler = new BatchCompiler(2);
+        compiler.setOutputDirectory(out);
+
+        BatchCompiler.Report report = compiler.compile(BatchCompiler.findSources(Arrays.asList(invalid, valid)));
+
+        assertThat(report.getCompiledCount(), is(1));
+        assertThat(report.getFailedCount(), is(1));
+        assertThat(report.getResults().get(0).getError(), is(instanceOf(ParsingException.class)));
+        assertThat(Files.exists(out.resolve("invalid.yaoocaic")), is(false));
+        assertThat(Files.exists(out.resolve("valid.yaoocaic")), is(true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_sameTargetTwice_exception() throws IOException, InterruptedException {
+        Path first = write(temporaryFolder.getRoot().toPath().resolve("a/script.yaoocai"), script(1));
+        Path second = write(temporaryFolder.getRoot().toPath().resolve("b/script.yaoocai"), script(2));
+        BatchCompiler compiler = new BatchCompiler(2);
+        compiler.setOutputDirectory(temporaryFolder.getRoot().toPath().resolve("out"));
+
+        compiler.compile(BatchCompiler.findSources(Arrays.asList(first, second)));
+    }
+
+    @Test
+    public void test_outputDirectory_relativePathsMirrored() throws IOException, InterruptedException {
+        Path sources = temporaryFolder.newFolder("sources").toPath();
+        write(sources.resolve("a/script.yaoocai"), script(1));
+        write(sources.resolve("b/script.yaoocai"), script(2));
+        Path out = temporaryFolder.getRoot().toPath().resolve("out");
+        BatchCompiler compiler = new BatchCompiler(2);
+        compiler.setOutputDirectory(out);
+
+        BatchCompiler.Report report = compiler.compile(BatchCompiler.findSources(Collections.singletonList(sources)));
+
+        assertThat(report.getCompiledCount(), is(2));
+        assertThat(new VM(new ByteArrayInputStream(Files.readAllBytes(out.resolve("a/script.yaoocaic")))).invokeMain(), is(1));
+        assertThat(new VM(new ByteArrayInputStream(Files.readAllBytes(out.resolve("b/script.yaoocaic")))).invokeMain(), is(2));
+    }
+
+    @Test
+    public void test_errorInSource_otherSourcesCompiled() throws IOException, InterruptedException {
+        StringBuilder nested = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            nested.append('(');
+        }
+        nested.append('1');
+        for (int i = 0; i < 100000; i++) {
+            nested.append(')');
+        }
+        Path valid = write(temporaryFolder.getRoot().toPath().resolve("valid.yaoocai"), script(1));
+        Path deep = write(temporaryFolder.getRoot().toPath().resolve("deep.yaoocai"), script(nested));
+
+        BatchCompiler.Report report = new BatchCompiler(2).compile(BatchCompiler.findSources(Arrays.asList(deep, valid)));
+
+        assertThat(report.getResults().get(0).getError(), is(instanceOf(StackOverflowError.class)));
+        assertThat(report.getResults().get(1).isSuccessful(), is(true));
+    }
+
+    @Test
+    public void test_commandLineWithSameTargetTwice_usagePrinted() throws IOException, InterruptedException {
+        Path first = write(temporaryFolder.getRoot().toPath().resolve("a/script.yaoocai"), script(1));
+        Path second = write(temporaryFolder.getRoot().toPath().resolve("b/script.yaoocai"), script(2));
+        Path out = temporaryFolder.getRoot().toPath().resolve("out");
+        ByteArrayOutputStream console = new ByteArrayOutputStream();
+
+        int status = BatchCompiler.run(new String[]{"-out", out.toString(), first.toString(), second.toString()}, new PrintStream(console, true));
+
+        String output = new String(console.toByteArray(), StandardCharsets.UTF_8);
+        assertThat(status, is(2));
+        assertThat(output, containsString("are both compiled to"));
+        assertThat(output, containsString("Usage: BatchCompiler"));
+    }
+
+    @Test
+    public void test_commandLine_resultsAndTotalsPrinted() throws IOException, InterruptedException {
+        Path sources = temporaryFolder.newFolder("sources").toPath();
+        write(sources.resolve("one.yaoocai"), script(1));
+        write(sources.resolve("two.yaoocai"), "function main(): integer {\n  return x;\n}\n");
+        ByteArrayOutputStream console = new ByteArrayOutputStream();
+
+        int status = BatchCompiler.run(new String[]{"-threads", "2", sources.toString()}, new PrintStream(console, true));
+
+        String output = new String(console.toByteArray(), StandardCharsets.UTF_8);
+        assertThat(status, is(1));
+        assertThat(output, containsString("OK     " + sources.resolve("one.yaoocai")));
+        assertThat(output, containsString("FAILED " + sources.resolve("two.yaoocai") + ": " + ParsingException.class.getName()));
+        assertThat(output, containsString("1 compiled, 1 failed in "));
+    }
+
+    @Test
+    public void test_commandLineWithoutSources_usagePrinted() throws InterruptedException {
+        ByteArrayOutputStream console = new ByteArrayOutputStream();
+
+        int status = BatchCompiler.run(new String[]{"-threads", "2"}, new PrintStream(console, true));
+
+        assertThat(status, is(2));
+        assertThat(new String(console.toByteArray(), StandardCharsets.UTF_8), containsString("Usage: BatchCompiler"));
+    }
+
+    private static Path write(Path file, String content) throws IOException {
+        Files.createDirectories(file.getParent());
+        return Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static byte[] compile(String source) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new Compiler(new ByteArrayInputStream(source.getBytes(StandardCharsets.UTF_8)), out).compile();
+        return out.toByteArray();
+    }
+
+    private static String script(Object result) {
+        return "function main(): integer {\n  return " + result + ";\n}\n";
+    }
+}
@@ -0,0 +1,189 @@
+package org.mufuku.yaoocai.v1.compiler;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mufuku.yaoocai.v1.compiler.ast.ASTBinaryExpression;
+import org.mufuku.yaoocai.v1.compiler.ast.ASTBlock;
+import org.mufuku.yaoocai.v1.compiler.ast.ASTFunction;
+import org.mufuku.yaoocai.v1.compiler.ast.ASTReturnStatement;
+import org.mufuku.yaoocai.v1.compiler.ast.ASTScript;
+import org.mufuku.yaoocai.v1.compiler.ast.ASTType;
+import org.mufuku.yaoocai.v1.compiler.parser.Parser;
+import org.mufuku.yaoocai.v1.compiler.parser.ParsingException;
+import org.mufuku.yaoocai.v1.compiler.scanner.Scanner;
+import org.mufuku.yaoocai.v1.compiler.translator.Translator;
+import org.mufuku.yaoocai.v1.vm.VM;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
+ */
+public class CompilerTest {
+
+    private static final String SOURCE = "function main(): integer {\n  return 42;\n}\n";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void test_cacheDirectory_sameByteCodeAsWithoutCache() throws IOException {
+        Path cache = temporaryFolder.newFolder("cache").toPath();
+
+        byte[] byteCode = compile(SOURCE, null);
+
+        assertThat(compile(SOURCE, cache), is(byteCode));
+        assertThat(compile(SOURCE, cache), is(byteCode));
+        assertThat(cache.toFile().list(), is(new String[]{Compiler.cacheKey(bytes(SOURCE))}));
+    }
+
+    @Test
+    public void test_cachedSource_notCompiledAgain() throws IOException {
+        Path cache = temporaryFolder.newFolder("cache").toPath();
+        compile(SOURCE, cache);
+        Files.write(cache.resolve(Compiler.cacheKey(bytes(SOURCE))), new byte[]{1, 2, 3});
+
+        assertThat(compile(SOURCE, cache), is(new byte[]{1, 2, 3}));
+    }
+
+    @Test
+    public void test_missingCacheDirectory_created() throws IOException {
+        File cache = new File(temporaryFolder.getRoot(), "missing/cache");
+
+        compile(SOURCE, cache.toPath());
+
+        assertThat(cache.list().length, is(1));
+    }
+
+    @Test
+    public void test_invalidSource_notCached() throws IOException {
+        Path cache = temporaryFolder.newFolder("cache").toPath();
+        try {
+            compile("function main(): integer {\n  return true;\n}\n", cache);
+        } catch (ParsingException e) {
+            assertThat(cache.toFile().list().length, is(0));
+            return;
+        }
+        throw new AssertionError("ParsingException expected");
+    }
+
+    @Test(timeout = 10000)
+    public void test_deeplyNestedStatements_compiledInOnePass() throws IOException {
+        int depth = 200;
+        StringBuilder source = new StringBuilder("function main(): integer {\n  var count: integer = 0;\n");
+        for (int i = 0; i < depth; i++) {
+            source.append("if (count >= 0 && count < 1000 || false) {\n")
+                    .append("var v").append(i).append(": integer = 1;\n")
+                    .append("count = count + v").append(i).append(";\n");
+        }
+        for (int i = 0; i < depth; i++) {
+            source.append("} else {\ncount = -1;\n}\n");
+        }
+        source.append("  return count;\n}\n");
+
+        byte[] byteCode = compile(source.toString(), null);
+
+        assertThat(new VM(new ByteArrayInputStream(byteCode)).invokeMain(), is(depth));
+    }
+
+    @Test
+    public void test_translation_expressionTypesAnnotated() throws IOException {
+        ASTScript script = new Parser(new Scanner(new ByteArrayInputStream(bytes("" +
+                "function main(): boolean {\n" +
+                "  var a: integer = 1;\n" +
+                "  return a + 2 < 4;\n" +
+                "}\n")))).parse();
+
+        new Translator(script, new ByteArrayOutputStream()).translate();
+
+        ASTBlock block = ((ASTFunction) script.declaredFunctions().iterator().next()).getBlock();
+        ASTBinaryExpression comparison = (ASTBinaryExpression) ((ASTReturnStatement) block.getLastStatement()).getExpression();
+        assertThat(comparison.getResolvedType(), is(ASTType.BOOLEAN));
+        assertThat(comparison.getLeft().getResolvedType(), is(ASTType.INTEGER));
+        assertThat(((ASTBinaryExpression) comparison.getLeft()).getLeft().getResolvedType(), is(ASTType.INTEGER));
+    }
+
+    @Test
+    public void test_pool_sameByteCodeAsSequential() throws IOException {
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            source.append("function f").append(i).append("(a: integer): integer {\n")
+                    .append("  var b: integer = a;\n")
+                    .append("  while (b < ").append(i).append(") {\n    b = b + 1;\n  }\n")
+                    .append("  return b;\n}\n");
+        }
+        source.append("function main(): integer {\n  return f99(0) + f50(60);\n}\n");
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            byte[] byteCode = compile(source.toString(), null);
+
+            byte[] parallelByteCode = compileOn(source.toString(), pool);
+
+            assertThat(parallelByteCode, is(byteCode));
+            assertThat(new VM(new ByteArrayInputStream(parallelByteCode)).invokeMain(), is(159));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void test_poolAndInvalidFunctions_firstErrorThrown() throws IOException {
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            source.append("function f").append(i).append("(): integer {\n  return 1;\n}\n");
+        }
+        source.append("function g(): integer {\n  return true;\n}\n");
+        source.append("function h(): integer {\n  return x;\n}\n");
+        source.append("function main(): integer {\n  return 1;\n}\n");
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            compileOn(source.toString(), pool);
+        } catch (ParsingException e) {
+            assertThat(e.getMessage(), is(sequentialError(source.toString())));
+            return;
+        } finally {
+            pool.shutdown();
+        }
+        throw new AssertionError("ParsingException expected");
+    }
+
+    private static String sequentialError(String source) throws IOException {
+        try {
+            compile(source, null);
+        } catch (ParsingException e) {
+            return e.getMessage();
+        }
+        throw new AssertionError("ParsingException expected");
+    }
+
+    private static byte[] compileOn(String source, ForkJoinPool pool) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Compiler compiler = new Compiler(new ByteArrayInputStream(bytes(source)), out);
+        compiler.setPool(pool);
+        compiler.compile();
+        return out.toByteArray();
+    }
+
+    private static byte[] compile(String source, Path cacheDirectory) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Compiler compiler = new Compiler(new ByteArrayInputStream(bytes(source)), out);
+        compiler.setCacheDirectory(cacheDirectory);
+        compiler.compile();
+        return out.toByteArray();
+    }
+
+    private static byte[] bytes(String source) {
+        return source.getBytes(StandardCharsets.UTF_8);
+    }
+}
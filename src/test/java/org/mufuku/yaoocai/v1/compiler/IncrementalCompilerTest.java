@@ -0,0 +1,125 @@
+package org.mufuku.yaoocai.v1.compiler;
+
+import org.junit.Test;
+import org.mufuku.yaoocai.v1.compiler.parser.ParsingException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
+ */
+public class IncrementalCompilerTest {
+
+    private static final String HELPERS = "" +
+            "builtin function printInteger(value: integer) -> vmfunc(1)\n" +
+            "function square(n: integer): integer {\n" +
+            "  return n * n;\n" +
+            "}\n" +
+            "function twice(n: integer): integer {\n" +
+            "  return n + n;\n" +
+            "}\n";
+
+    private static final String MAIN = "" +
+            "function main() {\n" +
+            "  printInteger(square(3) + twice(4));\n" +
+            "}\n";
+
+    @Test
+    public void test_unchangedScript_allFunctionsReused() throws IOException {
+        IncrementalCompiler compiler = new IncrementalCompiler();
+
+        compile(compiler, HELPERS + MAIN);
+        assertThat(compiler.getTranslatedFunctionCount(), is(3));
+        byte[] byteCode = compile(compiler, HELPERS + MAIN);
+
+        assertThat(compiler.getReusedFunctionCount(), is(3));
+        assertThat(compiler.getTranslatedFunctionCount(), is(0));
+        assertThat(byteCode, is(compile(HELPERS + MAIN)));
+    }
+
+    @Test
+    public void test_changedBody_onlyChangedFunctionTranslated() throws IOException {
+        IncrementalCompiler compiler = new IncrementalCompiler();
+        compile(compiler, HELPERS + MAIN);
+        String changed = HELPERS.replace("return n + n;", "var twice: integer = n * 2;\n  return twice;") + MAIN;
+
+        byte[] byteCode = compile(compiler, changed);
+
+        assertThat(compiler.getReusedFunctionCount(), is(2));
+        assertThat(compiler.getTranslatedFunctionCount(), is(1));
+        assertThat(byteCode, is(compile(changed)));
+    }
+
+    @Test
+    public void test_changedCalleeSignature_callerTranslated() throws IOException {
+        IncrementalCompiler compiler = new IncrementalCompiler();
+        compile(compiler, HELPERS + MAIN);
+        String changed = HELPERS.replace("function square(n: integer)", "function square(m: integer, n: integer)")
+                + MAIN.replace("square(3)", "square(1, 3)");
+
+        byte[] byteCode = compile(compiler, changed);
+
+        assertThat(compiler.getReusedFunctionCount(), is(1));
+        assertThat(byteCode, is(compile(changed)));
+    }
+
+    @Test
+    public void test_insertedFunction_callersOfMovedFunctionsTranslated() throws IOException {
+        IncrementalCompiler compiler = new IncrementalCompiler();
+        compile(compiler, HELPERS + MAIN);
+        String changed = HELPERS + "function unused() {\n}\n" + MAIN;
+
+        byte[] byteCode = compile(compiler, changed);
+
+        assertThat(compiler.getReusedFunctionCount(), is(3));
+        assertThat(compiler.getTranslatedFunctionCount(), is(1));
+        assertThat(byteCode, is(compile(changed)));
+
+        String moved = (HELPERS + MAIN).replace("function square", "function first() {\n}\nfunction square");
+        assertThat(compile(compiler, moved), is(compile(moved)));
+        assertThat(compiler.getReusedFunctionCount(), is(2));
+    }
+
+    @Test
+    public void test_callWithoutArguments_reused() throws IOException {
+        String source = "" +
+                "function f(): integer {\n" +
+                "  return 1;\n" +
+                "}\n" +
+                "function main(): integer {\n" +
+                "  return f();\n" +
+                "}\n";
+        IncrementalCompiler compiler = new IncrementalCompiler();
+        compile(compiler, source);
+
+        byte[] byteCode = compile(compiler, source);
+
+        assertThat(compiler.getReusedFunctionCount(), is(2));
+        assertThat(byteCode, is(compile(source)));
+    }
+
+    @Test(expected = ParsingException.class)
+    public void test_invalidChange_parsingException() throws IOException {
+        IncrementalCompiler compiler = new IncrementalCompiler();
+        compile(compiler, HELPERS + MAIN);
+        compile(compiler, HELPERS + MAIN.replace("square(3)", "square(true)"));
+    }
+
+    private static byte[] compile(IncrementalCompiler compiler, String source) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        compiler.compile(new ByteArrayInputStream(source.getBytes(StandardCharsets.UTF_8)), out);
+        return out.toByteArray();
+    }
+
+    private static byte[] compile(String source) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new Compiler(new ByteArrayInputStream(source.getBytes(StandardCharsets.UTF_8)), out).compile();
+        return out.toByteArray();
+    }
+}
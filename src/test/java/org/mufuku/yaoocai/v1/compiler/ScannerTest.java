@@ -5,13 +5,18 @@ import org.mufuku.yaoocai.v1.compiler.ast.ASTScript;
 import org.mufuku.yaoocai.v1.compiler.parser.Parser;
 import org.mufuku.yaoocai.v1.compiler.scanner.Scanner;
 import org.mufuku.yaoocai.v1.compiler.scanner.ScannerSymbols;
+import org.mufuku.yaoocai.v1.compiler.scanner.SymbolTable;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertThat;
 
@@ -46,4 +51,106 @@ public class ScannerTest {
         assertThat(scanner.getCurrentSymbol(), is(equalTo(ScannerSymbols.UNKNOWN)));
     }
 
+    @Test
+    public void test_keywordsAndSimilarIdentifiers_recognized() throws IOException {
+        Scanner scanner = scan("builtin boolean bool integers if iff var v while return true false else function f");
+        assertThat(scanner.getCurrentSymbol(), is(ScannerSymbols.BUILTIN));
+        assertNext(scanner, ScannerSymbols.BOOLEAN, "boolean");
+        assertNext(scanner, ScannerSymbols.IDENTIFIER, "bool");
+        assertNext(scanner, ScannerSymbols.IDENTIFIER, "integers");
+        assertNext(scanner, ScannerSymbols.IF, "if");
+        assertNext(scanner, ScannerSymbols.IDENTIFIER, "iff");
+        assertNext(scanner, ScannerSymbols.VARIABLE, "var");
+        assertNext(scanner, ScannerSymbols.IDENTIFIER, "v");
+        assertNext(scanner, ScannerSymbols.WHILE, "while");
+        assertNext(scanner, ScannerSymbols.RETURN, "return");
+        assertNext(scanner, ScannerSymbols.TRUE, "true");
+        assertNext(scanner, ScannerSymbols.FALSE, "false");
+        assertNext(scanner, ScannerSymbols.ELSE, "else");
+        assertNext(scanner, ScannerSymbols.FUNCTION, "function");
+        assertNext(scanner, ScannerSymbols.IDENTIFIER, "f");
+        scanner.moveToNextSymbol();
+        assertThat(scanner.getCurrentSymbol(), is(ScannerSymbols.EOI));
+    }
+
+    @Test
+    public void test_numbers_parsedFromSource() throws IOException {
+        Scanner scanner = scan("0 32767 2147483647");
+        assertThat(scanner.getNumberAsShort(), is((short) 0));
+        scanner.moveToNextSymbol();
+        assertThat(scanner.getNumberAsShort(), is(Short.MAX_VALUE));
+        scanner.moveToNextSymbol();
+        assertThat(scanner.getNumberAsInteger(), is(Integer.MAX_VALUE));
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void test_numberOutOfRange_exception() throws IOException {
+        scan("32768").getNumberAsShort();
+    }
+
+    @Test
+    public void test_characterArray_onlyGivenLengthScanned() throws IOException {
+        Scanner scanner = new Scanner("abc def".toCharArray(), 3);
+        scanner.initialize();
+        assertThat(scanner.getCurrentIdentifier(), is("abc"));
+        scanner.moveToNextSymbol();
+        assertThat(scanner.getCurrentSymbol(), is(ScannerSymbols.EOI));
+    }
+
+    @Test
+    public void test_mappedFile_scanned() throws IOException {
+        Path file = Files.createTempFile("scanner", ".yaoocai");
+        try {
+            Files.write(file, "n\u00e4me 42".getBytes(StandardCharsets.UTF_8));
+            Scanner scanner = new Scanner(file);
+            scanner.initialize();
+            assertThat(scanner.getCurrentIdentifier(), is("n\u00e4me"));
+            scanner.moveToNextSymbol();
+            assertThat(scanner.getNumberAsInteger(), is(42));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void test_repeatedIdentifier_internedOnce() throws IOException {
+        Scanner scanner = scan("count if count other");
+        int count = scanner.getCurrentIdentifierId();
+        String name = scanner.getCurrentIdentifier();
+        scanner.moveToNextSymbol();
+        assertThat(scanner.getCurrentIdentifierId(), is(-1));
+        scanner.moveToNextSymbol();
+        assertThat(scanner.getCurrentIdentifierId(), is(count));
+        assertThat(scanner.getCurrentIdentifier(), is(sameInstance(name)));
+        scanner.moveToNextSymbol();
+        assertThat(scanner.getCurrentIdentifierId(), is(count + 1));
+        assertThat(scanner.getSymbolTable().size(), is(2));
+    }
+
+    @Test
+    public void test_manySymbols_denseIds() {
+        SymbolTable symbols = new SymbolTable();
+        for (int i = 0; i < 1000; i++) {
+            assertThat(symbols.intern("name" + i), is(i));
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertThat(symbols.intern(("x name" + i).toCharArray(), 2, ("name" + i).length()), is(i));
+            assertThat(symbols.name(i), is("name" + i));
+        }
+        assertThat(symbols.find("name500"), is(500));
+        assertThat(symbols.find("missing"), is(-1));
+        assertThat(symbols.size(), is(1000));
+    }
+
+    private static Scanner scan(String source) throws IOException {
+        Scanner scanner = new Scanner(new ByteArrayInputStream(source.getBytes(StandardCharsets.UTF_8)));
+        scanner.initialize();
+        return scanner;
+    }
+
+    private static void assertNext(Scanner scanner, ScannerSymbols symbol, String identifier) throws IOException {
+        scanner.moveToNextSymbol();
+        assertThat(scanner.getCurrentSymbol(), is(symbol));
+        assertThat(scanner.getCurrentIdentifier(), is(identifier));
+    }
 }
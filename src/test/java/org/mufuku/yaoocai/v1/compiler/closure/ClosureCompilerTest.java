@@ -0,0 +1,158 @@
+package org.mufuku.yaoocai.v1.compiler.closure;
+
+import org.junit.Test;
+import org.mufuku.yaoocai.v1.BaseLangTest;
+import org.mufuku.yaoocai.v1.compiler.Compiler;
+import org.mufuku.yaoocai.v1.compiler.parser.ParsingException;
+import org.mufuku.yaoocai.v1.vm.VM;
+import org.mufuku.yaoocai.v1.vm.builtins.BuiltInVMFunction;
+import org.mufuku.yaoocai.v1.vm.builtins.DefaultBuiltIns;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
+ */
+public class ClosureCompilerTest {
+
+    private static final String SAMPLE = "" +
+            "builtin function printInteger(value: integer) -> vmfunc(1)\n" +
+            "function fibonacci(n: integer): integer {\n" +
+            "  if (n < 2) {\n" +
+            "    return n;\n" +
+            "  }\n" +
+            "  return fibonacci(n - 1) + fibonacci(n - 2);\n" +
+            "}\n" +
+            "function sum(count: integer): integer {\n" +
+            "  var result: integer = 0;\n" +
+            "  var i: integer = 0;\n" +
+            "  while (i < count) {\n" +
+            "    if (i % 3 == 0 || !(i > 5)) {\n" +
+            "      result += i * 2;\n" +
+            "    } else if (i % 7 == 1 && i < 100) {\n" +
+            "      result = result - i;\n" +
+            "    } else {\n" +
+            "      result = result - -i / 2;\n" +
+            "    }\n" +
+            "    i++;\n" +
+            "  }\n" +
+            "  return result;\n" +
+            "}\n" +
+            "function main() {\n" +
+            "  printInteger(fibonacci(15));\n" +
+            "  var i: integer = 0;\n" +
+            "  while (i < 3) {\n" +
+            "    printInteger(sum(300 + i));\n" +
+            "    printInteger(i++ * 1000 + --i);\n" +
+            "    i = i + 1;\n" +
+            "  }\n" +
+            "  printInteger(32767 + 1);\n" +
+            "}\n";
+
+    @Test
+    public void test_sampleScript_sameOutputAsVM() throws IOException {
+        ByteArrayOutputStream byteCode = new ByteArrayOutputStream();
+        new Compiler(source(SAMPLE), byteCode).compile();
+        VM vm = new VM(new ByteArrayInputStream(byteCode.toByteArray()));
+
+        ClosureScript script = new ClosureCompiler(source(SAMPLE)).compile();
+
+        assertThat(run(script), is(run(vm)));
+    }
+
+    @Test
+    public void test_mainWithArguments_returnValue() throws IOException {
+        ClosureScript script = new ClosureCompiler(source("" +
+                "function main(a: integer, b: integer): integer {\n" +
+                "  return a * b;\n" +
+                "}\n")).compile();
+
+        assertThat(script.invokeMain(300, 200), is((int) (short) 60000));
+        assertThat(script.invokeMain(-3, 7), is(-21));
+    }
+
+    @Test
+    public void test_mainWithoutReturnValue_noResult() throws IOException {
+        ClosureScript script = new ClosureCompiler(source("function main() {\n}\n")).compile();
+
+        assertThat(script.invokeMain(), is(nullValue()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_wrongArgumentCount_exception() throws IOException {
+        new ClosureCompiler(source("function main(a: integer) {\n}\n")).compile().invokeMain();
+    }
+
+    @Test(expected = ParsingException.class)
+    public void test_invalidScript_parsingException() throws IOException {
+        new ClosureCompiler(source("" +
+                "function main(): integer {\n" +
+                "  return true;\n" +
+                "}\n")).compile();
+    }
+
+    @Test
+    public void test_returnedValueOfBuiltIn_notMistakenForControlFlow() throws IOException {
+        Map<Short, BuiltInVMFunction> builtIns = new HashMap<>();
+        builtIns.put((short) 50, (stack, vm) -> stack.push(Integer.MIN_VALUE));
+        ClosureScript script = new ClosureCompiler(source("" +
+                "builtin function smallest(): integer -> vmfunc(50)\n" +
+                "function main(): integer {\n" +
+                "  var a: integer = 0;\n" +
+                "  while (a == 0) {\n" +
+                "    a = 1;\n" +
+                "    return smallest();\n" +
+                "  }\n" +
+                "  return 1;\n" +
+                "}\n"), builtIns).compile();
+
+        assertThat(script.invokeMain(), is(Integer.MIN_VALUE));
+    }
+
+    @Test
+    public void test_languageTests_runWithoutFailure() throws IOException {
+        Map<Short, BuiltInVMFunction> builtIns = new HashMap<>(DefaultBuiltIns.STANDARD_BUILT_INS);
+        BaseLangTest.Test_Output output = new BaseLangTest.Test_Output();
+        builtIns.put((short) 32001, output);
+        builtIns.put((short) 32002, new BaseLangTest.Fail());
+        builtIns.put((short) 32003, new BaseLangTest.AssertEquals());
+        builtIns.put((short) 32004, new BaseLangTest.AssertTrue());
+        builtIns.put((short) 32005, new BaseLangTest.AssertFalse());
+
+        for (String file : Arrays.asList(
+                "arithmeticExpression-test", "assignments-test", "bitwiseOperations-test", "conditional-and-test",
+                "conditional-combination-test", "conditional-or-test", "flow-return-03-test", "if-elseif-test",
+                "post-decremental-test", "post-incremental-test", "pre-decremental-test", "pre-incremental-test",
+                "subBlock-test", "while-test", "conditional-precedence-test")) {
+            InputStream in = ClosureCompilerTest.class.getResourceAsStream("/test-language-integration/positive/" + file + ".yaoocai");
+            ClosureScript script = new ClosureCompiler(in, builtIns).compile();
+            script.setOut(new PrintStream(new ByteArrayOutputStream()));
+            script.execute();
+        }
+
+        assertThat(output.getValues(), is(Arrays.<Object>asList((short) 1, (short) 2, (short) 3, (short) 4, (short) 5, (short) 6)));
+    }
+
+    private static InputStream source(String source) {
+        return new ByteArrayInputStream(source.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String run(org.mufuku.yaoocai.v1.vm.VirtualMachine machine) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        machine.setOut(new PrintStream(output, true));
+        machine.execute();
+        return output.toString().trim();
+    }
+}
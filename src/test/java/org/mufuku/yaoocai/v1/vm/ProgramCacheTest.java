@@ -0,0 +1,59 @@
+package org.mufuku.yaoocai.v1.vm;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
+ */
+public class ProgramCacheTest {
+
+    @Test
+    public void test_sameByteCode_sameProgram() throws IOException {
+        ProgramCache cache = new ProgramCache(2);
+        byte[] byteCode = VMTest.compile(script(1));
+
+        Program program = cache.load(byteCode);
+
+        assertThat(cache.load(byteCode.clone()), is(sameInstance(program)));
+        assertThat(cache.load(new ByteArrayInputStream(byteCode)), is(sameInstance(program)));
+        assertThat(cache.getMissCount(), is(1L));
+        assertThat(cache.getHitCount(), is(2L));
+        assertThat(new VM(program).invokeMain(), is(1));
+    }
+
+    @Test
+    public void test_fullCache_leastRecentlyUsedEvicted() throws IOException {
+        ProgramCache cache = new ProgramCache(2);
+        byte[] first = VMTest.compile(script(1));
+        byte[] second = VMTest.compile(script(2));
+        byte[] third = VMTest.compile(script(3));
+
+        Program firstProgram = cache.load(first);
+        Program secondProgram = cache.load(second);
+        cache.load(first);
+        cache.load(third);
+
+        assertThat(cache.size(), is(2));
+        assertThat(cache.getEvictionCount(), is(1L));
+        assertThat(cache.load(first), is(sameInstance(firstProgram)));
+        assertThat(cache.load(second), is(not(sameInstance(secondProgram))));
+        assertThat(cache.getMissCount(), is(4L));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test_invalidByteCode_exception() throws IOException {
+        new ProgramCache(1).load(VMTest.byteCode((short) 0x7777));
+    }
+
+    private static String script(int result) {
+        return "function main(): integer {\n  return " + result + ";\n}\n";
+    }
+}
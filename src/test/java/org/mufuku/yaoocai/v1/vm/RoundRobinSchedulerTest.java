@@ -0,0 +1,110 @@
+package org.mufuku.yaoocai.v1.vm;
+
+import org.junit.Test;
+import org.mufuku.yaoocai.v1.vm.builtins.BuiltInVMFunction;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
+ */
+public class RoundRobinSchedulerTest {
+
+    private static final String ENDLESS_LOOP = "" +
+            "function main() {\n" +
+            "  while (true) {\n" +
+            "  }\n" +
+            "}\n";
+
+    private static final String SUM = "" +
+            "function main(count: integer): integer {\n" +
+            "  var sum: integer = 0;\n" +
+            "  while (count > 0) {\n" +
+            "    sum = sum + count;\n" +
+            "    count = count - 1;\n" +
+            "  }\n" +
+            "  return sum;\n" +
+            "}\n";
+
+    @Test
+    public void test_resume_keepsStateBetweenSlices() throws IOException {
+        VM vm = new VM(load(SUM));
+        vm.start(100);
+        int slices = 1;
+        while (!vm.resume(10)) {
+            slices++;
+        }
+        assertThat(vm.getReturnValue(), is(5050));
+        assertThat(slices, is(11));
+    }
+
+    @Test
+    public void test_endlessLoops_doNotStarveOtherRuns() throws Exception {
+        Program endless = load(ENDLESS_LOOP);
+        Program sum = load(SUM);
+        try (RoundRobinScheduler scheduler = new RoundRobinScheduler(1, 100)) {
+            CompletableFuture<ScriptResult> endlessResult = scheduler.submit(endless);
+            List<CompletableFuture<ScriptResult>> results = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                results.add(scheduler.submit(sum, i));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                assertThat(results.get(i).get().getReturnValue(), is(i * (i + 1) / 2));
+            }
+            assertFalse(endlessResult.isDone());
+            scheduler.close();
+            assertTrue(endlessResult.isCancelled());
+        }
+    }
+
+    @Test
+    public void test_errorInBuiltIn_onlyThisRunFails() throws Exception {
+        Map<Short, BuiltInVMFunction> builtIns = new HashMap<>();
+        builtIns.put((short) 50, (stack, vm) -> {
+            throw new StackOverflowError();
+        });
+        Program failing = new ProgramLoader(new ByteArrayInputStream(VMTest.compile("" +
+                "builtin function fail() -> vmfunc(50)\n" +
+                "function main() {\n" +
+                "  fail();\n" +
+                "}\n")), builtIns).load();
+        Program sum = load(SUM);
+        try (RoundRobinScheduler scheduler = new RoundRobinScheduler(1, 100, builtIns)) {
+            CompletableFuture<ScriptResult> failingResult = scheduler.submit(failing);
+            CompletableFuture<ScriptResult> sumResult = scheduler.submit(sum, 100);
+            try {
+                failingResult.get(10, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                assertThat(e.getCause(), is(instanceOf(StackOverflowError.class)));
+            }
+            assertThat(sumResult.get(10, TimeUnit.SECONDS).getReturnValue(), is(5050));
+        }
+    }
+
+    @Test
+    public void test_submitAfterClose_cancelled() throws IOException {
+        RoundRobinScheduler scheduler = new RoundRobinScheduler(1, 100);
+        scheduler.close();
+        assertTrue(scheduler.submit(load(SUM), 1).isCancelled());
+    }
+
+    private static Program load(String source) throws IOException {
+        return new ProgramLoader(new ByteArrayInputStream(VMTest.compile(source))).load();
+    }
+}
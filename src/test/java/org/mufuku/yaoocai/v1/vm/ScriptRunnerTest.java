@@ -0,0 +1,161 @@
+package org.mufuku.yaoocai.v1.vm;
+
+import org.junit.Test;
+import org.mufuku.yaoocai.v1.vm.builtins.AsyncBuiltInVMFunction;
+import org.mufuku.yaoocai.v1.vm.builtins.BuiltInVMFunction;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
+ */
+public class ScriptRunnerTest {
+
+    @Test
+    public void test_concurrentRuns_resultAndOutputPerRun() throws Exception {
+        Program program = load("" +
+                "builtin function printInteger(value: integer) -> vmfunc(1)\n" +
+                "function main(a: integer, b: integer): integer {\n" +
+                "  printInteger(a);\n" +
+                "  return a * b;\n" +
+                "}\n");
+
+        try (ScriptRunner runner = new ScriptRunner()) {
+            List<CompletableFuture<ScriptResult>> results = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                results.add(runner.run(program, i, 3));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                ScriptResult result = results.get(i).get();
+                assertTrue(result.hasReturnValue());
+                assertThat(result.getReturnValue(), is((int) (short) (i * 3)));
+                assertThat(result.getOutput().trim(), is(String.valueOf(i)));
+            }
+        }
+    }
+
+    @Test
+    public void test_mainWithoutReturnValue_noResult() throws Exception {
+        Program program = load("function main() {\n}\n");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (ScriptRunner runner = new ScriptRunner(executor)) {
+            ScriptResult result = runner.run(program).get();
+            assertFalse(result.hasReturnValue());
+            assertThat(result.getReturnValue(), is(nullValue()));
+            assertThat(result.getOutput(), is(""));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_wrongArgumentCount_fail() throws Throwable {
+        Program program = load("function main(a: integer) {\n}\n");
+        try (ScriptRunner runner = new ScriptRunner()) {
+            runner.run(program).get();
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Test
+    public void test_rejectedRun_failedResult() throws IOException, InterruptedException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.shutdown();
+        try (ScriptRunner runner = new ScriptRunner(executor)) {
+            CompletableFuture<ScriptResult> result = runner.run(load("function main() {\n}\n"));
+            try {
+                result.get();
+                fail();
+            } catch (ExecutionException e) {
+                assertThat(e.getCause(), is(instanceOf(RejectedExecutionException.class)));
+            }
+        }
+    }
+
+    @Test
+    public void test_asyncBuiltIns_waitingRunsDoNotOccupyThreads() throws Exception {
+        Map<Integer, CompletableFuture<Integer>> requests = new ConcurrentHashMap<>();
+        Map<Short, BuiltInVMFunction> builtIns = new HashMap<>();
+        builtIns.put((short) 50, new Request(requests));
+        Program program = new ProgramLoader(new ByteArrayInputStream(VMTest.compile("" +
+                "builtin function request(value: integer): integer -> vmfunc(50)\n" +
+                "function main(a: integer): integer {\n" +
+                "  return request(a) + request(a + 1000);\n" +
+                "}\n")), builtIns).load();
+
+        // a single thread: a blocking built-in would never let the other runs reach their first request
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (ScriptRunner runner = new ScriptRunner(executor, false, builtIns)) {
+            List<CompletableFuture<ScriptResult>> results = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                results.add(runner.run(program, i));
+            }
+            awaitRequests(requests, 20);
+            requests.forEach((value, request) -> request.complete(value * 2));
+            awaitRequests(requests, 40);
+            requests.forEach((value, request) -> request.complete(value * 2));
+            for (int i = 0; i < results.size(); i++) {
+                assertThat(results.get(i).get(10, TimeUnit.SECONDS).getReturnValue(), is(i * 2 + (i + 1000) * 2));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void awaitRequests(Map<Integer, CompletableFuture<Integer>> requests, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (requests.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertThat(requests.size(), is(count));
+    }
+
+    private static Program load(String source) throws IOException {
+        return new ProgramLoader(new ByteArrayInputStream(VMTest.compile(source))).load();
+    }
+
+    static final class Request implements AsyncBuiltInVMFunction {
+
+        private final Map<Integer, CompletableFuture<Integer>> requests;
+
+        Request(Map<Integer, CompletableFuture<Integer>> requests) {
+            this.requests = requests;
+        }
+
+        @Override
+        public CompletableFuture<Integer> handleAsync(OperandStack stack, VirtualMachine vm) {
+            return requests.computeIfAbsent(stack.pop(), value -> new CompletableFuture<>());
+        }
+
+        @Override
+        public int getParameterCount() {
+            return 1;
+        }
+
+        @Override
+        public int getReturnValueCount() {
+            return 1;
+        }
+    }
+}
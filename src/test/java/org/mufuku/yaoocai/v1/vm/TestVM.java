@@ -1,12 +1,10 @@
 package org.mufuku.yaoocai.v1.vm;
 
-import org.mufuku.yaoocai.v1.bytecode.InstructionSet;
 import org.mufuku.yaoocai.v1.vm.builtins.BuiltInVMFunction;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.BitSet;
-import java.util.Deque;
 import java.util.Map;
 
 /**
@@ -21,16 +19,15 @@ public class TestVM extends VM {
     }
 
     @Override
-    protected void readCode() throws IOException {
-        super.readCode();
+    protected void loadProgram() throws IOException {
+        super.loadProgram();
         executedOpCodes = new BitSet(this.code.length);
     }
 
     @Override
     protected void executeNextInstruction() {
-        short opCode = this.code[this.codePointer];
-        InstructionSet.OpCodes opCodeInstruction = InstructionSet.OpCodes.get(opCode);
-        executedOpCodes.set(codePointer, codePointer + 1 + opCodeInstruction.opCodeParam());
+        int length = InstructionDecoder.instructionLength(this.instructions[this.codePointer]);
+        executedOpCodes.set(codePointer, codePointer + length);
         super.executeNextInstruction();
     }
 
@@ -38,11 +35,11 @@ public class TestVM extends VM {
         return 100 * executedOpCodes.cardinality() / (double) executedOpCodes.length();
     }
 
-    public Deque<Object> getStack() {
+    public OperandStack getStack() {
         return this.stack;
     }
 
-    public Deque<LocalVariableStack> getLocalVariableStack() {
-        return this.localVariableStack;
+    public boolean isLocalVariableStackEmpty() {
+        return this.localVariableStack.isEmpty();
     }
 }
@@ -0,0 +1,517 @@
+package org.mufuku.yaoocai.v1.vm;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mufuku.yaoocai.v1.bytecode.FunctionDirectory;
+import org.mufuku.yaoocai.v1.bytecode.InstructionSet;
+import org.mufuku.yaoocai.v1.compiler.Compiler;
+import org.mufuku.yaoocai.v1.vm.builtins.BuiltInVMFunction;
+import org.mufuku.yaoocai.v1.vm.builtins.PrimitiveBuiltIns;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
+ */
+public class VMTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test(expected = IllegalStateException.class)
+    public void test_unknownOpCodeInDeadCode_failOnLoad() throws IOException {
+        byte[] byteCode = byteCode(
+                InstructionSet.OpCodes.FUNCTION.code(), (short) 0,
+                InstructionSet.OpCodes.RETURN.code(),
+                (short) 0x7777);
+        new VM(new ByteArrayInputStream(byteCode)).execute();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test_invalidFunctionIndex_failOnLoad() throws IOException {
+        byte[] byteCode = byteCode(
+                InstructionSet.OpCodes.FUNCTION.code(), (short) 0,
+                InstructionSet.OpCodes.RETURN.code(),
+                InstructionSet.OpCodes.INVOKE.code(), (short) 5);
+        new VM(new ByteArrayInputStream(byteCode)).execute();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test_jumpOutOfCode_failOnLoad() throws IOException {
+        byte[] byteCode = byteCode(
+                InstructionSet.OpCodes.FUNCTION.code(), (short) 0,
+                InstructionSet.OpCodes.RETURN.code(),
+                InstructionSet.OpCodes.GOTO.code(), (short) 100);
+        new VM(new ByteArrayInputStream(byteCode)).execute();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test_typeMismatch_failOnLoad() throws IOException {
+        byte[] byteCode = byteCode(
+                InstructionSet.OpCodes.FUNCTION.code(), (short) 0,
+                InstructionSet.OpCodes.I_CONST.code(), (short) 1,
+                InstructionSet.OpCodes.B_CONST_TRUE.code(),
+                InstructionSet.OpCodes.ADD.code(),
+                InstructionSet.OpCodes.POP.code(),
+                InstructionSet.OpCodes.RETURN.code());
+        new ProgramLoader(new ByteArrayInputStream(byteCode)).load();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test_jumpIntoInstruction_failOnLoad() throws IOException {
+        byte[] byteCode = byteCode(
+                InstructionSet.OpCodes.FUNCTION.code(), (short) 0,
+                InstructionSet.OpCodes.GOTO.code(), (short) 2,
+                InstructionSet.OpCodes.I_CONST.code(), (short) 1,
+                InstructionSet.OpCodes.RETURN.code());
+        new ProgramLoader(new ByteArrayInputStream(byteCode)).load();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test_jumpIntoInstructionBehindBuiltInWithoutStackEffect_failOnLoad() throws IOException {
+        Map<Short, BuiltInVMFunction> builtIns = new HashMap<>();
+        builtIns.put((short) 50, (stack, vm) -> {
+        });
+        byte[] byteCode = byteCode(
+                InstructionSet.OpCodes.FUNCTION.code(), (short) 0,
+                InstructionSet.OpCodes.INVOKE_BUILTIN.code(), (short) 50,
+                InstructionSet.OpCodes.GOTO.code(), (short) 2,
+                InstructionSet.OpCodes.I_CONST.code(), (short) 1,
+                InstructionSet.OpCodes.RETURN.code());
+        new ProgramLoader(new ByteArrayInputStream(byteCode), builtIns).load();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test_inconsistentStackDepth_failOnLoad() throws IOException {
+        byte[] byteCode = byteCode(
+                InstructionSet.OpCodes.FUNCTION.code(), (short) 0,
+                InstructionSet.OpCodes.B_CONST_TRUE.code(),
+                InstructionSet.OpCodes.IF.code(), (short) 3,
+                InstructionSet.OpCodes.I_CONST.code(), (short) 1,
+                InstructionSet.OpCodes.RETURN.code());
+        new ProgramLoader(new ByteArrayInputStream(byteCode)).load();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test_localVariableOutOfFrame_failOnLoad() throws IOException {
+        byte[] byteCode = byteCode(
+                InstructionSet.OpCodes.FUNCTION.code(), (short) 1,
+                InstructionSet.OpCodes.LOAD.code(), (short) 1,
+                InstructionSet.OpCodes.POP.code(),
+                InstructionSet.OpCodes.RETURN.code());
+        new ProgramLoader(new ByteArrayInputStream(byteCode)).load();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test_minorVersionWithoutFunctionLocals_failOnLoad() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeChars(InstructionSet.PREAMBLE);
+        out.writeShort(InstructionSet.MAJOR_VERSION);
+        out.writeShort(InstructionSet.FUNCTION_LOCALS_MINOR_VERSION - 1);
+        out.writeShort(0);
+        out.writeShort(InstructionSet.OpCodes.FUNCTION.code());
+        out.writeShort(InstructionSet.OpCodes.RETURN.code());
+        new ProgramLoader(new ByteArrayInputStream(bytes.toByteArray())).load();
+    }
+
+    @Test
+    public void test_verifiedProgram_maxStackAndLocals() throws IOException {
+        Program program = new ProgramLoader(new ByteArrayInputStream(sumLoop())).load();
+        assertThat(program.getMaxStack(0), is(2));
+        assertThat(program.getMaxLocals(0), is(2));
+    }
+
+    @Test
+    public void test_mappedFile_sameProgramAsStream() throws IOException {
+        File file = temporaryFolder.newFile("sum.yaoocaic");
+        Files.write(file.toPath(), sumLoop());
+
+        Program program = new ProgramLoader(file.toPath()).load();
+
+        assertThat(program.getMaxStack(0), is(2));
+        assertThat(run(new VM(program), true), is("45"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test_mappedFileWithoutHeader_failOnLoad() throws IOException {
+        File file = temporaryFolder.newFile("empty.yaoocaic");
+        new ProgramLoader(file.toPath()).load();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test_byteCodeEndingWithinWord_failOnLoad() throws IOException {
+        byte[] byteCode = sumLoop();
+        new ProgramLoader(new ByteArrayInputStream(Arrays.copyOf(byteCode, byteCode.length + 1))).load();
+    }
+
+    @Test
+    public void test_functionDirectory_uncalledFunctionNotVerified() throws IOException {
+        short[] code = {
+                InstructionSet.OpCodes.FUNCTION.code(), (short) 0,
+                InstructionSet.OpCodes.RETURN.code(),
+                // operand stack underflow
+                InstructionSet.OpCodes.FUNCTION.code(), (short) 0,
+                InstructionSet.OpCodes.ADD.code(),
+                InstructionSet.OpCodes.RETURN.code()};
+        Program program = new ProgramLoader(new ByteArrayInputStream(byteCode(FunctionDirectory.of(code), code))).load();
+
+        new VM(program).execute();
+
+        assertThat(program.isDecoded(), is(false));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test_functionDirectory_invalidFunctionFailsOnInvoke() throws IOException {
+        short[] code = {
+                InstructionSet.OpCodes.FUNCTION.code(), (short) 0,
+                InstructionSet.OpCodes.INVOKE.code(), (short) 1,
+                InstructionSet.OpCodes.RETURN.code(),
+                InstructionSet.OpCodes.FUNCTION.code(), (short) 0,
+                InstructionSet.OpCodes.ADD.code(),
+                InstructionSet.OpCodes.RETURN.code()};
+        new VM(new ByteArrayInputStream(byteCode(FunctionDirectory.of(code), code))).execute();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test_functionDirectoryWithTooManyFunctions_failOnProduce() {
+        int functions = FunctionDirectory.MAX_COUNT + 1;
+        short[] code = new short[functions * 3];
+        for (int i = 0; i < functions; i++) {
+            code[i * 3] = InstructionSet.OpCodes.FUNCTION.code();
+            code[i * 3 + 2] = InstructionSet.OpCodes.RETURN.code();
+        }
+        FunctionDirectory.of(code);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test_functionDirectoryNotMatchingCode_failOnLoad() throws IOException {
+        short[] code = {
+                InstructionSet.OpCodes.FUNCTION.code(), (short) 0,
+                InstructionSet.OpCodes.RETURN.code(),
+                InstructionSet.OpCodes.FUNCTION.code(), (short) 1,
+                InstructionSet.OpCodes.RETURN.code()};
+        FunctionDirectory directory = new FunctionDirectory(new int[]{0, 2}, new int[]{2, 3}, new short[2],
+                new short[]{0, 1}, new short[0]);
+        new ProgramLoader(new ByteArrayInputStream(byteCode(directory, code))).load();
+    }
+
+    @Test
+    public void test_compiledProgram_decodedOnDemand() throws IOException {
+        Program program = new ProgramLoader(new ByteArrayInputStream(compile("" +
+                "builtin function printInteger(value: integer) -> vmfunc(1)\n" +
+                "function unused(): integer {\n" +
+                "  return 1;\n" +
+                "}\n" +
+                "function square(n: integer): integer {\n" +
+                "  return n * n;\n" +
+                "}\n" +
+                "function main() {\n" +
+                "  printInteger(square(12));\n" +
+                "}\n"))).load();
+
+        assertThat(program.isDecoded(), is(false));
+        assertThat(run(new VM(program), true), is("144"));
+        assertThat(program.isDecoded(), is(false));
+        assertThat(program.getMaxStack(0), is(1));
+        assertThat(program.isDecoded(), is(true));
+    }
+
+    @Test
+    public void test_parallelDecoding_sameResultAsSequential() throws IOException {
+        StringBuilder source = new StringBuilder("builtin function printInteger(value: integer) -> vmfunc(1)\n");
+        StringBuilder main = new StringBuilder("function main() {\n  var sum: integer = 0;\n");
+        for (int i = 0; i < 200; i++) {
+            source.append("function f").append(i).append("(n: integer): integer {\n")
+                    .append("  var i: integer = 0;\n")
+                    .append("  while (i < n) {\n    i = i + 1;\n  }\n")
+                    .append("  return i + ").append(i).append(";\n}\n");
+            main.append("  sum = sum + f").append(i).append("(3);\n");
+        }
+        source.append(main).append("  printInteger(sum);\n}\n");
+        byte[] byteCode = compile(source.toString());
+
+        ProgramLoader loader = new ProgramLoader(new ByteArrayInputStream(byteCode));
+        loader.setPool(ForkJoinPool.commonPool());
+        Program program = loader.load();
+
+        assertThat(program.isDecoded(), is(true));
+        assertThat(run(new VM(program), true), is(run(byteCode, true)));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test_parallelDecodingInvalidFunction_failOnLoad() throws IOException {
+        ProgramLoader loader = new ProgramLoader(new ByteArrayInputStream(byteCode(
+                InstructionSet.OpCodes.FUNCTION.code(), (short) 0,
+                InstructionSet.OpCodes.RETURN.code(),
+                InstructionSet.OpCodes.FUNCTION.code(), (short) 0,
+                InstructionSet.OpCodes.ADD.code(),
+                InstructionSet.OpCodes.RETURN.code())));
+        loader.setPool(ForkJoinPool.commonPool());
+        loader.load();
+    }
+
+    @Test
+    public void test_superInstructions_sameResultAsPlainInstructions() throws IOException {
+        byte[] byteCode = sumLoop();
+
+        assertThat(run(byteCode, true), is("45"));
+        assertThat(run(byteCode, false), is("45"));
+    }
+
+    @Test
+    public void test_sharedProgram_concurrentExecutions() throws Exception {
+        Program program = new ProgramLoader(new ByteArrayInputStream(sumLoop())).load();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                results.add(executor.submit(() -> run(new VM(program), true)));
+            }
+            for (Future<String> result : results) {
+                assertThat(result.get(), is("45"));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static byte[] sumLoop() throws IOException {
+        return byteCode(
+                InstructionSet.OpCodes.FUNCTION.code(), (short) 2,
+                InstructionSet.OpCodes.I_CONST.code(), (short) 0,
+                InstructionSet.OpCodes.STORE.code(), (short) 0,
+                InstructionSet.OpCodes.I_CONST.code(), (short) 0,
+                InstructionSet.OpCodes.STORE.code(), (short) 1,
+                // loop: while (i < 10)
+                InstructionSet.OpCodes.LOAD.code(), (short) 0,
+                InstructionSet.OpCodes.I_CONST.code(), (short) 10,
+                InstructionSet.OpCodes.CMP_LT.code(),
+                InstructionSet.OpCodes.IF.code(), (short) 17,
+                // sum = sum + i
+                InstructionSet.OpCodes.LOAD.code(), (short) 1,
+                InstructionSet.OpCodes.LOAD.code(), (short) 0,
+                InstructionSet.OpCodes.ADD.code(),
+                InstructionSet.OpCodes.STORE.code(), (short) 1,
+                // i = i + 1
+                InstructionSet.OpCodes.LOAD.code(), (short) 0,
+                InstructionSet.OpCodes.I_CONST.code(), (short) 1,
+                InstructionSet.OpCodes.ADD.code(),
+                InstructionSet.OpCodes.STORE.code(), (short) 0,
+                InstructionSet.OpCodes.GOTO.code(), (short) -22,
+                // print(sum)
+                InstructionSet.OpCodes.LOAD.code(), (short) 1,
+                InstructionSet.OpCodes.INVOKE_BUILTIN.code(), (short) 1,
+                InstructionSet.OpCodes.RETURN.code());
+    }
+
+    @Test
+    public void test_compiledFunctions_sameResultAsInterpreted() throws IOException {
+        byte[] byteCode = compile("" +
+                "builtin function printInteger(value: integer) -> vmfunc(1)\n" +
+                "function fibonacci(n: integer): integer {\n" +
+                "  if (n < 2) {\n" +
+                "    return n;\n" +
+                "  }\n" +
+                "  return fibonacci(n - 1) + fibonacci(n - 2);\n" +
+                "}\n" +
+                "function print(value: integer) {\n" +
+                "  printInteger(value);\n" +
+                "}\n" +
+                "function sum(count: integer): integer {\n" +
+                "  var result: integer = 0;\n" +
+                "  var i: integer = 0;\n" +
+                "  while (i < count) {\n" +
+                "    if (i % 3 == 0 || !(i > 5)) {\n" +
+                "      result = result + i * 2;\n" +
+                "    } else {\n" +
+                "      result = result - -i / 2;\n" +
+                "    }\n" +
+                "    i = i + 1;\n" +
+                "  }\n" +
+                "  print(result);\n" +
+                "  return result;\n" +
+                "}\n" +
+                "function main() {\n" +
+                "  printInteger(fibonacci(15));\n" +
+                "  var i: integer = 0;\n" +
+                "  while (i < 3) {\n" +
+                "    printInteger(sum(300 + i));\n" +
+                "    i = i + 1;\n" +
+                "  }\n" +
+                "}\n");
+
+        VM interpreted = new VM(new ByteArrayInputStream(byteCode));
+        VM compiled = new VM(new ByteArrayInputStream(byteCode));
+        compiled.setCompileThreshold(2);
+
+        assertThat(run(compiled, true), is(run(interpreted, true)));
+        assertThat(compiled.tieredCompiler.getCompiledFunctionCount(), is(4));
+        assertThat(compiled.stack.size(), is(0));
+    }
+
+    @Test
+    public void test_sharedProgram_functionsCompiledOnce() throws IOException {
+        Program program = new ProgramLoader(new ByteArrayInputStream(compile("" +
+                "function square(n: integer): integer {\n" +
+                "  return n * n;\n" +
+                "}\n" +
+                "function main(): integer {\n" +
+                "  var result: integer = 0;\n" +
+                "  var i: integer = 0;\n" +
+                "  while (i < 10) {\n" +
+                "    result = result + square(i);\n" +
+                "    i = i + 1;\n" +
+                "  }\n" +
+                "  return result;\n" +
+                "}\n"))).load();
+        VM first = new VM(program);
+        first.setCompileThreshold(2);
+        VM second = new VM(program);
+        second.setCompileThreshold(2);
+
+        assertThat(first.invokeMain(), is(285));
+        int compiledFunctions = first.tieredCompiler.getCompiledFunctionCount();
+        assertThat(second.invokeMain(), is(285));
+
+        assertThat(second.tieredCompiler, is(sameInstance(first.tieredCompiler)));
+        assertThat(compiledFunctions, is(2));
+        assertThat(second.tieredCompiler.getCompiledFunctionCount(), is(2));
+    }
+
+    @Test
+    public void test_primitiveBuiltIns_sameResultInterpretedAndCompiled() throws IOException {
+        Map<Short, BuiltInVMFunction> builtIns = new HashMap<>();
+        builtIns.put((short) 10, PrimitiveBuiltIns.binary((value, limit) -> Math.min(value, limit)));
+        builtIns.put((short) 11, PrimitiveBuiltIns.predicate(value -> value % 2 == 0));
+        builtIns.put((short) 12, PrimitiveBuiltIns.unary(value -> value * 1000));
+        byte[] byteCode = compile("" +
+                "builtin function min(value: integer, limit: integer): integer -> vmfunc(10)\n" +
+                "builtin function even(value: integer): boolean -> vmfunc(11)\n" +
+                "builtin function scale(value: integer): integer -> vmfunc(12)\n" +
+                "function step(i: integer): integer {\n" +
+                "  if (even(i)) {\n" +
+                "    return min(i, 50) + scale(i);\n" +
+                "  }\n" +
+                "  return 1;\n" +
+                "}\n" +
+                "function main(): integer {\n" +
+                "  var result: integer = 0;\n" +
+                "  var i: integer = 0;\n" +
+                "  while (i < 100) {\n" +
+                "    result = result + step(i);\n" +
+                "    i = i + 1;\n" +
+                "  }\n" +
+                "  return result;\n" +
+                "}\n");
+
+        VM interpreted = new VM(new ByteArrayInputStream(byteCode), builtIns);
+        VM compiled = new VM(new ByteArrayInputStream(byteCode), builtIns);
+        compiled.setCompileThreshold(2);
+
+        assertThat(compiled.invokeMain(), is(interpreted.invokeMain()));
+        assertThat(compiled.tieredCompiler.getCompiledFunctionCount(), is(2));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test_builtInMissingInVM_failOnStart() throws IOException {
+        byte[] byteCode = compile("" +
+                "builtin function printInteger(value: integer) -> vmfunc(1)\n" +
+                "function main() {\n" +
+                "  printInteger(1);\n" +
+                "}\n");
+        Program program = new ProgramLoader(new ByteArrayInputStream(byteCode)).load();
+        new VM(program, new HashMap<>()).execute();
+    }
+
+    @Test
+    public void test_asyncBuiltIn_suspendsUntilCompleted() throws IOException {
+        Map<Integer, CompletableFuture<Integer>> requests = new ConcurrentHashMap<>();
+        Map<Short, BuiltInVMFunction> builtIns = new HashMap<>();
+        builtIns.put((short) 50, new ScriptRunnerTest.Request(requests));
+        VM vm = new VM(new ByteArrayInputStream(compile("" +
+                "builtin function request(value: integer): integer -> vmfunc(50)\n" +
+                "function main(): integer {\n" +
+                "  return request(7) + 1;\n" +
+                "}\n")), builtIns);
+
+        vm.start();
+        assertThat(vm.resume(Long.MAX_VALUE), is(false));
+        assertThat(vm.isSuspended(), is(true));
+        assertThat(vm.resume(Long.MAX_VALUE), is(false));
+        requests.get(7).complete(41);
+        assertThat(vm.resume(Long.MAX_VALUE), is(true));
+        assertThat(vm.getReturnValue(), is(42));
+    }
+
+    private static String run(byte[] byteCode, boolean superInstructions) throws IOException {
+        return run(new VM(new ByteArrayInputStream(byteCode)), superInstructions);
+    }
+
+    private static String run(VM vm, boolean superInstructions) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        vm.setSuperInstructions(superInstructions);
+        vm.setOut(new PrintStream(output, true));
+        vm.execute();
+        return output.toString().trim();
+    }
+
+    static byte[] compile(String source) throws IOException {
+        ByteArrayOutputStream byteCode = new ByteArrayOutputStream();
+        new Compiler(new ByteArrayInputStream(source.getBytes(StandardCharsets.UTF_8)), byteCode).compile();
+        return byteCode.toByteArray();
+    }
+
+    /**
+     * @return byte code of the last minor version without function directory, it is loaded eagerly
+     */
+    static byte[] byteCode(short... code) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeChars(InstructionSet.PREAMBLE);
+        out.writeShort(InstructionSet.MAJOR_VERSION);
+        out.writeShort(InstructionSet.FUNCTION_DIRECTORY_MINOR_VERSION - 1);
+        out.writeShort(0);
+        for (short word : code) {
+            out.writeShort(word);
+        }
+        return bytes.toByteArray();
+    }
+
+    static byte[] byteCode(FunctionDirectory directory, short... code) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeChars(InstructionSet.PREAMBLE);
+        out.writeShort(InstructionSet.MAJOR_VERSION);
+        out.writeShort(InstructionSet.FUNCTION_DIRECTORY_MINOR_VERSION);
+        out.writeShort(0);
+        directory.write(out);
+        for (short word : code) {
+            out.writeShort(word);
+        }
+        return bytes.toByteArray();
+    }
+}
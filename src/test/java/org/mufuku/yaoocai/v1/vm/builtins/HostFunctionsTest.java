@@ -0,0 +1,97 @@
+package org.mufuku.yaoocai.v1.vm.builtins;
+
+import org.junit.Test;
+import org.mufuku.yaoocai.v1.compiler.Compiler;
+import org.mufuku.yaoocai.v1.vm.VM;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author Andreas Etzlstorfer (a.etzlstorfer@gmail.com)
+ */
+public class HostFunctionsTest {
+
+    private static final List<Integer> RECORDED = new ArrayList<>();
+
+    @Test
+    public void test_registeredMethods_declarationsGenerated() {
+        HostFunctions hostFunctions = new HostFunctions()
+                .register((short) 100, Host.class, "clamp")
+                .register((short) 101, Host.class, "record");
+
+        assertThat(hostFunctions.getDeclarations(), is(equalTo("" +
+                "builtin function clamp(p0: integer, p1: integer, p2: integer): integer -> vmfunc(100)\n" +
+                "builtin function record(p0: integer, p1: boolean) -> vmfunc(101)\n")));
+        assertThat(hostFunctions.getBuiltIns().get((short) 100).getParameterCount(), is(3));
+        assertThat(hostFunctions.getBuiltIns().get((short) 101).getReturnValueCount(), is(0));
+    }
+
+    @Test
+    public void test_scriptCallingHostFunctions_expectedResults() throws IOException {
+        HostFunctions hostFunctions = new HostFunctions()
+                .register((short) 100, Host.class, "clamp")
+                .register((short) 101, Host.class, "record")
+                .register((short) 102, Host.class, "isNegative")
+                .register((short) 103, Host.class, "square");
+        String source = hostFunctions.getDeclarations() + "" +
+                "function main(): integer {\n" +
+                "  record(clamp(500, 0, 100), isNegative(-3));\n" +
+                "  record(clamp(-5, 0, 100), isNegative(3));\n" +
+                "  return square(300);\n" +
+                "}\n";
+        ByteArrayOutputStream byteCode = new ByteArrayOutputStream();
+        new Compiler(new ByteArrayInputStream(source.getBytes(StandardCharsets.UTF_8)), byteCode).compile();
+
+        RECORDED.clear();
+        VM vm = new VM(new ByteArrayInputStream(byteCode.toByteArray()), hostFunctions.getBuiltIns());
+
+        assertThat(vm.invokeMain(), is((int) (short) 90000));
+        assertThat(RECORDED, is(equalTo(Arrays.asList(100, 1, 0, 0))));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_unsupportedType_exception() {
+        new HostFunctions().register((short) 100, Host.class, "length");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_duplicateFunctionCode_exception() {
+        new HostFunctions()
+                .register((short) 100, Host.class, "clamp")
+                .register((short) 100, Host.class, "square");
+    }
+
+    public static class Host {
+
+        public static int clamp(int value, int min, int max) {
+            return Math.max(min, Math.min(max, value));
+        }
+
+        public static void record(int value, boolean flag) {
+            RECORDED.add(value);
+            RECORDED.add(flag ? 1 : 0);
+        }
+
+        public static boolean isNegative(short value) {
+            return value < 0;
+        }
+
+        public static int square(int value) {
+            return value * value;
+        }
+
+        public static int length(String value) {
+            return value.length();
+        }
+    }
+}